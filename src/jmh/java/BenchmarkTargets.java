@@ -0,0 +1,118 @@
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Random;
+import java.util.function.IntFunction;
+import java.util.function.LongFunction;
+import java.util.function.Supplier;
+import java.util.function.UnaryOperator;
+
+// Мост между бенчмарками и классами бота. JMH не принимает бенчмарки в пакете по умолчанию,
+// а из именованного пакета классы бота не видны - поэтому бенчмарки получают отсюда (через рефлексию,
+// один раз в @Setup) готовые функции со стандартными JDK-типами и в замерах вызывают только их
+public final class BenchmarkTargets {
+    // около 50 записей на чат - типичный размер списка у одного пользователя
+    public static final int ENTRIES_PER_CHAT = 50;
+    private static final long FIRST_CHAT_ID = 1_000;
+
+    private BenchmarkTargets() {
+    }
+
+    // Хранилище с rows записями, разложенными по чатам: "h2" - DatabaseManager на H2 в режиме PostgreSQL
+    // по адресу url, "memory" - InMemoryBirthdayRepository (url не нужен)
+    public static Object openDatabase(String backend, String url, int rows) throws Exception {
+        BirthdayRepository database;
+        if ("memory".equals(backend)) {
+            database = new InMemoryBirthdayRepository();
+        } else {
+            DatabaseManager manager = new DatabaseManager();
+            manager.initialize(url, "sa", "");
+            database = manager;
+        }
+
+        Random random = new Random(42);
+        int chats = chatCount(rows);
+        for (int chat = 0; chat < chats; chat++) {
+            long chatId = FIRST_CHAT_ID + chat;
+            int size = Math.min(ENTRIES_PER_CHAT, rows - chat * ENTRIES_PER_CHAT);
+            List<BirthdayEntry> entries = new ArrayList<>(size);
+            for (int i = 0; i < size; i++) {
+                LocalDate birthday = LocalDate.of(1950, 1, 1).plusDays(random.nextInt(365 * 60));
+                entries.add(new BirthdayEntry(0, chatId, "Person " + chat + "-" + i, birthday));
+            }
+            Iterator<BirthdayEntry> iterator = entries.iterator();
+            database.importUsers(chatId, iterator, imported -> { });
+        }
+        return database;
+    }
+
+    public static int chatCount(int rows) {
+        return Math.max(1, (rows + ENTRIES_PER_CHAT - 1) / ENTRIES_PER_CHAT);
+    }
+
+    public static long chatId(int chatIndex) {
+        return FIRST_CHAT_ID + chatIndex;
+    }
+
+    public static LongFunction<Object> allUsersQuery(Object database) {
+        BirthdayRepository db = (BirthdayRepository) database;
+        return db::getAllUsers;
+    }
+
+    public static LongFunction<Object> futureBirthdaysQuery(Object database) {
+        BirthdayRepository db = (BirthdayRepository) database;
+        return db::getAllFutUsers;
+    }
+
+    public static LongFunction<Object> monthQuery(Object database, int month) {
+        BirthdayRepository db = (BirthdayRepository) database;
+        return chatId -> db.getAllUsersOnMonth(month, chatId);
+    }
+
+    public static Supplier<Object> todayBirthdaysQuery(Object database) {
+        BirthdayRepository db = (BirthdayRepository) database;
+        return () -> db.getNotificationsOn(LocalDate.now());
+    }
+
+    public static Runnable shutdown(Object database) {
+        BirthdayRepository db = (BirthdayRepository) database;
+        return db::shutdown;
+    }
+
+    // Рендер ответа на /allbirthdays для списка из size записей
+    public static Supplier<String> userListRenderer(int size) {
+        List<BirthdayUser> users = sampleUsers(size);
+        return () -> Bot.formatUserList(users);
+    }
+
+    public static Supplier<String> windowListRenderer(int size) {
+        List<BirthdayUser> users = sampleUsers(size);
+        return () -> Bot.formatWindowList(users);
+    }
+
+    public static IntFunction<String> birthdayFormatter(int size) {
+        List<BirthdayUser> users = sampleUsers(size);
+        return i -> users.get(Math.floorMod(i, users.size())).getBirthdayFormatted();
+    }
+
+    public static UnaryOperator<String> responseParser() {
+        return RuGPT3Generator::parseResponse;
+    }
+
+    public static UnaryOperator<String> jsonEscaper() {
+        return RuGPT3Generator::escapeJson;
+    }
+
+    private static List<BirthdayUser> sampleUsers(int size) {
+        Random random = new Random(42);
+        List<BirthdayUser> users = new ArrayList<>(size);
+        for (int i = 0; i < size; i++) {
+            LocalDate birthday = LocalDate.of(1950, 1, 1).plusDays(random.nextInt(365 * 60));
+            BirthdayUser user = new BirthdayUser(i + 1, FIRST_CHAT_ID, "Person " + i, birthday);
+            user.setOrdinal(i + 1);
+            users.add(user);
+        }
+        return users;
+    }
+}
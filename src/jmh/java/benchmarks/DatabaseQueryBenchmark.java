@@ -0,0 +1,93 @@
+package benchmarks;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import java.time.LocalDate;
+import java.util.concurrent.TimeUnit;
+import java.util.function.LongFunction;
+import java.util.function.Supplier;
+
+// Запросы к хранилищу при разном числе записей: DatabaseManager на H2 в режиме PostgreSQL
+// и InMemoryBirthdayRepository
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class DatabaseQueryBenchmark {
+
+    @Param({"1000", "10000", "100000"})
+    public int rows;
+
+    @Param({"h2", "memory"})
+    public String backend;
+
+    private Object database;
+    private int chats;
+
+    private LongFunction<Object> allUsers;
+    private LongFunction<Object> futureBirthdays;
+    private LongFunction<Object> month;
+    private Supplier<Object> todayBirthdays;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        database = Targets.call("openDatabase", backend,
+                "jdbc:h2:mem:bench_" + rows + ";MODE=PostgreSQL;DB_CLOSE_DELAY=-1", rows);
+        chats = Targets.<Integer>call("chatCount", rows);
+        allUsers = Targets.call("allUsersQuery", database);
+        futureBirthdays = Targets.call("futureBirthdaysQuery", database);
+        month = Targets.call("monthQuery", database, LocalDate.now().getMonthValue());
+        todayBirthdays = Targets.call("todayBirthdaysQuery", database);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        Targets.<Runnable>call("shutdown", database).run();
+    }
+
+    @Benchmark
+    public Object allUsers(ChatCursor cursor) {
+        return allUsers.apply(cursor.next(chats));
+    }
+
+    @Benchmark
+    public Object futureBirthdays(ChatCursor cursor) {
+        return futureBirthdays.apply(cursor.next(chats));
+    }
+
+    @Benchmark
+    public Object usersOnMonth(ChatCursor cursor) {
+        return month.apply(cursor.next(chats));
+    }
+
+    @Benchmark
+    public Object todayBirthdays() {
+        return todayBirthdays.get();
+    }
+
+    // Чаты перебираются по кругу, чтобы не мерить всё время одни и те же горячие страницы.
+    // Счётчик свой у каждого потока; id чатов идут подряд начиная с chatId(0)
+    @State(Scope.Thread)
+    public static class ChatCursor {
+        private long firstChatId;
+        private int index;
+
+        @Setup(Level.Trial)
+        public void setUp() {
+            firstChatId = Targets.<Long>call("chatId", 0);
+        }
+
+        long next(int chats) {
+            index = (index + 1) % chats;
+            return firstChatId + index;
+        }
+    }
+}
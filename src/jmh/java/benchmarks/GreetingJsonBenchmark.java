@@ -0,0 +1,50 @@
+package benchmarks;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.concurrent.TimeUnit;
+import java.util.function.UnaryOperator;
+
+// Разбор ответа модели и экранирование запроса в RuGPT3Generator
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class GreetingJsonBenchmark {
+
+    // ответ completions API с метаданными вокруг текста, как у роутера HuggingFace
+    private static final String RESPONSE = "{\"id\":\"cmpl-1\",\"object\":\"text_completion\",\"created\":1700000000,"
+            + "\"model\":\"ai-forever/rugpt3small_based_on_gpt2\",\"choices\":[{\"index\":0,"
+            + "\"text\":\"Дорогой Иван! Поздравляю тебя с днём рождения! Желаю счастья, здоровья, \\\"удачи\\\" "
+            + "и исполнения всех желаний.\\nПусть каждый день приносит радость!\",\"logprobs\":null,"
+            + "\"finish_reason\":\"length\"}],\"usage\":{\"prompt_tokens\":12,\"completion_tokens\":100,"
+            + "\"total_tokens\":112}}";
+
+    private static final String PROMPT = "Напиши красивое поздравление с днём рождения: \"Иван\"!\n"
+            + "Tab\tи обратный слеш \\ тоже встречаются";
+
+    private UnaryOperator<String> parser;
+    private UnaryOperator<String> escaper;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        parser = Targets.call("responseParser");
+        escaper = Targets.call("jsonEscaper");
+    }
+
+    @Benchmark
+    public String parseResponse() {
+        return parser.apply(RESPONSE);
+    }
+
+    @Benchmark
+    public String escapeJson() {
+        return escaper.apply(PROMPT);
+    }
+}
@@ -0,0 +1,52 @@
+package benchmarks;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.concurrent.TimeUnit;
+import java.util.function.IntFunction;
+import java.util.function.Supplier;
+
+// Сборка текстовых ответов бота: списки дней рождения и формат даты одной записи
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class RenderingBenchmark {
+
+    @Param({"10", "100", "1000"})
+    public int listSize;
+
+    private Supplier<String> userList;
+    private Supplier<String> windowList;
+    private IntFunction<String> birthdayFormatter;
+    private int next;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        userList = Targets.call("userListRenderer", listSize);
+        windowList = Targets.call("windowListRenderer", listSize);
+        birthdayFormatter = Targets.call("birthdayFormatter", listSize);
+    }
+
+    @Benchmark
+    public String userList() {
+        return userList.get();
+    }
+
+    @Benchmark
+    public String windowList() {
+        return windowList.get();
+    }
+
+    @Benchmark
+    public String birthdayFormatted() {
+        return birthdayFormatter.apply(next++);
+    }
+}
@@ -0,0 +1,29 @@
+package benchmarks;
+
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+
+// Вызов фабрик из BenchmarkTargets (пакет по умолчанию) по имени; используется только в @Setup/@TearDown
+final class Targets {
+    private static final String TARGETS_CLASS = "BenchmarkTargets";
+
+    private Targets() {
+    }
+
+    @SuppressWarnings("unchecked")
+    static <T> T call(String method, Object... args) {
+        try {
+            Class<?> targets = Class.forName(TARGETS_CLASS);
+            for (Method candidate : targets.getMethods()) {
+                if (candidate.getName().equals(method) && candidate.getParameterCount() == args.length) {
+                    return (T) candidate.invoke(null, args);
+                }
+            }
+            throw new IllegalArgumentException("No such benchmark target: " + method);
+        } catch (InvocationTargetException e) {
+            throw new IllegalStateException("Benchmark target " + method + " failed", e.getCause());
+        } catch (ReflectiveOperationException e) {
+            throw new IllegalStateException("Cannot call benchmark target " + method, e);
+        }
+    }
+}
@@ -0,0 +1,333 @@
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.Consumer;
+
+// Календарь дней рождения в памяти: 366 корзин по дню года (год берётся високосный,
+// чтобы у 29 февраля была своя корзина). Внутри корзины - примитивные массивы.
+// Календарь видит только записи своего процесса: если в базу пишут другие узлы, его периодически
+// перезагружают (DatabaseManager.reloadCalendarIndex). На время загрузки изменения записываются в журнал
+// (startRecording), затем переносятся в новый календарь и дальше пересылаются в него (handOver)
+public class BirthdayCalendarIndex {
+    private static final int DAYS = 366;
+    private static final int LEAP_YEAR = 2000;
+    private static final int FEB_29 = dayIndex(2, 29);
+
+    private final Bucket[] buckets = new Bucket[DAYS];
+    // id записи -> номер корзины, чтобы удаление и перенос не сканировали весь календарь
+    private final Map<Integer, Integer> dayOfEntry = new HashMap<>();
+    private final NamePool names = new NamePool();
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+    // изменения за время перезагрузки; null - журнал не ведётся
+    private List<Consumer<BirthdayCalendarIndex>> journal;
+    // календарь, который заменил этот: изменения от тех, кто ещё держит старую ссылку, уходят туда
+    private BirthdayCalendarIndex successor;
+
+    public BirthdayCalendarIndex() {
+        for (int i = 0; i < DAYS; i++) {
+            buckets[i] = new Bucket();
+        }
+    }
+
+    static int dayIndex(int month, int day) {
+        return LocalDate.of(LEAP_YEAR, month, day).getDayOfYear() - 1;
+    }
+
+    private static int dayIndex(int monthDay) {
+        return dayIndex(monthDay / 100, monthDay % 100);
+    }
+
+    public void put(int entryId, long chatId, String name, LocalDate birthday) {
+        lock.writeLock().lock();
+        try {
+            removeLocked(entryId);
+            int day = dayIndex(birthday.getMonthValue(), birthday.getDayOfMonth());
+            buckets[day].add(chatId, entryId, names.add(name), (short) birthday.getYear());
+            dayOfEntry.put(entryId, day);
+            record(index -> index.put(entryId, chatId, name, birthday));
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    public boolean remove(int entryId) {
+        lock.writeLock().lock();
+        try {
+            record(index -> index.remove(entryId));
+            return removeLocked(entryId);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    private boolean removeLocked(int entryId) {
+        Integer day = dayOfEntry.remove(entryId);
+        if (day == null) {
+            return false;
+        }
+        Bucket bucket = buckets[day];
+        int slot = bucket.indexOf(entryId);
+        names.release(bucket.nameRefs[slot]);
+        bucket.removeAt(slot);
+        return true;
+    }
+
+    // Повторяет DatabaseManager.updateName: имя меняется у всех записей чата
+    public int renameChat(long chatId, String name) {
+        lock.writeLock().lock();
+        try {
+            int renamed = 0;
+            for (Bucket bucket : buckets) {
+                for (int i = 0; i < bucket.size; i++) {
+                    if (bucket.chatIds[i] == chatId) {
+                        names.set(bucket.nameRefs[i], name);
+                        renamed++;
+                    }
+                }
+            }
+            record(index -> index.renameChat(chatId, name));
+            return renamed;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    // Повторяет DatabaseManager.updateBirthday: дата меняется у всех записей чата
+    public int moveChat(long chatId, LocalDate birthday) {
+        lock.writeLock().lock();
+        try {
+            int target = dayIndex(birthday.getMonthValue(), birthday.getDayOfMonth());
+            short year = (short) birthday.getYear();
+            int moved = 0;
+            Bucket targetBucket = buckets[target];
+            for (int i = 0; i < targetBucket.size; i++) {
+                if (targetBucket.chatIds[i] == chatId) {
+                    targetBucket.years[i] = year;
+                    moved++;
+                }
+            }
+            for (int day = 0; day < DAYS; day++) {
+                if (day == target) {
+                    continue;
+                }
+                Bucket bucket = buckets[day];
+                int i = 0;
+                while (i < bucket.size) {
+                    if (bucket.chatIds[i] != chatId) {
+                        i++;
+                        continue;
+                    }
+                    int entryId = bucket.entryIds[i];
+                    targetBucket.add(chatId, entryId, bucket.nameRefs[i], year);
+                    dayOfEntry.put(entryId, target);
+                    // на место i встала последняя запись корзины, индекс не двигаем
+                    bucket.removeAt(i);
+                    moved++;
+                }
+            }
+            record(index -> index.moveChat(chatId, birthday));
+            return moved;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    // Начало перезагрузки: всё, что изменится дальше, попадёт и в новый календарь
+    public void startRecording() {
+        lock.writeLock().lock();
+        try {
+            journal = new ArrayList<>();
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    // Загрузка не удалась - календарь остаётся в работе как есть
+    public void stopRecording() {
+        lock.writeLock().lock();
+        try {
+            journal = null;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    // Переносит в загруженный календарь изменения, которые могли не попасть в его выборку.
+    // Все изменения идемпотентны, поэтому повтор уже загруженных не вредит
+    public void handOver(BirthdayCalendarIndex next) {
+        lock.writeLock().lock();
+        try {
+            if (journal != null) {
+                for (Consumer<BirthdayCalendarIndex> change : journal) {
+                    change.accept(next);
+                }
+            }
+            journal = null;
+            successor = next;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    // Вызывается под записью; порядок блокировок всегда старый -> новый
+    private void record(Consumer<BirthdayCalendarIndex> change) {
+        if (successor != null) {
+            change.accept(successor);
+        } else if (journal != null) {
+            journal.add(change);
+        }
+    }
+
+    // Все дни рождения на дату; в невисокосный год 28 февраля включает и 29-е
+    public List<BirthdayUser> findOn(LocalDate date) {
+        lock.readLock().lock();
+        try {
+            List<BirthdayUser> result = new ArrayList<>();
+            int day = dayIndex(date.getMonthValue(), date.getDayOfMonth());
+            collect(buckets[day], day, result);
+            if (DatabaseManager.lastMonthDayOf(date) == 229 && day != FEB_29) {
+                collect(buckets[FEB_29], FEB_29, result);
+            }
+            return result;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    // Дни рождения чата в окне [from, to] ключей MMDD, в том же порядке, что и ORDER BY birth_mmdd
+    public List<BirthdayUser> findInWindow(long chatId, int fromMonthDay, int toMonthDay) {
+        int from = dayIndex(fromMonthDay);
+        int to = dayIndex(toMonthDay);
+
+        lock.readLock().lock();
+        try {
+            List<BirthdayUser> result = new ArrayList<>();
+            if (from <= to) {
+                collectChat(chatId, from, to, result);
+            } else {
+                collectChat(chatId, 0, to, result);
+                collectChat(chatId, from, DAYS - 1, result);
+            }
+            return result;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    public int size() {
+        lock.readLock().lock();
+        try {
+            return dayOfEntry.size();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    private void collectChat(long chatId, int fromDay, int toDay, List<BirthdayUser> result) {
+        for (int day = fromDay; day <= toDay; day++) {
+            Bucket bucket = buckets[day];
+            for (int i = 0; i < bucket.size; i++) {
+                if (bucket.chatIds[i] == chatId) {
+                    result.add(toUser(bucket, i, day));
+                }
+            }
+        }
+    }
+
+    private void collect(Bucket bucket, int day, List<BirthdayUser> result) {
+        for (int i = 0; i < bucket.size; i++) {
+            result.add(toUser(bucket, i, day));
+        }
+    }
+
+    private BirthdayUser toUser(Bucket bucket, int i, int day) {
+        LocalDate monthDay = LocalDate.ofYearDay(LEAP_YEAR, day + 1);
+        LocalDate birthday = LocalDate.of(bucket.years[i], monthDay.getMonth(), monthDay.getDayOfMonth());
+        return new BirthdayUser(bucket.entryIds[i], bucket.chatIds[i], names.get(bucket.nameRefs[i]), birthday);
+    }
+
+    private static final class Bucket {
+        private long[] chatIds = new long[4];
+        private int[] entryIds = new int[4];
+        private int[] nameRefs = new int[4];
+        private short[] years = new short[4];
+        private int size;
+
+        void add(long chatId, int entryId, int nameRef, short year) {
+            if (size == chatIds.length) {
+                int capacity = size * 2;
+                chatIds = Arrays.copyOf(chatIds, capacity);
+                entryIds = Arrays.copyOf(entryIds, capacity);
+                nameRefs = Arrays.copyOf(nameRefs, capacity);
+                years = Arrays.copyOf(years, capacity);
+            }
+            chatIds[size] = chatId;
+            entryIds[size] = entryId;
+            nameRefs[size] = nameRef;
+            years[size] = year;
+            size++;
+        }
+
+        int indexOf(int entryId) {
+            for (int i = 0; i < size; i++) {
+                if (entryIds[i] == entryId) {
+                    return i;
+                }
+            }
+            return -1;
+        }
+
+        // Порядок внутри дня не важен, поэтому удаляем перестановкой последнего элемента
+        void removeAt(int i) {
+            int last = size - 1;
+            chatIds[i] = chatIds[last];
+            entryIds[i] = entryIds[last];
+            nameRefs[i] = nameRefs[last];
+            years[i] = years[last];
+            size--;
+        }
+    }
+
+    // Имена хранятся один раз, в корзинах лежат только номера ячеек
+    private static final class NamePool {
+        private String[] values = new String[64];
+        private int[] free = new int[16];
+        private int freeCount;
+        private int used;
+
+        int add(String name) {
+            int ref;
+            if (freeCount > 0) {
+                ref = free[--freeCount];
+            } else {
+                if (used == values.length) {
+                    values = Arrays.copyOf(values, used * 2);
+                }
+                ref = used++;
+            }
+            values[ref] = name;
+            return ref;
+        }
+
+        String get(int ref) {
+            return values[ref];
+        }
+
+        void set(int ref, String name) {
+            values[ref] = name;
+        }
+
+        void release(int ref) {
+            values[ref] = null;
+            if (freeCount == free.length) {
+                free = Arrays.copyOf(free, freeCount * 2);
+            }
+            free[freeCount++] = ref;
+        }
+    }
+}
@@ -0,0 +1,228 @@
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.Reader;
+import java.io.UncheckedIOException;
+import java.time.DateTimeException;
+import java.time.LocalDate;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Locale;
+import java.util.NoSuchElementException;
+
+// Потоковый разбор файла импорта: CSV ("Имя;ДД.ММ.ГГГГ") или vCard (FN + BDAY).
+// Строки читаются по одной по мере того, как их забирает вставка в БД; невалидные пропускаются и считаются.
+public class BirthdayImportParser implements Iterator<BirthdayEntry> {
+    private static final int MAX_NAME_LENGTH = 255;
+    private static final DateTimeFormatter RU_DATE = DateTimeFormatter.ofPattern("dd.MM.yyyy");
+    private static final DateTimeFormatter BASIC_DATE = DateTimeFormatter.BASIC_ISO_DATE;
+
+    public enum Format { CSV, VCARD }
+
+    private final BufferedReader reader;
+    private final long ownerChatId;
+    private final LocalDate today = LocalDate.now();
+    private Format format;
+
+    private BirthdayEntry next;
+    private int lineNumber;
+    private int rejected;
+    private String vcardName;
+    private LocalDate vcardBirthday;
+
+    public BirthdayImportParser(Reader reader, long ownerChatId) {
+        this(reader, ownerChatId, null);
+    }
+
+    // format == null - определить по содержимому файла
+    public BirthdayImportParser(Reader reader, long ownerChatId, Format format) {
+        this.reader = reader instanceof BufferedReader ? (BufferedReader) reader : new BufferedReader(reader);
+        this.ownerChatId = ownerChatId;
+        this.format = format;
+    }
+
+    // Формат по расширению файла; null - расширение ничего не говорит, определим по содержимому
+    public static Format formatOf(String fileName) {
+        String lower = fileName == null ? "" : fileName.toLowerCase(Locale.ROOT);
+        if (lower.endsWith(".vcf") || lower.endsWith(".vcard")) {
+            return Format.VCARD;
+        }
+        return lower.endsWith(".csv") ? Format.CSV : null;
+    }
+
+    public int getRejected() {
+        return rejected;
+    }
+
+    public int getLinesRead() {
+        return lineNumber;
+    }
+
+    @Override
+    public boolean hasNext() {
+        if (next == null) {
+            next = readNext();
+        }
+        return next != null;
+    }
+
+    @Override
+    public BirthdayEntry next() {
+        if (!hasNext()) {
+            throw new NoSuchElementException();
+        }
+        BirthdayEntry entry = next;
+        next = null;
+        return entry;
+    }
+
+    private BirthdayEntry readNext() {
+        try {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                lineNumber++;
+                if (lineNumber == 1 && line.startsWith("\uFEFF")) {
+                    line = line.substring(1);
+                }
+                if (line.trim().isEmpty()) {
+                    continue;
+                }
+                if (format == null) {
+                    format = line.trim().equalsIgnoreCase("BEGIN:VCARD") ? Format.VCARD : Format.CSV;
+                }
+
+                BirthdayEntry entry = format == Format.VCARD ? parseVcardLine(line) : parseCsvLine(line);
+                if (entry != null) {
+                    return entry;
+                }
+            }
+            return null;
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private BirthdayEntry parseCsvLine(String line) {
+        String[] fields = splitCsv(line);
+        if (fields.length < 2) {
+            rejectUnlessHeader(line);
+            return null;
+        }
+        LocalDate birthday = parseDate(fields[1].trim());
+        BirthdayEntry entry = validate(fields[0].trim(), birthday);
+        if (entry == null) {
+            rejectUnlessHeader(line);
+        }
+        return entry;
+    }
+
+    // Первая строка без цифр - заголовок вида "name;birthday", её не считаем ошибкой
+    private void rejectUnlessHeader(String line) {
+        if (lineNumber == 1 && !line.matches(".*\\d.*")) {
+            return;
+        }
+        rejected++;
+    }
+
+    private BirthdayEntry parseVcardLine(String line) {
+        String trimmed = line.trim();
+        int colon = trimmed.indexOf(':');
+        if (colon < 0) {
+            return null;
+        }
+        // "BDAY;VALUE=date:1990-05-15" -> свойство BDAY, значение 1990-05-15
+        String property = trimmed.substring(0, colon).toUpperCase(Locale.ROOT);
+        int paramsStart = property.indexOf(';');
+        if (paramsStart >= 0) {
+            property = property.substring(0, paramsStart);
+        }
+        String value = trimmed.substring(colon + 1).trim();
+
+        switch (property) {
+            case "BEGIN":
+                vcardName = null;
+                vcardBirthday = null;
+                return null;
+            case "FN":
+                vcardName = value.replace("\\,", ",").replace("\\;", ";");
+                return null;
+            case "BDAY":
+                vcardBirthday = parseDate(value);
+                if (vcardBirthday == null) {
+                    vcardBirthday = LocalDate.MIN;
+                }
+                return null;
+            case "END":
+                // контакты без дня рождения в телефонной книге - обычное дело, это не ошибка
+                if (vcardBirthday == null) {
+                    return null;
+                }
+                BirthdayEntry entry = validate(vcardName, vcardBirthday);
+                if (entry == null) {
+                    rejected++;
+                }
+                return entry;
+            default:
+                return null;
+        }
+    }
+
+    private BirthdayEntry validate(String name, LocalDate birthday) {
+        if (name == null || name.isEmpty() || name.length() > MAX_NAME_LENGTH) {
+            return null;
+        }
+        if (birthday == null || birthday.equals(LocalDate.MIN) || birthday.isAfter(today)
+                || birthday.getYear() < 1900) {
+            return null;
+        }
+        return new BirthdayEntry(0, ownerChatId, name, birthday);
+    }
+
+    static LocalDate parseDate(String value) {
+        try {
+            if (value.matches("\\d{2}\\.\\d{2}\\.\\d{4}")) {
+                return LocalDate.parse(value, RU_DATE);
+            }
+            if (value.matches("\\d{4}-\\d{2}-\\d{2}")) {
+                return LocalDate.parse(value);
+            }
+            if (value.matches("\\d{8}")) {
+                return LocalDate.parse(value, BASIC_DATE);
+            }
+        } catch (DateTimeException e) {
+            return null;
+        }
+        return null;
+    }
+
+    // Разделитель - ';' или ','; поле может быть в кавычках, "" внутри - экранированная кавычка
+    static String[] splitCsv(String line) {
+        char separator = line.indexOf(';') >= 0 ? ';' : ',';
+        List<String> fields = new ArrayList<>();
+        StringBuilder field = new StringBuilder();
+        boolean quoted = false;
+        for (int i = 0; i < line.length(); i++) {
+            char c = line.charAt(i);
+            if (quoted) {
+                if (c == '"' && i + 1 < line.length() && line.charAt(i + 1) == '"') {
+                    field.append('"');
+                    i++;
+                } else if (c == '"') {
+                    quoted = false;
+                } else {
+                    field.append(c);
+                }
+            } else if (c == '"') {
+                quoted = true;
+            } else if (c == separator) {
+                fields.add(field.toString());
+                field.setLength(0);
+            } else {
+                field.append(c);
+            }
+        }
+        fields.add(field.toString());
+        return fields.toArray(new String[0]);
+    }
+}
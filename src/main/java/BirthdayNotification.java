@@ -1,12 +1,23 @@
 public class BirthdayNotification {
+    private final int entryId;
     private final long notifyChatId;
     private final String personName;
 
     public BirthdayNotification(long notifyChatId, String personName) {
+        this(0, notifyChatId, personName);
+    }
+
+    public BirthdayNotification(int entryId, long notifyChatId, String personName) {
+        this.entryId = entryId;
         this.notifyChatId = notifyChatId;
         this.personName = personName;
     }
 
+    // id записи в users; 0 - запись неизвестна
+    public int getEntryId() {
+        return entryId;
+    }
+
     public long getNotifyChatId() {
         return notifyChatId;
     }
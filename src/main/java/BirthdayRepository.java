@@ -0,0 +1,194 @@
+import java.sql.SQLException;
+import java.time.LocalDate;
+import java.time.ZoneId;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.function.IntConsumer;
+
+// Хранилище записей, часовых поясов чатов, заготовок поздравлений и outbox рассылки.
+// Bot и BirthdayScheduler работают только с ним; реализация выбирается при старте (Bot.openRepository):
+// DatabaseManager - PostgreSQL, EmbeddedBirthdayRepository - H2 в файле рядом с ботом (один узел, без сети),
+// InMemoryBirthdayRepository - всё в памяти (тесты и бенчмарки)
+public interface BirthdayRepository {
+
+    // id новой записи. Одинаковые имя и дата в чате допустимы (тёзки), уникален только id
+    int addUser(long telegramId, String name, LocalDate birthday) throws SQLException;
+
+    // future завершается, когда запись сохранена; по умолчанию - сразу
+    default CompletableFuture<Integer> addUserAsync(long telegramId, String name, LocalDate birthday) {
+        try {
+            return CompletableFuture.completedFuture(addUser(telegramId, name, birthday));
+        } catch (SQLException e) {
+            return CompletableFuture.failedFuture(e);
+        }
+    }
+
+    // Имя и дата меняются у всех записей чата
+    boolean updateName(long telegramId, String name);
+
+    boolean updateBirthday(long telegramId, LocalDate birthday);
+
+    // false - у чата нет записи с таким id
+    boolean deleteUser(long telegramId, int id);
+
+    int getUsersNum(long telegramId);
+
+    // Все записи чата по возрастанию id, с номерами в списке
+    List<BirthdayUser> getAllUsers(long telegramId);
+
+    UserPage getUsersPageAfter(long telegramId, int afterId, int limit);
+
+    UserPage getUsersPageBefore(long telegramId, int beforeId, int limit);
+
+    // Дни рождения чата за месяц до сегодня и на месяц вперёд, по дню года
+    List<BirthdayUser> getAllRecUsers(long telegramId);
+
+    List<BirthdayUser> getAllFutUsers(long telegramId);
+
+    List<BirthdayUser> getAllUsersOnMonth(int month, long chatID);
+
+    ImportResult importUsers(long telegramId, Iterator<BirthdayEntry> entries, IntConsumer progress)
+            throws SQLException;
+
+    boolean setChatTimeZone(long telegramId, ZoneId zone);
+
+    // null - пояс не задан
+    ZoneId getChatTimeZone(long telegramId);
+
+    Set<String> getChatTimeZones();
+
+    // Дни рождения на дату; в невисокосный год 28 февраля включает и 29-е
+    List<BirthdayNotification> getNotificationsOn(LocalDate date);
+
+    void saveGreeting(int entryId, LocalDate date, String text);
+
+    Map<Integer, String> getGreetings(LocalDate date);
+
+    int deleteGreetingsBefore(LocalDate date);
+
+    int fillOutbox(LocalDate date, Collection<String> zones, String defaultZone);
+
+    // Пустой список - забирать больше нечего; ошибка хранилища бросается, а не выдаётся за пустую пачку
+    List<BirthdayNotification> claimOutboxBatch(LocalDate date, String nodeId, int limit);
+
+    // Отметки меняют только строки, захваченные nodeId
+    void markOutboxDelivered(LocalDate date, String nodeId, List<Integer> entryIds);
+
+    void markOutboxFailed(LocalDate date, String nodeId, List<Integer> entryIds);
+
+    OutboxStats getOutboxStats(LocalDate date);
+
+    void shutdown();
+
+    final class ImportResult {
+        private final int imported;
+        private final long elapsedNanos;
+
+        ImportResult(int imported, long elapsedNanos) {
+            this.imported = imported;
+            this.elapsedNanos = elapsedNanos;
+        }
+
+        public int getImported() {
+            return imported;
+        }
+
+        public long getElapsedMillis() {
+            return TimeUnit.NANOSECONDS.toMillis(elapsedNanos);
+        }
+
+        public double getRowsPerSecond() {
+            return elapsedNanos == 0 ? 0 : imported * 1e9 / elapsedNanos;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("imported=%d, elapsed=%d ms, %.0f rows/s", imported, getElapsedMillis(), getRowsPerSecond());
+        }
+    }
+
+    final class UserPage {
+        private final List<BirthdayUser> users;
+        private final boolean hasPrevious;
+        private final boolean hasNext;
+
+        UserPage(List<BirthdayUser> users, boolean hasPrevious, boolean hasNext) {
+            this.users = users;
+            this.hasPrevious = hasPrevious;
+            this.hasNext = hasNext;
+        }
+
+        public List<BirthdayUser> getUsers() {
+            return users;
+        }
+
+        public boolean isEmpty() {
+            return users.isEmpty();
+        }
+
+        public boolean hasPrevious() {
+            return hasPrevious;
+        }
+
+        public boolean hasNext() {
+            return hasNext;
+        }
+
+        public int getFirstId() {
+            return users.get(0).getId();
+        }
+
+        public int getLastId() {
+            return users.get(users.size() - 1).getId();
+        }
+    }
+
+    final class OutboxStats {
+        private final int pending;
+        private final int claimed;
+        private final int delivered;
+        private final int dead;
+
+        OutboxStats(int pending, int claimed, int delivered, int dead) {
+            this.pending = pending;
+            this.claimed = claimed;
+            this.delivered = delivered;
+            this.dead = dead;
+        }
+
+        public int getPending() {
+            return pending;
+        }
+
+        public int getClaimed() {
+            return claimed;
+        }
+
+        public int getDelivered() {
+            return delivered;
+        }
+
+        public int getDead() {
+            return dead;
+        }
+
+        public int getTotal() {
+            return pending + claimed + delivered + dead;
+        }
+
+        // рассылка начата, но не доведена до конца: есть что отправлять
+        public boolean isUnfinished() {
+            return pending + claimed > 0;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("pending=%d, claimed=%d, delivered=%d, dead=%d", pending, claimed, delivered, dead);
+        }
+    }
+}
@@ -1,9 +1,25 @@
 import com.pengrad.telegrambot.TelegramBot;
-import com.pengrad.telegrambot.request.SendMessage;
 
+import java.lang.management.ManagementFactory;
+import java.time.DateTimeException;
 import java.time.Duration;
+import java.time.Instant;
+import java.time.LocalDate;
 import java.time.LocalTime;
+import java.time.ZoneId;
+import java.time.ZonedDateTime;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentLinkedQueue;
 import java.util.concurrent.Executors;
 import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.TimeUnit;
@@ -15,58 +31,330 @@ public class BirthdayScheduler {
 
     private final ScheduledExecutorService scheduler;
     private final TelegramBot bot;
-    private final DatabaseManager database;
+    private final BirthdayRepository database;
+    private final NotificationDispatcher dispatcher;
+    private final GreetingPregenerator pregenerator;
+    // имя узла в захваченных строках outbox: "pid@host"
+    private final String nodeId = ManagementFactory.getRuntimeMXBean().getName();
 
-    private static final int CHECK_HOUR = 9;
-    private static final int CHECK_MINUTE = 0;
+    // местное время чата, в которое приходят поздравления
+    private static final LocalTime NOTIFY_TIME = LocalTime.of(9, 0);
+    // тик планировщика: рассылка каждого пояса начинается не позже чем через TICK_MINUTES после NOTIFY_TIME
+    private static final long TICK_MINUTES = 5;
+    // в этом окне после NOTIFY_TIME outbox пояса дозаполняется на каждом тике -
+    // так рассылка не теряется, если узел перезапускался как раз в момент NOTIFY_TIME
+    private static final Duration FILL_WINDOW = Duration.ofHours(1);
+    // заготовка поздравлений на завтра - с вечера по времени сервера (даты в поясах чатов - pregenerationDates)
+    private static final LocalTime PREGENERATE_TIME = LocalTime.of(21, 0);
+    private static final int OUTBOX_BATCH_SIZE = 100;
+    // лимит длины текста сообщения в Bot API
+    static final int MAX_MESSAGE_LENGTH = 4096;
+    private static final String DIGEST_HEADER = "Сегодня дни рождения! 🎉\n\n";
+    private static final String DIGEST_CONTINUATION_HEADER = "Дни рождения (продолжение):\n\n";
 
-    public BirthdayScheduler(TelegramBot bot, DatabaseManager database) {
+    private static final MetricsRegistry METRICS = MetricsRegistry.getDefault();
+
+    public BirthdayScheduler(TelegramBot bot, BirthdayRepository database) {
+        this(bot, database, new NotificationDispatcher(bot));
+    }
+
+    public BirthdayScheduler(TelegramBot bot, BirthdayRepository database, NotificationDispatcher dispatcher) {
+        this(bot, database, dispatcher, null);
+    }
+
+    // pregenerator == null - без заготовки, рассылка шлёт шаблонные поздравления
+    public BirthdayScheduler(TelegramBot bot, BirthdayRepository database, NotificationDispatcher dispatcher,
+                             GreetingPregenerator pregenerator) {
         this.scheduler = Executors.newScheduledThreadPool(1);
         this.bot = bot;
         this.database = database;
+        this.dispatcher = dispatcher;
+        this.pregenerator = pregenerator;
     }
 
     public void start() {
         LOGGER.info("BirthdayScheduler started");
-        scheduleDailyCheck();
+        // тики выровнены по границе TICK_MINUTES; время каждого тика берётся заново, так что переход
+        // на летнее время и дрейф периода на момент рассылки не влияют
+        long tickMillis = TimeUnit.MINUTES.toMillis(TICK_MINUTES);
+        long initialDelayMillis = tickMillis - System.currentTimeMillis() % tickMillis;
+        scheduler.scheduleAtFixedRate(this::checkBirthdays, initialDelayMillis, tickMillis, TimeUnit.MILLISECONDS);
+        if (pregenerator != null) {
+            scheduleNextPregeneration();
+        }
     }
 
-    private void scheduleDailyCheck() {
-        LocalTime target = LocalTime.of(CHECK_HOUR, CHECK_MINUTE);
-        LocalTime now = LocalTime.now();
+    // Следующий запуск считается от настенного времени заново после каждого запуска
+    private void scheduleNextPregeneration() {
+        ZonedDateTime now = ZonedDateTime.now();
+        ZonedDateTime next = now.with(PREGENERATE_TIME);
+        if (!next.isAfter(now)) {
+            next = now.plusDays(1).with(PREGENERATE_TIME);
+        }
+        scheduler.schedule(() -> {
+            pregenerateGreetings();
+            scheduleNextPregeneration();
+        }, Duration.between(now, next).toMillis(), TimeUnit.MILLISECONDS);
+    }
+
+    private void pregenerateGreetings() {
+        pregenerateGreetings(Instant.now(), ZoneId.systemDefault());
+    }
 
-        long initialDelayMinutes = now.isBefore(target)
-                ? Duration.between(now, target).toMinutes()
-                : Duration.between(now, target.plusHours(24)).toMinutes();
+    // Заготовка идёт раз в сутки по времени сервера, а утро у чатов наступает в их поясах.
+    // Поэтому заготавливаются все местные даты, до утра которых какой-то пояс дойдёт до следующего запуска
+    // (см. pregenerationDates), а старые заготовки удаляются только до самой ранней даты, которая ещё
+    // идёт в каком-либо поясе: её рассылка может быть не закончена
+    void pregenerateGreetings(Instant now, ZoneId defaultZone) {
+        long start = System.nanoTime();
+        try {
+            Collection<ZonedDateTime> localTimes = localTimes(now, defaultZone);
+            LocalDate earliest = localTimes.stream().map(ZonedDateTime::toLocalDate)
+                    .min(LocalDate::compareTo).orElse(now.atZone(defaultZone).toLocalDate());
+            database.deleteGreetingsBefore(earliest);
+            for (LocalDate date : pregenerationDates(localTimes)) {
+                pregenerator.pregenerate(date);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (Exception e) {
+            LOGGER.log(Level.SEVERE, "pregenerateGreetings failed", e);
+        } finally {
+            recordRun("pregeneration", start);
+        }
+    }
 
-        scheduler.scheduleAtFixedRate(
-                this::checkBirthdays,
-                initialDelayMinutes,
-                24 * 60L,
-                TimeUnit.MINUTES
-        );
+    // Для каждого пояса - завтрашняя местная дата (её утро наступит в ближайшие сутки) и сегодняшняя,
+    // если её рассылка ещё не началась. Уже заготовленное pregenerate пропускает
+    static Set<LocalDate> pregenerationDates(Collection<ZonedDateTime> localTimes) {
+        Set<LocalDate> dates = new TreeSet<>();
+        for (ZonedDateTime local : localTimes) {
+            dates.add(local.toLocalDate().plusDays(1));
+            if (local.toLocalTime().isBefore(NOTIFY_TIME.plus(FILL_WINDOW))) {
+                dates.add(local.toLocalDate());
+            }
+        }
+        return dates;
+    }
+
+    // Текущее местное время в каждом поясе чатов и в поясе сервера; неизвестные пояса пропускаются
+    private Collection<ZonedDateTime> localTimes(Instant now, ZoneId defaultZone) {
+        Set<String> zones = new HashSet<>(database.getChatTimeZones());
+        zones.add(defaultZone.getId());
+
+        List<ZonedDateTime> localTimes = new ArrayList<>();
+        for (String zoneId : zones) {
+            try {
+                localTimes.add(now.atZone(ZoneId.of(zoneId)));
+            } catch (DateTimeException e) {
+                LOGGER.warning("Unknown time zone in chats: " + zoneId);
+            }
+        }
+        return localTimes;
+    }
+
+    private static void recordRun(String job, long startNanos) {
+        METRICS.latency("scheduler_run_duration_seconds", "Duration of scheduled jobs", "job", job)
+                .recordSince(startNanos);
     }
 
     private void checkBirthdays() {
+        checkBirthdays(Instant.now(), ZoneId.systemDefault());
+    }
+
+    // Один тик. Чаты разбиты на корзины по часовым поясам (чаты без пояса - в поясе сервера):
+    // outbox заполняется только для поясов, где местное утро только что наступило, поэтому рассылка
+    // растянута на сутки. Затем узел разбирает outbox за все даты, которые сейчас идут в каком-либо поясе:
+    // там же подбираются повторы неудачных отправок и строки, брошенные упавшими узлами
+    void checkBirthdays(Instant now, ZoneId defaultZone) {
+        long start = System.nanoTime();
         try {
-            List<BirthdayNotification> notifications = database.getTodayNotifications();
-            if (notifications.isEmpty()) {
-                LOGGER.info("No birthdays today");
-                return;
+            Map<LocalDate, List<String>> dueZones = new TreeMap<>();
+            Set<LocalDate> activeDates = new TreeSet<>();
+            for (ZonedDateTime local : localTimes(now, defaultZone)) {
+                activeDates.add(local.toLocalDate());
+                if (isNotifyWindow(local.toLocalTime())) {
+                    dueZones.computeIfAbsent(local.toLocalDate(), date -> new ArrayList<>())
+                            .add(local.getZone().getId());
+                }
             }
 
-            for (BirthdayNotification n : notifications) {
-                String msg = "Сегодня день рождения у " + n.getPersonName() + "! Поздравляю! 🎂";
-                bot.execute(new SendMessage(n.getNotifyChatId(), msg));
+            for (Map.Entry<LocalDate, List<String>> due : dueZones.entrySet()) {
+                database.fillOutbox(due.getKey(), due.getValue(), defaultZone.getId());
+            }
+            for (LocalDate date : activeDates) {
+                if (drainOutbox(date) > 0) {
+                    LOGGER.info("Outbox for " + date + ": " + database.getOutboxStats(date));
+                }
             }
-
-            LOGGER.info("Sent " + notifications.size() + " birthday notifications");
         } catch (Exception e) {
             LOGGER.log(Level.SEVERE, "checkBirthdays failed", e);
+        } finally {
+            recordRun("notifications", start);
+        }
+    }
+
+    static boolean isNotifyWindow(LocalTime localTime) {
+        return !localTime.isBefore(NOTIFY_TIME) && localTime.isBefore(NOTIFY_TIME.plus(FILL_WINDOW));
+    }
+
+    // Проход по outbox за date. Итоги отправки приходят из потоков воркеров и пишутся в БД пачками.
+    // Доставленные отмечаются после каждой забранной пачки, неудачные - только в конце прохода:
+    // вернувшись в pending раньше, они снова попали бы в этот же проход и за одну волну сбоя
+    // израсходовали бы все попытки (и пришли бы не по порядку чатов). Так они будут забраны на следующем тике
+    private int drainOutbox(LocalDate date) {
+        List<BirthdayNotification> batch = database.claimOutboxBatch(date, nodeId, OUTBOX_BATCH_SIZE);
+        if (batch.isEmpty()) {
+            return 0;
+        }
+
+        // заготовки читаются одним запросом до начала рассылки, модель здесь не вызывается
+        Map<Integer, String> greetings = database.getGreetings(date);
+        Queue<Integer> delivered = new ConcurrentLinkedQueue<>();
+        Queue<Integer> failed = new ConcurrentLinkedQueue<>();
+        NotificationDispatcher.Run run = dispatcher.startRun();
+        List<BirthdayNotification> pending = new ArrayList<>();
+        int claimed = 0;
+        try {
+            do {
+                pending.addAll(batch);
+                claimed += batch.size();
+                // пачка приходит по чатам подряд; последний чат полной пачки может продолжиться
+                // в следующей, поэтому его строки ждут её, чтобы уйти одной сводкой
+                int ready = batch.size() < OUTBOX_BATCH_SIZE ? pending.size() : lastChatStart(pending);
+                submitDigests(run, pending.subList(0, ready), greetings, delivered, failed);
+                pending = new ArrayList<>(pending.subList(ready, pending.size()));
+                database.markOutboxDelivered(date, nodeId, drain(delivered));
+            } while (!(batch = database.claimOutboxBatch(date, nodeId, OUTBOX_BATCH_SIZE)).isEmpty());
+            submitDigests(run, pending, greetings, delivered, failed);
+        } finally {
+            NotificationDispatcher.Stats stats = run.finish();
+            flushResults(date, delivered, failed);
+            LOGGER.info("Birthday notifications for " + date + " dispatched by " + nodeId + ": "
+                    + claimed + " entries, " + stats);
+        }
+        return claimed;
+    }
+
+    private void flushResults(LocalDate date, Queue<Integer> delivered, Queue<Integer> failed) {
+        database.markOutboxDelivered(date, nodeId, drain(delivered));
+        database.markOutboxFailed(date, nodeId, drain(failed));
+    }
+
+    private static List<Integer> drain(Queue<Integer> queue) {
+        List<Integer> ids = new ArrayList<>();
+        Integer id;
+        while ((id = queue.poll()) != null) {
+            ids.add(id);
+        }
+        return ids;
+    }
+
+    private static int lastChatStart(List<BirthdayNotification> notifications) {
+        int start = notifications.size();
+        long chatId = notifications.get(start - 1).getNotifyChatId();
+        while (start > 0 && notifications.get(start - 1).getNotifyChatId() == chatId) {
+            start--;
+        }
+        return start;
+    }
+
+    private void submitDigests(NotificationDispatcher.Run run, List<BirthdayNotification> notifications,
+                               Map<Integer, String> greetings, Queue<Integer> delivered, Queue<Integer> failed) {
+        for (Digest digest : buildDigests(notifications, greetings)) {
+            List<Integer> entryIds = digest.getEntryIds();
+            run.submit(digest.getChatId(), digest.getText(),
+                    sent -> (sent ? delivered : failed).addAll(entryIds));
+        }
+    }
+
+    // Одно сообщение на чат: все дни рождения чата за день собираются в сводку, которая делится
+    // на несколько сообщений только по лимиту длины Telegram. Каждая часть помнит свои строки outbox,
+    // так что недоставленная часть будет отправлена повторно без уже доставленных
+    static List<Digest> buildDigests(List<BirthdayNotification> notifications, Map<Integer, String> greetings) {
+        Map<Long, List<BirthdayNotification>> byChat = new LinkedHashMap<>();
+        for (BirthdayNotification n : notifications) {
+            byChat.computeIfAbsent(n.getNotifyChatId(), chatId -> new ArrayList<>()).add(n);
+        }
+
+        List<Digest> digests = new ArrayList<>();
+        for (Map.Entry<Long, List<BirthdayNotification>> chat : byChat.entrySet()) {
+            List<BirthdayNotification> entries = chat.getValue();
+            if (entries.size() == 1) {
+                BirthdayNotification n = entries.get(0);
+                digests.add(new Digest(chat.getKey(), truncate(notificationText(n, greetings.get(n.getEntryId()))),
+                        Collections.singletonList(n.getEntryId())));
+                continue;
+            }
+
+            StringBuilder text = new StringBuilder(DIGEST_HEADER);
+            List<Integer> entryIds = new ArrayList<>();
+            for (BirthdayNotification n : entries) {
+                String section = truncate(digestSection(n, greetings.get(n.getEntryId())));
+                if (!entryIds.isEmpty() && text.length() + section.length() > MAX_MESSAGE_LENGTH) {
+                    digests.add(new Digest(chat.getKey(), truncate(text.toString().trim()), entryIds));
+                    text = new StringBuilder(DIGEST_CONTINUATION_HEADER);
+                    entryIds = new ArrayList<>();
+                }
+                text.append(section);
+                entryIds.add(n.getEntryId());
+            }
+            digests.add(new Digest(chat.getKey(), truncate(text.toString().trim()), entryIds));
+        }
+        return digests;
+    }
+
+    static String notificationText(BirthdayNotification notification, String greeting) {
+        return "Сегодня день рождения у " + notification.getPersonName() + "! 🎂\n" + greetingText(notification, greeting);
+    }
+
+    private static String digestSection(BirthdayNotification notification, String greeting) {
+        return "🎂 " + notification.getPersonName() + "\n" + greetingText(notification, greeting) + "\n\n";
+    }
+
+    private static String greetingText(BirthdayNotification notification, String greeting) {
+        String text = greeting != null ? greeting : RuGPT3Generator.getFallbackGreeting(notification.getPersonName());
+        return text.trim();
+    }
+
+    // Режет по границе символа: эмодзи - суррогатная пара, и половина пары - битый текст
+    static String truncate(String text) {
+        if (text.length() <= MAX_MESSAGE_LENGTH) {
+            return text;
+        }
+        int end = MAX_MESSAGE_LENGTH - 1;
+        if (Character.isHighSurrogate(text.charAt(end - 1))) {
+            end--;
+        }
+        return text.substring(0, end) + "…";
+    }
+
+    static final class Digest {
+        private final long chatId;
+        private final String text;
+        private final List<Integer> entryIds;
+
+        Digest(long chatId, String text, List<Integer> entryIds) {
+            this.chatId = chatId;
+            this.text = text;
+            this.entryIds = entryIds;
+        }
+
+        long getChatId() {
+            return chatId;
+        }
+
+        String getText() {
+            return text;
+        }
+
+        List<Integer> getEntryIds() {
+            return entryIds;
         }
     }
 
     public void stop() {
+        dispatcher.shutdown();
         scheduler.shutdown();
         try {
             if (!scheduler.awaitTermination(5, TimeUnit.SECONDS)) {
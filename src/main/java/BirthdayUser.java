@@ -2,16 +2,24 @@ import java.time.LocalDate;
 import java.time.temporal.ChronoUnit;
 
 public class BirthdayUser {
+    private int id;
     private long telegramId;
     private String name;
     private LocalDate birthday;
+    // номер записи в списке чата (1, 2, ...); 0 - если список его не выдавал
+    private int ordinal;
 
     public BirthdayUser(int id, long telegramId, String name, LocalDate birthday) {
+        this.id = id;
         this.telegramId = telegramId;
         this.name = name;
         this.birthday = birthday;
     }
 
+    public int getId() {
+        return id;
+    }
+
     public long getTelegramId() {
         return telegramId;
     }
@@ -36,6 +44,14 @@ public class BirthdayUser {
         this.birthday = birthday;
     }
 
+    public int getOrdinal() {
+        return ordinal;
+    }
+
+    public void setOrdinal(int ordinal) {
+        this.ordinal = ordinal;
+    }
+
     public int getAge() {
         return (int) ChronoUnit.YEARS.between(birthday, LocalDate.now());
     }
@@ -47,7 +63,8 @@ public class BirthdayUser {
     @Override
     public String toString() {
         return "BirthdayUser{" +
-                "telegramId=" + telegramId +
+                "id=" + id +
+                ", telegramId=" + telegramId +
                 ", name='" + name + '\'' +
                 ", birthday=" + birthday +
                 '}';
@@ -1,60 +1,374 @@
 import com.pengrad.telegrambot.TelegramBot;
 import com.pengrad.telegrambot.UpdatesListener;
+import com.pengrad.telegrambot.model.CallbackQuery;
+import com.pengrad.telegrambot.model.Document;
 import com.pengrad.telegrambot.model.Update;
+import com.pengrad.telegrambot.model.request.InlineKeyboardButton;
+import com.pengrad.telegrambot.model.request.InlineKeyboardMarkup;
+import com.pengrad.telegrambot.request.AnswerCallbackQuery;
+import com.pengrad.telegrambot.request.EditMessageText;
+import com.pengrad.telegrambot.request.GetFile;
 import com.pengrad.telegrambot.request.SendMessage;
-
+import com.pengrad.telegrambot.request.SetWebhook;
+import com.pengrad.telegrambot.response.BaseResponse;
+import com.pengrad.telegrambot.response.GetFileResponse;
+import com.pengrad.telegrambot.response.SendResponse;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Paths;
+import java.time.DateTimeException;
+import java.time.Duration;
 import java.time.LocalDate;
+import java.time.ZoneId;
 import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Predicate;
+import java.util.logging.Level;
+import java.util.logging.Logger;
 
 public class Bot {
-    private static final Map<Long, String> userStates = new HashMap<>();
-    private static final Map<Long, String> tempNames = new HashMap<>();
-
+    private static final Logger LOGGER = Logger.getLogger(Bot.class.getName());
+
+    // Апдейты одного чата обрабатываются строго по порядку, разных чатов - параллельно
+    private static final int UPDATE_STRIPES = 16;
+    private static final int UPDATE_QUEUE_PER_STRIPE = 256;
+    // Bot API отдаёт ботам файлы не больше 20 МБ
+    private static final long MAX_IMPORT_FILE_BYTES = 20L * 1024 * 1024;
+    // Срок на всё скачивание файла импорта: и ожидание ответа, и чтение тела
+    private static final Duration IMPORT_DOWNLOAD_TIMEOUT = Duration.ofSeconds(60);
+    // Импорты идут в своих потоках, а не в полосе чата: минута скачивания и запись тысяч строк
+    // не должны задерживать апдейты соседних чатов. Сверх очереди файл сразу получает отказ
+    private static final int IMPORT_THREADS = 2;
+    private static final int IMPORT_QUEUE = 8;
+    // записей на страницу списка: с запасом укладывается в 4096 символов сообщения
+    private static final int LIST_PAGE_SIZE = 25;
+    // параллельных соединений Telegram к webhook: по умолчанию 40, нам хватает потоков приёма
+    private static final int WEBHOOK_MAX_CONNECTIONS = 8;
+    // сколько после записи чата его чтения идут в основную базу, а не на реплику
+    private static final long DEFAULT_READ_YOUR_WRITES_MILLIS = 5_000;
+    private static final int WRITE_BEHIND_MAX_BATCH = 500;
+    private static final String DEFAULT_EMBEDDED_DB_PATH = "data/birthdays";
+    // как долго календарь в памяти может не видеть записи других узлов
+    private static final long DEFAULT_CALENDAR_INDEX_REFRESH_SECONDS = 60;
+    // сколько приём ждёт места в переполненной полосе, прежде чем отказаться от апдейта
+    private static final long ENQUEUE_TIMEOUT_MILLIS = 2_000;
+
+    private static final Set<String> KNOWN_COMMANDS = new HashSet<>(Arrays.asList(
+            "/start", "/newbirthday", "/allbirthdays", "/recentbirthdays", "/futurebirthdays",
+            "/allbirthdaysonmonth", "/deletebirthday", "/getcongratulationbyneuro", "/import", "/timezone"));
+
+    private static final MetricsRegistry METRICS = MetricsRegistry.getDefault();
+    private static final LongAdder UPDATES_ENQUEUED = METRICS.counter("bot_updates_total",
+            "Incoming updates by ingestion result", "result", "enqueued");
+    private static final LongAdder UPDATES_REJECTED = METRICS.counter("bot_updates_total",
+            "Incoming updates by ingestion result", "result", "rejected");
+    private static final ConversationStore conversations = new ConversationStore();
+    private static StripedExecutor updateExecutor;
+    private static ThreadPoolExecutor importExecutor;
+
+    // Long polling: библиотека сама опрашивает getUpdates
     public static void start(String botToken, String url, String username, String password, String apiToken) {
         TelegramBot bot = new TelegramBot(botToken);
-        DatabaseManager dbManager = new DatabaseManager();
-        dbManager.initialize(url, username, password);
+        Pipeline pipeline = startPipeline(bot, url, username, password, apiToken);
+
+        bot.setUpdatesListener(updates -> confirmEnqueued(updates, pipeline));
+    }
 
-        BirthdayScheduler scheduler = new BirthdayScheduler(bot, dbManager);
+    // Webhook: Telegram сам присылает апдейты на publicUrl, который проксируется на локальный port
+    public static WebhookServer startWebhook(String botToken, String url, String username, String password,
+                                             String apiToken, String publicUrl, int port, String secret)
+            throws IOException {
+        TelegramBot bot = new TelegramBot(botToken);
+        Pipeline pipeline = startPipeline(bot, url, username, password, apiToken);
+
+        // webhook не поднялся - останавливается всё, что уже запущено, иначе планировщик
+        // продолжит рассылку в процессе, который не принимает апдейты
+        WebhookServer server = null;
+        try {
+            String path = URI.create(publicUrl).getPath();
+            server = new WebhookServer(port, path.isEmpty() ? "/" : path, secret, pipeline);
+            server.start();
+
+            BaseResponse response = bot.execute(new SetWebhook().url(publicUrl).secretToken(secret)
+                    .maxConnections(WEBHOOK_MAX_CONNECTIONS));
+            if (response == null || !response.isOk()) {
+                throw new IOException("setWebhook failed: "
+                        + (response != null ? response.description() : "no response"));
+            }
+            return server;
+        } catch (IOException | RuntimeException e) {
+            if (server != null) {
+                server.stop();
+            }
+            pipeline.shutdown();
+            throw e;
+        }
+    }
+
+    // STORAGE: postgres (по умолчанию), embedded - H2 в файле EMBEDDED_DB_PATH на этом же узле,
+    // memory - всё в памяти, без сохранения между запусками
+    static BirthdayRepository openRepository(String url, String username, String password) {
+        String storage = System.getenv("STORAGE");
+        if ("memory".equals(storage)) {
+            return new InMemoryBirthdayRepository();
+        }
+
+        DatabaseManager dbManager;
+        if ("embedded".equals(storage)) {
+            String path = System.getenv("EMBEDDED_DB_PATH");
+            dbManager = new EmbeddedBirthdayRepository(Paths.get(path != null ? path : DEFAULT_EMBEDDED_DB_PATH)).open();
+        } else if (storage == null || storage.isEmpty() || "postgres".equals(storage)) {
+            dbManager = new DatabaseManager();
+            dbManager.initialize(url, username, password);
+            // DB_REPLICA_URL задан - чтения списков идут на реплику (с теми же учётными данными)
+            String replicaUrl = System.getenv("DB_REPLICA_URL");
+            if (replicaUrl != null && !replicaUrl.isEmpty()) {
+                String window = System.getenv("READ_YOUR_WRITES_MILLIS");
+                dbManager.enableReadReplica(replicaUrl, username, password,
+                        window != null ? Long.parseLong(window) : DEFAULT_READ_YOUR_WRITES_MILLIS);
+            }
+        } else {
+            throw new IllegalArgumentException("Unknown STORAGE: " + storage + " (postgres, embedded or memory)");
+        }
+
+        // WRITE_BEHIND_FLUSH_MILLIS задан - добавления и правки записей пишутся пачками
+        String flushMillis = System.getenv("WRITE_BEHIND_FLUSH_MILLIS");
+        if (flushMillis != null && !flushMillis.isEmpty()) {
+            dbManager.enableWriteBehind(Long.parseLong(flushMillis), WRITE_BEHIND_MAX_BATCH);
+        }
+        // Календарь в памяти видит только записи своего узла. PostgreSQL может быть общим для нескольких
+        // узлов, поэтому там календарь перечитывается раз в CALENDAR_INDEX_REFRESH_SECONDS
+        // (0 - никогда, если узел один); файл H2 открывает только этот процесс
+        long refreshSeconds = 0;
+        if (!(dbManager instanceof EmbeddedBirthdayRepository)) {
+            String refresh = System.getenv("CALENDAR_INDEX_REFRESH_SECONDS");
+            refreshSeconds = refresh != null && !refresh.isEmpty()
+                    ? Long.parseLong(refresh) : DEFAULT_CALENDAR_INDEX_REFRESH_SECONDS;
+        }
+        dbManager.enableCalendarIndex(TimeUnit.SECONDS.toMillis(refreshSeconds));
+        return dbManager;
+    }
+
+    // Общая часть обоих режимов: база, планировщик и раскладка апдейтов по полосам чатов
+    private static Pipeline startPipeline(TelegramBot bot, String url, String username, String password,
+                                          String apiToken) {
+        BirthdayRepository dbManager = openRepository(url, username, password);
+
+        BirthdayScheduler scheduler = new BirthdayScheduler(bot, dbManager, new NotificationDispatcher(bot),
+                new GreetingPregenerator(dbManager, apiToken));
         scheduler.start();
 
-        bot.setUpdatesListener(updates -> {
-            for (Update update : updates) {
-                if (update.message() != null && update.message().text() != null) {
-                    Long chatId = update.message().chat().id();
-                    String messageText = update.message().text();
-                    String userName = update.message().chat().firstName();
-
-                    if (messageText.equals("/start")) {
-                        sendMessage(bot, chatId, "Привет, " + userName + "!\n"
-                                + "Я ваш бот и я умею поздравлять с днем рождения.\n"
-                                + "Как мной пользоваться:\n"
-                                + "/newBirthday - добавить день рождения в базу\n"
-                                + "/allBirthdays - посмотреть все дни рождения в базе\n"
-                                + "/recentbirthdays - посмотреть все дни рождения на прошедший месяц\n"
-                                + "/futurebirthdays - посмотреть все дни рождения на ближайший месяц\n"
-                                + "/allbirthdaysonmonth - посмотреть все дни рождения на данный месяц\n"
-                                + "/deleteBirthday - удалить день рождения из базы\n"
-                                + "/getCongratulationByNeuro - получить сгенерированное поздравление\n");
-                    } else {
-                        handleCommand(bot, chatId, messageText, dbManager, apiToken, userName);
-                    }
+        updateExecutor = new StripedExecutor("update-worker", UPDATE_STRIPES, UPDATE_QUEUE_PER_STRIPE);
+        METRICS.gauge("bot_update_queue_depth", "Updates waiting in the per-chat stripes",
+                Bot::getUpdateQueueDepth);
+        METRICS.gauge("bot_update_queue_capacity", "Updates the per-chat stripes can hold in total",
+                updateExecutor::getCapacity);
+        METRICS.gauge("bot_active_conversations", "Chats in the middle of a multi-step command",
+                conversations::size);
+
+        importExecutor = new ThreadPoolExecutor(IMPORT_THREADS, IMPORT_THREADS, 0L, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(IMPORT_QUEUE), runnable -> {
+                    Thread thread = new Thread(runnable, "import-worker");
+                    thread.setDaemon(true);
+                    return thread;
+                });
+        METRICS.gauge("bot_imports_queued", "Import files waiting for a free import worker",
+                () -> importExecutor.getQueue().size());
+
+        return new Pipeline(update -> {
+            if (update.message() != null
+                    && (update.message().text() != null || update.message().document() != null)) {
+                Long chatId = update.message().chat().id();
+                return enqueue(chatId, () -> processUpdate(bot, update, dbManager, apiToken));
+            }
+            if (update.callbackQuery() != null && update.callbackQuery().message() != null) {
+                Long chatId = update.callbackQuery().message().chat().id();
+                return enqueue(chatId, () -> processCallback(bot, update.callbackQuery(), dbManager));
+            }
+            // обрабатывать нечего - такой апдейт просто подтверждается
+            return true;
+        }, scheduler, updateExecutor, importExecutor, dbManager);
+    }
+
+    // Приём апдейтов вместе со всем, что для него запущено: планировщиком, полосами обработки,
+    // потоками импорта, хранилищем
+    static final class Pipeline implements Predicate<Update> {
+        private final Predicate<Update> accept;
+        private final BirthdayScheduler scheduler;
+        private final StripedExecutor executor;
+        private final ExecutorService imports;
+        private final BirthdayRepository repository;
+
+        Pipeline(Predicate<Update> accept, BirthdayScheduler scheduler, StripedExecutor executor,
+                 ExecutorService imports, BirthdayRepository repository) {
+            this.accept = accept;
+            this.scheduler = scheduler;
+            this.executor = executor;
+            this.imports = imports;
+            this.repository = repository;
+        }
+
+        @Override
+        public boolean test(Update update) {
+            return accept.test(update);
+        }
+
+        void shutdown() {
+            scheduler.stop();
+            executor.shutdown();
+            imports.shutdownNow();
+            repository.shutdown();
+        }
+    }
+
+    // Полоса чата переполнена - приём ждёт до ENQUEUE_TIMEOUT_MILLIS (поллер и webhook притормаживают),
+    // потом отказывается от апдейта вместо того, чтобы копить его в памяти
+    private static boolean enqueue(long chatId, Runnable task) {
+        try {
+            if (updateExecutor.offer(chatId, task, ENQUEUE_TIMEOUT_MILLIS, TimeUnit.MILLISECONDS)) {
+                UPDATES_ENQUEUED.increment();
+                return true;
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        UPDATES_REJECTED.increment();
+        LOGGER.warning("Update queue for chat " + chatId + " is full, update left unconfirmed");
+        return false;
+    }
+
+    // Подтверждаются только апдейты, попавшие в очередь: на первом отказе возвращается id предыдущего,
+    // и остальные библиотека запросит заново следующим getUpdates
+    static int confirmEnqueued(List<Update> updates, Predicate<Update> pipeline) {
+        int confirmed = UpdatesListener.CONFIRMED_UPDATES_NONE;
+        for (Update update : updates) {
+            if (!pipeline.test(update)) {
+                return confirmed;
+            }
+            confirmed = update.updateId();
+        }
+        return UpdatesListener.CONFIRMED_UPDATES_ALL;
+    }
+
+    private static void processUpdate(TelegramBot bot, Update update, BirthdayRepository dbManager, String apiToken) {
+        Long chatId = update.message().chat().id();
+        String messageText = update.message().text();
+        String userName = update.message().chat().firstName();
+        Document document = update.message().document();
+
+        String commandKey = document != null
+                ? "import_document"
+                : commandKey(messageText, conversations.getState(chatId));
+        long start = System.nanoTime();
+        try {
+            if (document != null) {
+                handleDocument(bot, chatId, document, dbManager);
+            } else if (messageText.equals("/start")) {
+                sendMessage(bot, chatId, "Привет, " + userName + "!\n"
+                        + "Я ваш бот и я умею поздравлять с днем рождения.\n"
+                        + "Как мной пользоваться:\n"
+                        + "/newBirthday - добавить день рождения в базу\n"
+                        + "/allBirthdays - посмотреть все дни рождения в базе\n"
+                        + "/recentbirthdays - посмотреть все дни рождения на прошедший месяц\n"
+                        + "/futurebirthdays - посмотреть все дни рождения на ближайший месяц\n"
+                        + "/allbirthdaysonmonth - посмотреть все дни рождения на данный месяц\n"
+                        + "/deleteBirthday - удалить день рождения из базы\n"
+                        + "/import - загрузить дни рождения из файла CSV или vCard\n"
+                        + "/timezone - часовой пояс чата: поздравления приходят в 9 утра по местному времени\n"
+                        + "/getCongratulationByNeuro - получить сгенерированное поздравление\n");
+            } else {
+                handleCommand(bot, chatId, messageText, dbManager, apiToken, userName);
+            }
+        } catch (RuntimeException e) {
+            LOGGER.log(Level.SEVERE, "Failed to process update for chat " + chatId, e);
+        } finally {
+            METRICS.latency("bot_command_duration_seconds", "Time to handle one update, by command",
+                    "command", commandKey).recordSince(start);
+        }
+    }
+
+    // Кнопки листания списка: вместо нового сообщения правится то, под которым нажата кнопка
+    private static void processCallback(TelegramBot bot, CallbackQuery query, BirthdayRepository dbManager) {
+        Long chatId = query.message().chat().id();
+        long start = System.nanoTime();
+        try {
+            bot.execute(new AnswerCallbackQuery(query.id()));
+            PageCursor cursor = PageCursor.parse(query.data());
+            if (cursor != null) {
+                List<BirthdayUser> shown = showUsersPage(bot, chatId, dbManager, query.message().messageId(), cursor);
+                // во время /deletebirthday номер можно выбрать с любой пролистанной страницы
+                ConversationStore.Conversation conversation = conversations.get(chatId);
+                if (conversation != null && conversation.getState() == ConversationState.WAITING_FOR_ID_TO_DELETE) {
+                    conversations.putListing(chatId, ConversationState.WAITING_FOR_ID_TO_DELETE,
+                            listedIds(shown, conversation.getListedIds()));
                 }
             }
-            return UpdatesListener.CONFIRMED_UPDATES_ALL;
-        });
+        } catch (RuntimeException e) {
+            LOGGER.log(Level.SEVERE, "Failed to process callback for chat " + chatId, e);
+        } finally {
+            METRICS.latency("bot_command_duration_seconds", "Time to handle one update, by command",
+                    "command", "callback_users_page").recordSince(start);
+        }
+    }
+
+    // Ключ для метрик: известная команда, шаг диалога или просто текст - без роста числа ключей
+    static String commandKey(String messageText, ConversationState userState) {
+        if (userState != null) {
+            return userState.name().toLowerCase();
+        }
+        String command = messageText.trim().toLowerCase();
+        if (!command.startsWith("/")) {
+            return "text";
+        }
+        return KNOWN_COMMANDS.contains(command) ? command : "unknown_command";
+    }
+
+    public static int getUpdateQueueDepth() {
+        StripedExecutor executor = updateExecutor;
+        return executor != null ? executor.getQueueDepth() : 0;
     }
 
     private static void handleCommand(TelegramBot bot, Long chatId, String command,
-                                      DatabaseManager dbManager, String apiToken, String userName) {
-        String userState = userStates.get(chatId);
+                                      BirthdayRepository dbManager, String apiToken, String userName) {
+        ConversationStore.Conversation conversation = conversations.get(chatId);
+        ConversationState userState = conversation != null ? conversation.getState() : null;
+
+        if (userState == ConversationState.WAITING_FOR_IMPORT_FILE) {
+            if (!command.startsWith("/")) {
+                sendMessage(bot, chatId, "Пришлите файл CSV или vCard (.vcf) документом.");
+                return;
+            }
+            // пользователь передумал и ввёл другую команду
+            conversations.remove(chatId);
+            userState = null;
+        }
 
         if (userState != null) {
             switch (userState) {
-                case "WAITING_FOR_MONTH":
+                case WAITING_FOR_MONTH:
                     try {
                         int month = Integer.parseInt(command.trim());
 
@@ -65,7 +379,7 @@ public class Bot {
 
                         List<BirthdayUser> users = dbManager.getAllUsersOnMonth(month, chatId);
 
-                        userStates.remove(chatId);
+                        conversations.remove(chatId);
 
                         if (users.isEmpty()) {
                             sendMessage(bot, chatId, String.format(
@@ -94,15 +408,13 @@ public class Bot {
                     }
                     return;
 
-                case "WAITING_FOR_NAME":
-                    tempNames.put(chatId, command);
-                    userStates.put(chatId, "WAITING_FOR_DATE");
+                case WAITING_FOR_NAME:
+                    conversations.put(chatId, ConversationState.WAITING_FOR_DATE, command);
                     sendMessage(bot, chatId, "Когда поздравляем? (дата рождения вида DD.MM.YYYY)");
                     return;
 
-                case "WAITING_FOR_DATE":
-                    Integer id = dbManager.getUsersNum(chatId) + 1;
-                    String name = tempNames.get(chatId);
+                case WAITING_FOR_DATE:
+                    String name = conversation.getPendingName();
                     String dateStr = command;
 
                     if (isValidDate(dateStr)) {
@@ -110,7 +422,8 @@ public class Bot {
                             DateTimeFormatter formatter = DateTimeFormatter.ofPattern("dd.MM.yyyy");
                             LocalDate birthdate = LocalDate.parse(dateStr, formatter);
 
-                            dbManager.addUser(id, chatId, name, birthdate);
+                            // при write-behind ответ уходит только после коммита пачки
+                            dbManager.addUserAsync(chatId, name, birthdate).join();
                             sendMessage(bot, chatId, "Ура, день рождения добавлен!");
                         } catch (Exception e) {
                             sendMessage(bot, chatId, "Что-то сломалось при добавлении.");
@@ -119,48 +432,50 @@ public class Bot {
                         sendMessage(bot, chatId, "Неверный формат даты. Используйте DD.MM.YYYY");
                     }
 
-                    userStates.remove(chatId);
-                    tempNames.remove(chatId);
+                    conversations.remove(chatId);
+                    return;
+
+                case WAITING_FOR_TIME_ZONE:
+                    ZoneId zone = parseTimeZone(command);
+                    if (zone == null) {
+                        sendMessage(bot, chatId, "Не знаю такого часового пояса. Примеры: Europe/Moscow, Asia/Yekaterinburg, +03:00");
+                        return;
+                    }
+                    if (dbManager.setChatTimeZone(chatId, zone)) {
+                        sendMessage(bot, chatId, "Готово! Поздравления будут приходить в 9:00 по времени " + zone.getId() + ".");
+                    } else {
+                        sendMessage(bot, chatId, "Что-то сломалось при сохранении часового пояса.");
+                    }
+                    conversations.remove(chatId);
                     return;
 
-                case "WAITING_FOR_ID_TO_DELETE":
+                case WAITING_FOR_ID_TO_DELETE:
                     try {
-                        long userId = Long.parseLong(command);
-                        if (dbManager.deleteUserById(userId)) {
+                        // номер ищется в тех страницах, что видел пользователь, а не в таблице сейчас
+                        Integer id = conversation.getListedId(Integer.parseInt(command.trim()));
+                        if (id != null && dbManager.deleteUser(chatId, id)) {
                             sendMessage(bot, chatId, "Пользователь удалён из базы.");
                         } else {
                             sendMessage(bot, chatId, "Пользователь не найден.");
                         }
                     } catch (NumberFormatException e) {
-                        sendMessage(bot, chatId, "Неверный id для удаления.");
+                        sendMessage(bot, chatId, "Неверный номер для удаления.");
                     }
 
-                    userStates.remove(chatId);
-                    tempNames.remove(chatId);
+                    conversations.remove(chatId);
                     return;
             }
         }
 
         switch (command.toLowerCase()) {
             case "/newbirthday":
-                userStates.put(chatId, "WAITING_FOR_NAME");
+                conversations.put(chatId, ConversationState.WAITING_FOR_NAME);
                 sendMessage(bot, chatId, "Кого поздравляем? (введите имя)");
                 break;
 
             case "/allbirthdays":
-                List<BirthdayUser> users = dbManager.getAllUsers(chatId);
-                if (users.isEmpty()) {
+                if (showUsersPage(bot, chatId, dbManager, null, null).isEmpty()) {
                     sendMessage(bot, chatId, "В базе нет пользователей.");
-                } else {
-                    StringBuilder response = new StringBuilder("Пользователи в базе:\n");
-                    for (int i = 0; i < users.size(); i++) {
-                        BirthdayUser user = users.get(i);
-                        response.append(i + 1).append(". ")
-                                .append(user.getTelegramId()).append(". ")
-                                .append(user.getName()).append(" - ")
-                                .append(user.getBirthdayFormatted()).append("\n");
-                    }
-                    sendMessage(bot, chatId, response.toString());
                 }
                 break;
 
@@ -169,15 +484,7 @@ public class Bot {
                 if (usersRec.isEmpty()) {
                     sendMessage(bot, chatId, "В базе нет пользователей.");
                 } else {
-                    StringBuilder response = new StringBuilder("Пользователи в базе:\n");
-                    for (int i = 0; i < usersRec.size(); i++) {
-                        BirthdayUser user = usersRec.get(i);
-                        response.append(i + 1).append(". ")
-                                .append(user.getTelegramId()).append(". ")
-                                .append(user.getName()).append(" - ")
-                                .append(user.getBirthdayFormatted()).append("\n");
-                    }
-                    sendMessage(bot, chatId, response.toString());
+                    sendMessage(bot, chatId, formatWindowList(usersRec));
                 }
                 break;
 
@@ -186,44 +493,43 @@ public class Bot {
                 if (usersFut.isEmpty()) {
                     sendMessage(bot, chatId, "В базе нет пользователей.");
                 } else {
-                    StringBuilder response = new StringBuilder("Пользователи в базе:\n");
-                    for (int i = 0; i < usersFut.size(); i++) {
-                        BirthdayUser user = usersFut.get(i);
-                        response.append(i + 1).append(". ")
-                                .append(user.getTelegramId()).append(". ")
-                                .append(user.getName()).append(" - ")
-                                .append(user.getBirthdayFormatted()).append("\n");
-                    }
-                    sendMessage(bot, chatId, response.toString());
+                    sendMessage(bot, chatId, formatWindowList(usersFut));
                 }
                 break;
 
+            case "/import":
+                conversations.put(chatId, ConversationState.WAITING_FOR_IMPORT_FILE);
+                sendMessage(bot, chatId, "Пришлите файл с днями рождения:\n"
+                        + "CSV - по строке на человека: Имя;ДД.ММ.ГГГГ\n"
+                        + "vCard (.vcf) - экспорт контактов из телефона, берутся имя и BDAY");
+                break;
+
             case "/allbirthdaysonmonth":
-                userStates.put(chatId, "WAITING_FOR_MONTH");
+                conversations.put(chatId, ConversationState.WAITING_FOR_MONTH);
                 sendMessage(bot, chatId, "Введите номер месяца (от 1 до 12):");
                 break;
 
             case "/deletebirthday":
-                List<BirthdayUser> usersForDelete = dbManager.getAllUsers(chatId);
-                if (usersForDelete.isEmpty()) {
+                List<BirthdayUser> listed = showUsersPage(bot, chatId, dbManager, null, null);
+                if (listed.isEmpty()) {
                     sendMessage(bot, chatId, "В базе нет пользователей для удаления.");
                 } else {
-                    StringBuilder response = new StringBuilder("Пользователи в базе:\n");
-                    for (int i = 0; i < usersForDelete.size(); i++) {
-                        BirthdayUser user = usersForDelete.get(i);
-                        response.append(i + 1).append(". ").append(user.getName())
-                                .append(" - ").append(user.getBirthdayFormatted()).append("\n");
-                    }
-                    sendMessage(bot, chatId, response.toString());
-                    userStates.put(chatId, "WAITING_FOR_ID_TO_DELETE");
-                    sendMessage(bot, chatId, "Напишите telegram_id пользователя, которого хотите удалить");
+                    conversations.putListing(chatId, ConversationState.WAITING_FOR_ID_TO_DELETE,
+                            listedIds(listed, Collections.emptyMap()));
+                    sendMessage(bot, chatId, "Напишите номер записи, которую хотите удалить");
                 }
                 break;
 
-            case "/getCongratulationByNeuro":
-                sendMessage(bot, chatId, " Генерируем поздравление... Пожалуйста, подождите...ня");
-                String greeting = RuGPT3Generator.generateGreeting(apiToken, userName);
-                sendMessage(bot, chatId, greeting);
+            case "/timezone":
+                ZoneId current = dbManager.getChatTimeZone(chatId);
+                conversations.put(chatId, ConversationState.WAITING_FOR_TIME_ZONE);
+                sendMessage(bot, chatId, "Сейчас поздравления приходят в 9:00 по времени "
+                        + (current != null ? current.getId() : ZoneId.systemDefault().getId() + " (сервера)")
+                        + ".\nВведите часовой пояс чата, например Europe/Moscow или +05:00");
+                break;
+
+            case "/getcongratulationbyneuro":
+                streamGreeting(bot, chatId, apiToken, userName);
                 break;
 
             default:
@@ -234,10 +540,333 @@ public class Bot {
         }
     }
 
+    // Номер в списке -> id записи для показанных страниц; новые номера дописываются к известным
+    static Map<Integer, Integer> listedIds(List<BirthdayUser> users, Map<Integer, Integer> known) {
+        Map<Integer, Integer> ids = new HashMap<>(known);
+        for (BirthdayUser user : users) {
+            ids.put(user.getOrdinal(), user.getId());
+        }
+        return ids;
+    }
+
+    // Одна страница списка чата: первая (cursor == null) отправляется новым сообщением,
+    // остальные - правкой messageId. Номера записей не считаются в базе, а передаются в кнопках.
+    // Возвращает показанные записи с номерами; пустой список - в чате нет записей
+    private static List<BirthdayUser> showUsersPage(TelegramBot bot, Long chatId, BirthdayRepository dbManager,
+                                         Integer messageId, PageCursor cursor) {
+        BirthdayRepository.UserPage page;
+        int firstOrdinal;
+        if (cursor == null) {
+            page = dbManager.getUsersPageAfter(chatId, 0, LIST_PAGE_SIZE);
+            firstOrdinal = 1;
+        } else if (cursor.isForward()) {
+            page = dbManager.getUsersPageAfter(chatId, cursor.getBoundId(), LIST_PAGE_SIZE);
+            // записей до страницы не осталось - нумерация снова с единицы
+            firstOrdinal = page.hasPrevious() ? cursor.getOrdinal() : 1;
+        } else {
+            page = dbManager.getUsersPageBefore(chatId, cursor.getBoundId(), LIST_PAGE_SIZE);
+            firstOrdinal = page.hasPrevious() ? Math.max(1, cursor.getOrdinal() - page.getUsers().size()) : 1;
+        }
+        if (page.isEmpty() && cursor != null) {
+            // записи с той стороны успели удалить - начинаем сначала
+            page = dbManager.getUsersPageAfter(chatId, 0, LIST_PAGE_SIZE);
+            firstOrdinal = 1;
+        }
+        if (page.isEmpty()) {
+            return Collections.emptyList();
+        }
+
+        List<BirthdayUser> users = page.getUsers();
+        for (int i = 0; i < users.size(); i++) {
+            users.get(i).setOrdinal(firstOrdinal + i);
+        }
+        String text = formatUserList(users);
+        InlineKeyboardMarkup keyboard = pageKeyboard(page, firstOrdinal);
+
+        if (messageId == null) {
+            SendMessage request = new SendMessage(chatId, text);
+            if (keyboard != null) {
+                request.replyMarkup(keyboard);
+            }
+            bot.execute(request);
+        } else {
+            EditMessageText request = new EditMessageText(chatId, messageId, text);
+            if (keyboard != null) {
+                request.replyMarkup(keyboard);
+            }
+            bot.execute(request);
+        }
+        return users;
+    }
+
+    private static InlineKeyboardMarkup pageKeyboard(BirthdayRepository.UserPage page, int firstOrdinal) {
+        List<InlineKeyboardButton> buttons = new ArrayList<>(2);
+        if (page.hasPrevious()) {
+            buttons.add(new InlineKeyboardButton("◀ Назад")
+                    .callbackData(new PageCursor(false, page.getFirstId(), firstOrdinal).toCallbackData()));
+        }
+        if (page.hasNext()) {
+            int nextOrdinal = firstOrdinal + page.getUsers().size();
+            buttons.add(new InlineKeyboardButton("Дальше ▶")
+                    .callbackData(new PageCursor(true, page.getLastId(), nextOrdinal).toCallbackData()));
+        }
+        if (buttons.isEmpty()) {
+            return null;
+        }
+        return new InlineKeyboardMarkup(buttons.toArray(new InlineKeyboardButton[0]));
+    }
+
+    // Положение в списке, зашитое в callback_data кнопки (не длиннее 64 байт):
+    // "users:next:<id последней записи>:<номер следующей>" или "users:prev:<id первой записи>:<её номер>"
+    static final class PageCursor {
+        private static final String PREFIX = "users:";
+
+        private final boolean forward;
+        private final int boundId;
+        private final int ordinal;
+
+        PageCursor(boolean forward, int boundId, int ordinal) {
+            this.forward = forward;
+            this.boundId = boundId;
+            this.ordinal = ordinal;
+        }
+
+        boolean isForward() {
+            return forward;
+        }
+
+        int getBoundId() {
+            return boundId;
+        }
+
+        int getOrdinal() {
+            return ordinal;
+        }
+
+        String toCallbackData() {
+            return PREFIX + (forward ? "next" : "prev") + ":" + boundId + ":" + ordinal;
+        }
+
+        // null - если данные не от кнопок списка или испорчены
+        static PageCursor parse(String data) {
+            if (data == null || !data.startsWith(PREFIX)) {
+                return null;
+            }
+            String[] parts = data.substring(PREFIX.length()).split(":");
+            if (parts.length != 3 || !(parts[0].equals("next") || parts[0].equals("prev"))) {
+                return null;
+            }
+            try {
+                return new PageCursor(parts[0].equals("next"), Integer.parseInt(parts[1]), Integer.parseInt(parts[2]));
+            } catch (NumberFormatException e) {
+                return null;
+            }
+        }
+    }
+
+    // "1. Имя - ДД.ММ.ГГГГ" по порядковым номерам записей чата
+    static String formatUserList(List<BirthdayUser> users) {
+        StringBuilder response = new StringBuilder("Пользователи в базе:\n");
+        for (BirthdayUser user : users) {
+            response.append(user.getOrdinal()).append(". ")
+                    .append(user.getName()).append(" - ")
+                    .append(user.getBirthdayFormatted()).append("\n");
+        }
+        return response.toString();
+    }
+
+    // Списки за прошедший и ближайший месяц нумеруются по порядку вывода
+    static String formatWindowList(List<BirthdayUser> users) {
+        StringBuilder response = new StringBuilder("Пользователи в базе:\n");
+        for (int i = 0; i < users.size(); i++) {
+            BirthdayUser user = users.get(i);
+            response.append(i + 1).append(". ")
+                    .append(user.getTelegramId()).append(". ")
+                    .append(user.getName()).append(" - ")
+                    .append(user.getBirthdayFormatted()).append("\n");
+        }
+        return response.toString();
+    }
+
+    // Текст модели появляется в сообщении по мере генерации: сначала заглушка, потом её правки.
+    // Всё происходит в потоках HTTP-клиента, поток обработки обновлений не ждёт модель
+    private static void streamGreeting(TelegramBot bot, Long chatId, String apiToken, String userName) {
+        SendResponse placeholder = bot.execute(
+                new SendMessage(chatId, " Генерируем поздравление... Пожалуйста, подождите...ня"));
+        if (placeholder == null || placeholder.message() == null) {
+            RuGPT3Generator.generateGreetingAsync(apiToken, userName)
+                    .thenAccept(greeting -> sendMessage(bot, chatId, greeting))
+                    .exceptionally(e -> {
+                        LOGGER.log(Level.WARNING, "Failed to send greeting to chat " + chatId, e);
+                        return null;
+                    });
+            return;
+        }
+
+        ThrottledMessageEditor editor = new ThrottledMessageEditor(bot, chatId, placeholder.message().messageId());
+        RuGPT3Generator.streamGreetingAsync(apiToken, userName, editor::update)
+                .thenAccept(greeting -> editor.finish(
+                        greeting != null ? greeting : RuGPT3Generator.getFallbackGreeting(userName)))
+                .exceptionally(e -> {
+                    LOGGER.log(Level.WARNING, "Failed to stream greeting to chat " + chatId, e);
+                    return null;
+                });
+    }
+
+    // "Europe/Moscow", "UTC+3", "+05:00"; null - если такого пояса нет
+    static ZoneId parseTimeZone(String text) {
+        try {
+            return ZoneId.of(text.trim());
+        } catch (DateTimeException e) {
+            return null;
+        }
+    }
+
     public static boolean isValidDate(String date) {
         return date.matches("\\d{2}\\.\\d{2}\\.\\d{4}");
     }
 
+    private static void handleDocument(TelegramBot bot, Long chatId, Document document, BirthdayRepository dbManager) {
+        if (conversations.getState(chatId) != ConversationState.WAITING_FOR_IMPORT_FILE) {
+            sendMessage(bot, chatId, "Чтобы загрузить дни рождения из файла, сначала отправьте /import");
+            return;
+        }
+        conversations.remove(chatId);
+
+        if (document.fileSize() != null && document.fileSize() > MAX_IMPORT_FILE_BYTES) {
+            sendMessage(bot, chatId, "Файл слишком большой, максимум 20 МБ.");
+            return;
+        }
+
+        try {
+            importExecutor.execute(() -> importDocument(bot, chatId, document, dbManager));
+        } catch (RejectedExecutionException e) {
+            LOGGER.warning("Import queue is full, file from chat " + chatId + " rejected");
+            sendMessage(bot, chatId, "Сейчас загружается слишком много файлов. Отправьте /import и файл чуть позже.");
+        }
+    }
+
+    // Выполняется в потоке импорта; о результате чат узнаёт отдельным сообщением
+    private static void importDocument(TelegramBot bot, Long chatId, Document document, BirthdayRepository dbManager) {
+        GetFileResponse fileResponse = bot.execute(new GetFile(document.fileId()));
+        if (fileResponse == null || !fileResponse.isOk()) {
+            sendMessage(bot, chatId, "Не удалось получить файл от Telegram, попробуйте ещё раз.");
+            return;
+        }
+
+        sendMessage(bot, chatId, "Загружаю дни рождения из файла...");
+        // В адресе файла есть токен бота - он не должен попасть ни в логи, ни в тексты исключений
+        URI fileUri = URI.create(bot.getFullFilePath(fileResponse.file()));
+        try (Reader reader = new InputStreamReader(openImportFile(RuGPT3Generator.httpClient(), fileUri,
+                MAX_IMPORT_FILE_BYTES, IMPORT_DOWNLOAD_TIMEOUT), StandardCharsets.UTF_8)) {
+            BirthdayImportParser parser = new BirthdayImportParser(reader, chatId,
+                    BirthdayImportParser.formatOf(document.fileName()));
+            BirthdayRepository.ImportResult result = dbManager.importUsers(chatId, parser,
+                    rows -> sendMessage(bot, chatId, "Загружено " + rows + " записей..."));
+
+            sendMessage(bot, chatId, String.format(
+                    "Готово! Добавлено дней рождения: %d, пропущено строк с ошибками: %d (%.0f строк/с)",
+                    result.getImported(), parser.getRejected(), result.getRowsPerSecond()));
+        } catch (Exception e) {
+            if (isCausedBy(e, ImportFileTooLargeException.class)) {
+                LOGGER.warning("Import file for chat " + chatId + " exceeds " + MAX_IMPORT_FILE_BYTES + " bytes");
+                sendMessage(bot, chatId, "Файл слишком большой, максимум 20 МБ. Ничего не добавлено.");
+                return;
+            }
+            LOGGER.log(Level.SEVERE, "Import failed for chat " + chatId, e);
+            sendMessage(bot, chatId, "Что-то сломалось при загрузке файла, ничего не добавлено.");
+        }
+    }
+
+    // Скачивает файл через общий HttpClient. Таймаут отсчитывается от начала запроса и покрывает чтение тела:
+    // по истечении срока поток закрывается и чтение падает. Размер проверяется по мере чтения -
+    // fileSize от Telegram бывает не указан. Исключения клиента заменяются своими, без адреса
+    static InputStream openImportFile(HttpClient client, URI uri, long maxBytes, Duration timeout) throws IOException {
+        long deadline = System.nanoTime() + timeout.toNanos();
+        HttpRequest request = HttpRequest.newBuilder(uri).timeout(timeout).GET().build();
+        HttpResponse<InputStream> response;
+        try {
+            response = client.send(request, HttpResponse.BodyHandlers.ofInputStream());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Import file download interrupted");
+        } catch (IOException e) {
+            throw new IOException("Import file download failed: " + e.getClass().getSimpleName());
+        }
+
+        InputStream body = response.body();
+        long remainingNanos = deadline - System.nanoTime();
+        if (response.statusCode() != 200 || remainingNanos <= 0) {
+            body.close();
+            throw new IOException(response.statusCode() != 200
+                    ? "Import file download failed with HTTP " + response.statusCode()
+                    : "Import file download timed out");
+        }
+        if (response.headers().firstValueAsLong("Content-Length").orElse(-1) > maxBytes) {
+            body.close();
+            throw new ImportFileTooLargeException(maxBytes);
+        }
+        CompletableFuture.delayedExecutor(remainingNanos, TimeUnit.NANOSECONDS).execute(() -> {
+            try {
+                body.close();
+            } catch (IOException ignored) {
+                // поток уже закрыт
+            }
+        });
+        return new LimitedInputStream(body, maxBytes);
+    }
+
+    private static boolean isCausedBy(Throwable e, Class<? extends Throwable> type) {
+        for (Throwable t = e; t != null; t = t.getCause()) {
+            if (type.isInstance(t)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    static final class ImportFileTooLargeException extends IOException {
+        ImportFileTooLargeException(long maxBytes) {
+            super("Import file exceeds " + maxBytes + " bytes");
+        }
+    }
+
+    // Отдаёт не больше maxBytes; на следующем байте бросает ImportFileTooLargeException
+    static final class LimitedInputStream extends FilterInputStream {
+        private final long maxBytes;
+        private long read;
+
+        LimitedInputStream(InputStream in, long maxBytes) {
+            super(in);
+            this.maxBytes = maxBytes;
+        }
+
+        @Override
+        public int read() throws IOException {
+            int b = super.read();
+            if (b >= 0) {
+                count(1);
+            }
+            return b;
+        }
+
+        @Override
+        public int read(byte[] buffer, int offset, int length) throws IOException {
+            int n = super.read(buffer, offset, length);
+            if (n > 0) {
+                count(n);
+            }
+            return n;
+        }
+
+        private void count(int n) throws IOException {
+            read += n;
+            if (read > maxBytes) {
+                throw new ImportFileTooLargeException(maxBytes);
+            }
+        }
+    }
+
     private static void sendMessage(TelegramBot bot, Long chatId, String text) {
         SendMessage request = new SendMessage(chatId, text);
         bot.execute(request);
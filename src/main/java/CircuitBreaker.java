@@ -0,0 +1,157 @@
+import java.util.concurrent.TimeUnit;
+import java.util.function.LongSupplier;
+import java.util.logging.Logger;
+
+// Автомат для внешнего сервиса: CLOSED - вызовы идут, OPEN - сразу отказ, HALF_OPEN - пробные вызовы.
+// Размыкается, когда среди последних windowSize вызовов слишком много ошибок или слишком медленных ответов.
+public class CircuitBreaker {
+    private static final Logger LOGGER = Logger.getLogger(CircuitBreaker.class.getName());
+
+    public enum State { CLOSED, OPEN, HALF_OPEN }
+
+    private final String name;
+    private final int windowSize;
+    private final int minimumCalls;
+    private final double failureRateThreshold;
+    private final double slowCallRateThreshold;
+    private final long slowCallNanos;
+    private final long openNanos;
+    private final int halfOpenProbes;
+    private final LongSupplier clock;
+
+    // кольцевой буфер исходов последних вызовов
+    private final boolean[] failed;
+    private final boolean[] slow;
+    private int recorded;
+    private int position;
+    private int failures;
+    private int slowCalls;
+
+    private State state = State.CLOSED;
+    private long openedAtNanos;
+    private int probesPermitted;
+    private int probesSucceeded;
+
+    private final long[] transitions = new long[State.values().length];
+    private long notPermitted;
+
+    public CircuitBreaker(String name, int windowSize, double failureRateThreshold,
+                          double slowCallRateThreshold, long slowCallMillis, long openMillis, int halfOpenProbes) {
+        this(name, windowSize, failureRateThreshold, slowCallRateThreshold, slowCallMillis, openMillis,
+                halfOpenProbes, System::nanoTime);
+    }
+
+    CircuitBreaker(String name, int windowSize, double failureRateThreshold, double slowCallRateThreshold,
+                   long slowCallMillis, long openMillis, int halfOpenProbes, LongSupplier clock) {
+        if (windowSize <= 0 || halfOpenProbes <= 0) {
+            throw new IllegalArgumentException("windowSize and halfOpenProbes must be positive");
+        }
+        this.name = name;
+        this.windowSize = windowSize;
+        this.minimumCalls = Math.max(1, windowSize / 2);
+        this.failureRateThreshold = failureRateThreshold;
+        this.slowCallRateThreshold = slowCallRateThreshold;
+        this.slowCallNanos = TimeUnit.MILLISECONDS.toNanos(slowCallMillis);
+        this.openNanos = TimeUnit.MILLISECONDS.toNanos(openMillis);
+        this.halfOpenProbes = halfOpenProbes;
+        this.clock = clock;
+        this.failed = new boolean[windowSize];
+        this.slow = new boolean[windowSize];
+    }
+
+    // false - вызывать сервис нельзя, нужно сразу отдавать запасной результат
+    public synchronized boolean tryAcquirePermission() {
+        if (state == State.OPEN && clock.getAsLong() - openedAtNanos >= openNanos) {
+            transitionTo(State.HALF_OPEN);
+        }
+        if (state == State.CLOSED) {
+            return true;
+        }
+        if (state == State.HALF_OPEN && probesPermitted < halfOpenProbes) {
+            probesPermitted++;
+            return true;
+        }
+        notPermitted++;
+        return false;
+    }
+
+    public synchronized void onSuccess(long durationNanos) {
+        record(false, durationNanos);
+    }
+
+    public synchronized void onError(long durationNanos) {
+        record(true, durationNanos);
+    }
+
+    private void record(boolean error, long durationNanos) {
+        boolean slowCall = durationNanos >= slowCallNanos;
+
+        if (state == State.HALF_OPEN) {
+            if (error || slowCall) {
+                transitionTo(State.OPEN);
+            } else if (++probesSucceeded >= halfOpenProbes) {
+                transitionTo(State.CLOSED);
+            }
+            return;
+        }
+        if (state == State.OPEN) {
+            // ответ на вызов, начатый до размыкания, - на состояние уже не влияет
+            return;
+        }
+
+        if (recorded == windowSize) {
+            failures -= failed[position] ? 1 : 0;
+            slowCalls -= slow[position] ? 1 : 0;
+        } else {
+            recorded++;
+        }
+        failed[position] = error;
+        slow[position] = slowCall;
+        failures += error ? 1 : 0;
+        slowCalls += slowCall ? 1 : 0;
+        position = (position + 1) % windowSize;
+
+        if (recorded >= minimumCalls
+                && (failures >= failureRateThreshold * recorded || slowCalls >= slowCallRateThreshold * recorded)) {
+            transitionTo(State.OPEN);
+        }
+    }
+
+    private void transitionTo(State next) {
+        LOGGER.warning("Circuit breaker " + name + ": " + state + " -> " + next
+                + " (failures=" + failures + ", slow=" + slowCalls + " of " + recorded + ")");
+        state = next;
+        transitions[next.ordinal()]++;
+
+        if (next == State.OPEN) {
+            openedAtNanos = clock.getAsLong();
+        }
+        if (next == State.HALF_OPEN) {
+            probesPermitted = 0;
+            probesSucceeded = 0;
+        }
+        if (next == State.CLOSED) {
+            recorded = 0;
+            position = 0;
+            failures = 0;
+            slowCalls = 0;
+        }
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public synchronized State getState() {
+        return state;
+    }
+
+    // Сколько раз автомат переходил в состояние state - для метрик
+    public synchronized long getTransitions(State state) {
+        return transitions[state.ordinal()];
+    }
+
+    public synchronized long getNotPermitted() {
+        return notPermitted;
+    }
+}
@@ -0,0 +1,9 @@
+// Шаги диалогов бота, в которых он ждёт от пользователя следующего сообщения
+public enum ConversationState {
+    WAITING_FOR_NAME,
+    WAITING_FOR_DATE,
+    WAITING_FOR_MONTH,
+    WAITING_FOR_ID_TO_DELETE,
+    WAITING_FOR_IMPORT_FILE,
+    WAITING_FOR_TIME_ZONE
+}
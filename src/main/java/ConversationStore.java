@@ -0,0 +1,276 @@
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.function.LongSupplier;
+
+// Состояния незавершённых диалогов по chatId. Хранятся в сегментах с открытой адресацией
+// по примитивному long-ключу; брошенные диалоги истекают через idleTtl, общий размер
+// ограничен maxEntries - при переполнении вытесняется самый давно тронутый диалог сегмента.
+public class ConversationStore {
+    public static final long DEFAULT_IDLE_TTL_MILLIS = TimeUnit.MINUTES.toMillis(30);
+    public static final int DEFAULT_MAX_ENTRIES = 100_000;
+
+    private static final int SEGMENTS = 16;
+    private static final int INITIAL_SEGMENT_CAPACITY = 16;
+
+    private final Segment[] segments = new Segment[SEGMENTS];
+    private final long idleTtlMillis;
+    private final LongSupplier clock;
+
+    public ConversationStore() {
+        this(DEFAULT_IDLE_TTL_MILLIS, DEFAULT_MAX_ENTRIES);
+    }
+
+    public ConversationStore(long idleTtlMillis, int maxEntries) {
+        this(idleTtlMillis, maxEntries, System::currentTimeMillis);
+    }
+
+    ConversationStore(long idleTtlMillis, int maxEntries, LongSupplier clock) {
+        this.idleTtlMillis = idleTtlMillis;
+        this.clock = clock;
+        int segmentLimit = Math.max(1, (maxEntries + SEGMENTS - 1) / SEGMENTS);
+        for (int i = 0; i < SEGMENTS; i++) {
+            segments[i] = new Segment(segmentLimit);
+        }
+    }
+
+    public Conversation get(long chatId) {
+        return segmentFor(chatId).get(chatId, clock.getAsLong());
+    }
+
+    public ConversationState getState(long chatId) {
+        Conversation conversation = get(chatId);
+        return conversation != null ? conversation.getState() : null;
+    }
+
+    public void put(long chatId, ConversationState state) {
+        put(chatId, state, null);
+    }
+
+    public void put(long chatId, ConversationState state, String pendingName) {
+        long now = clock.getAsLong();
+        segmentFor(chatId).put(chatId, new Conversation(state, pendingName, Collections.emptyMap(), now), now);
+    }
+
+    // Диалог, который ссылается на показанный пользователю список: номер в списке -> id записи
+    public void putListing(long chatId, ConversationState state, Map<Integer, Integer> listedIds) {
+        long now = clock.getAsLong();
+        segmentFor(chatId).put(chatId, new Conversation(state, null, new HashMap<>(listedIds), now), now);
+    }
+
+    public void remove(long chatId) {
+        segmentFor(chatId).remove(chatId);
+    }
+
+    public int evictExpired() {
+        long now = clock.getAsLong();
+        int evicted = 0;
+        for (Segment segment : segments) {
+            evicted += segment.evictExpired(now);
+        }
+        return evicted;
+    }
+
+    public int size() {
+        int size = 0;
+        for (Segment segment : segments) {
+            size += segment.size();
+        }
+        return size;
+    }
+
+    private static long mix(long key) {
+        long h = key * 0x9E3779B97F4A7C15L;
+        return h ^ (h >>> 32);
+    }
+
+    private Segment segmentFor(long chatId) {
+        return segments[(int) (mix(chatId) >>> 60) & (SEGMENTS - 1)];
+    }
+
+    public static final class Conversation {
+        private final ConversationState state;
+        private final String pendingName;
+        private final Map<Integer, Integer> listedIds;
+        private final long touchedAtMillis;
+
+        Conversation(ConversationState state, String pendingName, Map<Integer, Integer> listedIds,
+                     long touchedAtMillis) {
+            this.state = state;
+            this.pendingName = pendingName;
+            this.listedIds = listedIds;
+            this.touchedAtMillis = touchedAtMillis;
+        }
+
+        public ConversationState getState() {
+            return state;
+        }
+
+        public String getPendingName() {
+            return pendingName;
+        }
+
+        public Map<Integer, Integer> getListedIds() {
+            return Collections.unmodifiableMap(listedIds);
+        }
+
+        // null - такого номера в показанных страницах не было
+        public Integer getListedId(int ordinal) {
+            return listedIds.get(ordinal);
+        }
+    }
+
+    private final class Segment {
+        private final int limit;
+        private long[] keys = new long[INITIAL_SEGMENT_CAPACITY];
+        private Conversation[] values = new Conversation[INITIAL_SEGMENT_CAPACITY];
+        private int size;
+        private long lastSweepMillis;
+
+        Segment(int limit) {
+            this.limit = limit;
+        }
+
+        synchronized Conversation get(long key, long now) {
+            int i = find(key);
+            if (i < 0) {
+                return null;
+            }
+            if (isExpired(values[i], now)) {
+                deleteAt(i);
+                return null;
+            }
+            return values[i];
+        }
+
+        synchronized void put(long key, Conversation value, long now) {
+            if (now - lastSweepMillis >= idleTtlMillis / 2) {
+                evictExpired(now);
+            }
+
+            int i = find(key);
+            if (i >= 0) {
+                values[i] = value;
+                return;
+            }
+
+            if (size >= limit) {
+                evictExpired(now);
+                if (size >= limit) {
+                    deleteAt(leastRecentlyTouched());
+                }
+            }
+            if ((size + 1) * 2 > keys.length) {
+                resize(keys.length * 2);
+            }
+            insert(key, value);
+        }
+
+        synchronized void remove(long key) {
+            int i = find(key);
+            if (i >= 0) {
+                deleteAt(i);
+            }
+        }
+
+        synchronized int evictExpired(long now) {
+            lastSweepMillis = now;
+            int evicted = 0;
+            int i = 0;
+            while (i < values.length) {
+                // после удаления в ячейку i может сдвинуться следующий элемент, проверяем её ещё раз
+                if (values[i] != null && isExpired(values[i], now)) {
+                    deleteAt(i);
+                    evicted++;
+                } else {
+                    i++;
+                }
+            }
+            return evicted;
+        }
+
+        synchronized int size() {
+            return size;
+        }
+
+        private boolean isExpired(Conversation conversation, long now) {
+            return now - conversation.touchedAtMillis >= idleTtlMillis;
+        }
+
+        private int slotOf(long key) {
+            return (int) mix(key) & (keys.length - 1);
+        }
+
+        private int find(long key) {
+            int mask = keys.length - 1;
+            for (int i = slotOf(key); values[i] != null; i = (i + 1) & mask) {
+                if (keys[i] == key) {
+                    return i;
+                }
+            }
+            return -1;
+        }
+
+        private void insert(long key, Conversation value) {
+            int mask = keys.length - 1;
+            int i = slotOf(key);
+            while (values[i] != null) {
+                i = (i + 1) & mask;
+            }
+            keys[i] = key;
+            values[i] = value;
+            size++;
+        }
+
+        private int leastRecentlyTouched() {
+            int oldest = -1;
+            for (int i = 0; i < values.length; i++) {
+                if (values[i] != null
+                        && (oldest < 0 || values[i].touchedAtMillis < values[oldest].touchedAtMillis)) {
+                    oldest = i;
+                }
+            }
+            return oldest;
+        }
+
+        // Удаление при линейном пробировании: сдвигаем назад элементы цепочки,
+        // чтобы поиск не обрывался на образовавшейся дыре
+        private void deleteAt(int hole) {
+            int mask = keys.length - 1;
+            int i = hole;
+            int j = hole;
+            while (true) {
+                j = (j + 1) & mask;
+                if (values[j] == null) {
+                    break;
+                }
+                int home = slotOf(keys[j]);
+                boolean staysInPlace = i <= j
+                        ? (i < home && home <= j)
+                        : (i < home || home <= j);
+                if (!staysInPlace) {
+                    keys[i] = keys[j];
+                    values[i] = values[j];
+                    i = j;
+                }
+            }
+            keys[i] = 0;
+            values[i] = null;
+            size--;
+        }
+
+        private void resize(int capacity) {
+            long[] oldKeys = keys;
+            Conversation[] oldValues = values;
+            keys = new long[capacity];
+            values = new Conversation[capacity];
+            size = 0;
+            for (int i = 0; i < oldValues.length; i++) {
+                if (oldValues[i] != null) {
+                    insert(oldKeys[i], oldValues[i]);
+                }
+            }
+        }
+    }
+}
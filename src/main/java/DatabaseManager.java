@@ -1,16 +1,69 @@
 import com.zaxxer.hikari.HikariConfig;
 import com.zaxxer.hikari.HikariDataSource;
+import com.zaxxer.hikari.HikariPoolMXBean;
+import org.postgresql.PGConnection;
 
+import java.io.IOException;
+import java.io.Reader;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Proxy;
 import java.sql.*;
+import java.time.DateTimeException;
 import java.time.LocalDate;
+import java.time.ZoneId;
 import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.IntConsumer;
+import java.util.function.Supplier;
+import java.util.function.ToIntFunction;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
-public class DatabaseManager {
+public class DatabaseManager implements BirthdayRepository {
     private static final Logger LOGGER = Logger.getLogger(DatabaseManager.class.getName());
+    private static final int INDEX_LOAD_FETCH_SIZE = 5_000;
+    private static final int IMPORT_BATCH_SIZE = 1_000;
+    private static final int IMPORT_PROGRESS_STEP = 5_000;
+    // через сколько захваченная, но не подтверждённая строка outbox снова доступна другим узлам (узел упал)
+    private static final int OUTBOX_CLAIM_LEASE_MINUTES = 10;
+    // после стольких неудачных отправок строка уходит в dead и больше не забирается
+    static final int OUTBOX_MAX_ATTEMPTS = 3;
+    // сколько дней хранить строки outbox (в том числе dead) для разбора
+    private static final int OUTBOX_RETENTION_DAYS = 7;
+    private static final MetricsRegistry METRICS = MetricsRegistry.getDefault();
+    private static final String INSERT_USER_SQL =
+            "INSERT INTO users (telegram_id, name, birthday, birth_mmdd) VALUES (?, ?, ?, ?)";
+    private static final String UPDATE_NAME_SQL =
+            "UPDATE users SET name = ?, updated_at = CURRENT_TIMESTAMP WHERE telegram_id = ?";
+    private static final String UPDATE_BIRTHDAY_SQL =
+            "UPDATE users SET birthday = ?, birth_mmdd = ?, updated_at = CURRENT_TIMESTAMP WHERE telegram_id = ?";
+
+    private static final LongAdder READS_PRIMARY = METRICS.counter("db_reads_total",
+            "Read queries by the pool that served them", "pool", "primary");
+    private static final LongAdder READS_REPLICA = METRICS.counter("db_reads_total",
+            "Read queries by the pool that served them", "pool", "replica");
+
     private HikariDataSource dataSource;
+    private volatile BirthdayCalendarIndex calendarIndex;
+    // null - календарь не перезагружается (один узел)
+    private volatile ScheduledExecutorService calendarRefresher;
+    // null - реплики нет, всё читается из основного пула
+    private volatile ReadReplicaRouter readReplica;
+    // null - write-behind выключен, *Async-методы пишут сразу
+    private volatile WriteBehindBuffer writeBehind;
 
     // Инициализация
     public void initialize(String url, String username, String password) {
@@ -30,8 +83,12 @@ public class DatabaseManager {
             config.setConnectionTestQuery("SELECT 1");
 
             dataSource = new HikariDataSource(config);
+            registerPoolMetrics("primary", () -> dataSource);
 
             createUsersTable();
+            createGreetingsTable();
+            createChatsTable();
+            createOutboxTable();
 
             LOGGER.info("Пул успешно инициализирован!!!");
         } catch (Exception e) {
@@ -39,6 +96,127 @@ public class DatabaseManager {
         }
     }
 
+    // Второй, только читающий пул на реплике. Тяжёлые чтения списков уходят туда и не занимают
+    // соединения основного пула, нужные записям. После записи чата его чтения readYourWritesMillis
+    // идут в основной пул, пока реплика догоняет
+    public void enableReadReplica(String url, String username, String password, long readYourWritesMillis) {
+        try {
+            HikariConfig config = new HikariConfig();
+            config.setJdbcUrl(url);
+            config.setUsername(username);
+            config.setPassword(password);
+            config.setPoolName("replica");
+            config.setReadOnly(true);
+
+            config.setMaximumPoolSize(10);
+            config.setMinimumIdle(2);
+            config.setConnectionTimeout(5_000);
+            config.setIdleTimeout(600_000);
+            config.setMaxLifetime(1_800_000);
+
+            config.setConnectionTestQuery("SELECT 1");
+
+            ReadReplicaRouter router = new ReadReplicaRouter(new HikariDataSource(config), readYourWritesMillis);
+            readReplica = router;
+            registerPoolMetrics("replica", router::getReplica);
+            METRICS.gauge("db_replica_lag_seconds", "How far the read replica is behind the primary",
+                    router::getLagSeconds);
+            LOGGER.info("Read replica enabled, read-your-writes window " + readYourWritesMillis + " ms");
+        } catch (Exception e) {
+            LOGGER.log(Level.SEVERE, "Read replica is unavailable, reads stay on the primary", e);
+        }
+    }
+
+    private void registerPoolMetrics(String pool, Supplier<HikariDataSource> source) {
+        METRICS.gauge("db_pool_active_connections", "Connections currently in use",
+                () -> poolGauge(source.get(), p -> p.getActiveConnections()), "pool", pool);
+        METRICS.gauge("db_pool_idle_connections", "Idle connections in the pool",
+                () -> poolGauge(source.get(), p -> p.getIdleConnections()), "pool", pool);
+        METRICS.gauge("db_pool_total_connections", "Open connections, active and idle",
+                () -> poolGauge(source.get(), p -> p.getTotalConnections()), "pool", pool);
+        METRICS.gauge("db_pool_pending_threads", "Threads waiting for a connection",
+                () -> poolGauge(source.get(), p -> p.getThreadsAwaitingConnection()), "pool", pool);
+    }
+
+    private static double poolGauge(HikariDataSource ds, ToIntFunction<HikariPoolMXBean> value) {
+        if (ds == null || ds.isClosed() || ds.getHikariPoolMXBean() == null) {
+            return Double.NaN;
+        }
+        return value.applyAsInt(ds.getHikariPoolMXBean());
+    }
+
+    private Connection getConnection(String method) throws SQLException {
+        return pooledConnection(dataSource, method, null);
+    }
+
+    // Запись от имени чата: когда соединение вернулось в пул (запись закончена), чат отмечается
+    // в маршрутизаторе, и его чтения на время окна read-your-writes идут в основной пул
+    private Connection getWriteConnection(String method, long telegramId) throws SQLException {
+        ReadReplicaRouter router = readReplica;
+        return pooledConnection(dataSource, method, router != null ? () -> router.recordWrite(telegramId) : null);
+    }
+
+    // Чтение данных чата: с реплики, если она есть и чат недавно ничего не писал
+    private Connection getReadConnection(String method, long telegramId) throws SQLException {
+        ReadReplicaRouter router = readReplica;
+        if (router != null && router.routesToReplica(telegramId)) {
+            return replicaConnection(router, method);
+        }
+        READS_PRIMARY.increment();
+        return getConnection(method);
+    }
+
+    // Чтение без привязки к чату (например, выборка на день для рассылки)
+    private Connection getReadConnection(String method) throws SQLException {
+        ReadReplicaRouter router = readReplica;
+        if (router != null) {
+            return replicaConnection(router, method);
+        }
+        READS_PRIMARY.increment();
+        return getConnection(method);
+    }
+
+    // Реплика недоступна - чтение не падает, а уходит в основной пул
+    private Connection replicaConnection(ReadReplicaRouter router, String method) throws SQLException {
+        try {
+            Connection conn = pooledConnection(router.getReplica(), method, null);
+            READS_REPLICA.increment();
+            return conn;
+        } catch (SQLException e) {
+            LOGGER.log(Level.WARNING, "Replica connection failed for " + method + ", reading from primary", e);
+            READS_PRIMARY.increment();
+            return getConnection(method);
+        }
+    }
+
+    // Соединение из пула, которое при закрытии записывает длительность работы с ним в db_query_duration_seconds:
+    // время от запроса соединения (вместе с ожиданием пула) до его возврата. onClose - после возврата
+    private static Connection pooledConnection(HikariDataSource source, String method, Runnable onClose)
+            throws SQLException {
+        long start = System.nanoTime();
+        Connection conn = source.getConnection();
+        if (conn == null) {
+            return null;
+        }
+        LatencyHistogram latency = METRICS.latency("db_query_duration_seconds",
+                "Time a DatabaseManager method held a pooled connection", "method", method);
+        return (Connection) Proxy.newProxyInstance(Connection.class.getClassLoader(), new Class<?>[]{Connection.class},
+                (proxy, invoked, args) -> {
+                    try {
+                        return invoked.invoke(conn, args);
+                    } catch (InvocationTargetException e) {
+                        throw e.getCause();
+                    } finally {
+                        if (invoked.getName().equals("close") && invoked.getParameterCount() == 0) {
+                            latency.recordSince(start);
+                            if (onClose != null) {
+                                onClose.run();
+                            }
+                        }
+                    }
+                });
+    }
+
     public void createUsersTable() {
         String createTableSql =
                 "CREATE TABLE IF NOT EXISTS users (\n" +
@@ -46,14 +224,30 @@ public class DatabaseManager {
                         "    telegram_id BIGINT,\n" +
                         "    name VARCHAR(255) NOT NULL,\n" +
                         "    birthday DATE NOT NULL,\n" +
+                        "    birth_mmdd SMALLINT,\n" +
                         "    created_at TIMESTAMP DEFAULT CURRENT_TIMESTAMP,\n" +
                         "    updated_at TIMESTAMP DEFAULT CURRENT_TIMESTAMP\n" +
                         ");";
 
-        try (Connection conn = dataSource.getConnection();
+        // birth_mmdd - месяц и день рождения одним числом (15 мая -> 515),
+        // чтобы выборки по датам шли по индексу, а не через EXTRACT по всей таблице
+        String[] migrationSql = {
+                "ALTER TABLE users ADD COLUMN IF NOT EXISTS birth_mmdd SMALLINT",
+                "UPDATE users SET birth_mmdd = EXTRACT(MONTH FROM birthday) * 100 + EXTRACT(DAY FROM birthday) " +
+                        "WHERE birth_mmdd IS NULL",
+                "CREATE INDEX IF NOT EXISTS idx_users_telegram_mmdd ON users (telegram_id, birth_mmdd)",
+                "CREATE INDEX IF NOT EXISTS idx_users_mmdd ON users (birth_mmdd)",
+                "CREATE INDEX IF NOT EXISTS idx_users_telegram_id ON users (telegram_id, id)"
+        };
+
+        try (Connection conn = getConnection("createUsersTable");
              Statement stmt = conn.createStatement()) {
 
             stmt.execute(createTableSql);
+            for (String sql : migrationSql) {
+                stmt.execute(sql);
+            }
+            syncIdSequence(stmt);
             LOGGER.info("Таблица пользователей успешно создана или уже существовала");
 
         } catch (SQLException e) {
@@ -62,27 +256,133 @@ public class DatabaseManager {
         }
     }
 
-    public boolean addUser(int id, Long telegramId, String name, LocalDate birthday) throws SQLException {
-        String sql = "INSERT INTO users (id, telegram_id, name, birthday) VALUES (?, ?, ?, ?)";
+    // Поздравления, заранее сгенерированные моделью на конкретную дату; удаляются вместе с записью
+    public void createGreetingsTable() {
+        String sql = "CREATE TABLE IF NOT EXISTS greetings (\n" +
+                "    entry_id INTEGER NOT NULL REFERENCES users (id) ON DELETE CASCADE,\n" +
+                "    greeting_date DATE NOT NULL,\n" +
+                "    text TEXT NOT NULL,\n" +
+                "    created_at TIMESTAMP DEFAULT CURRENT_TIMESTAMP,\n" +
+                "    PRIMARY KEY (entry_id, greeting_date)\n" +
+                ");";
+
+        try (Connection conn = getConnection("createGreetingsTable");
+             Statement stmt = conn.createStatement()) {
+            stmt.execute(sql);
+        } catch (SQLException e) {
+            LOGGER.log(Level.SEVERE, "При создании таблицы поздравлений произошла ошибка", e);
+            throw new RuntimeException("Ошибка при создании таблицы поздравлений", e);
+        }
+    }
+
+    // Настройки чата. Чаты без строки здесь живут в часовом поясе сервера
+    public void createChatsTable() {
+        String sql = "CREATE TABLE IF NOT EXISTS chats (\n" +
+                "    telegram_id BIGINT PRIMARY KEY,\n" +
+                "    time_zone VARCHAR(64) NOT NULL,\n" +
+                "    updated_at TIMESTAMP DEFAULT CURRENT_TIMESTAMP\n" +
+                ");";
 
-        try (Connection conn = dataSource.getConnection();
-             PreparedStatement pstmt = conn.prepareStatement(sql)) {
+        try (Connection conn = getConnection("createChatsTable");
+             Statement stmt = conn.createStatement()) {
+            stmt.execute(sql);
+            // планировщик на каждом тике читает список поясов - из индекса, без чтения таблицы
+            stmt.execute("CREATE INDEX IF NOT EXISTS idx_chats_time_zone ON chats (time_zone)");
+        } catch (SQLException e) {
+            LOGGER.log(Level.SEVERE, "При создании таблицы чатов произошла ошибка", e);
+            throw new RuntimeException("Ошибка при создании таблицы чатов", e);
+        }
+    }
 
-            pstmt.setInt(1, id);
-            pstmt.setLong(2, telegramId);
-            pstmt.setString(3, name);
-            pstmt.setDate(4, Date.valueOf(birthday));
+    // Очередь утренней рассылки (outbox): по строке на день рождения в день run_date.
+    // Узлы разбирают строки пачками и отмечают доставку, так что после падения рассылка
+    // продолжается с того же места, а каждое уведомление отправляет ровно один узел.
+    // status: pending -> claimed -> delivered, или dead после OUTBOX_MAX_ATTEMPTS неудачных попыток
+    public void createOutboxTable() {
+        String sql = "CREATE TABLE IF NOT EXISTS notification_outbox (\n" +
+                "    run_date DATE NOT NULL,\n" +
+                "    entry_id INTEGER NOT NULL REFERENCES users (id) ON DELETE CASCADE,\n" +
+                "    telegram_id BIGINT NOT NULL,\n" +
+                "    name VARCHAR(255) NOT NULL,\n" +
+                "    status VARCHAR(16) NOT NULL DEFAULT 'pending',\n" +
+                "    attempts SMALLINT NOT NULL DEFAULT 0,\n" +
+                "    claimed_by VARCHAR(128),\n" +
+                "    claimed_at TIMESTAMP,\n" +
+                "    delivered_at TIMESTAMP,\n" +
+                "    PRIMARY KEY (run_date, entry_id)\n" +
+                ");";
+
+        try (Connection conn = getConnection("createOutboxTable");
+             Statement stmt = conn.createStatement()) {
+            stmt.execute(sql);
+            // строки забираются по чатам подряд, чтобы из них собирались сводки
+            stmt.execute("CREATE INDEX IF NOT EXISTS idx_outbox_chat ON notification_outbox (run_date, telegram_id, entry_id)");
+        } catch (SQLException e) {
+            LOGGER.log(Level.SEVERE, "При создании таблицы рассылки произошла ошибка", e);
+            throw new RuntimeException("Ошибка при создании таблицы рассылки", e);
+        }
+    }
+
+    // Раньше id выбирало приложение (COUNT(*) + 1) и последовательность SERIAL не двигалась;
+    // подтягиваем её к MAX(id), иначе первые вставки с id из базы упрутся в существующие строки
+    private void syncIdSequence(Statement stmt) {
+        try {
+            stmt.execute("SELECT setval(pg_get_serial_sequence('users', 'id'), " +
+                    "(SELECT COALESCE(MAX(id), 0) + 1 FROM users), false)");
+        } catch (SQLException e) {
+            LOGGER.log(Level.FINE, "id sequence sync is not supported by this database", e);
+        }
+    }
+
+    static int toMonthDay(LocalDate date) {
+        return date.getMonthValue() * 100 + date.getDayOfMonth();
+    }
+
+    // Условие на окно дат [from, to] по ключу MMDD. Если окно переходит через Новый год,
+    // оно разбивается на два диапазона, каждый из которых всё равно идёт по индексу
+    private static String monthDayWindow(int from, int to) {
+        return from <= to
+                ? "birth_mmdd BETWEEN ? AND ?"
+                : "(birth_mmdd >= ? OR birth_mmdd <= ?)";
+    }
+
+    // В невисокосный год 29 февраля не наступает, такие дни рождения отмечаем 28-го
+    static int lastMonthDayOf(LocalDate date) {
+        if (!date.isLeapYear() && date.getMonthValue() == 2 && date.getDayOfMonth() == 28) {
+            return 229;
+        }
+        return toMonthDay(date);
+    }
+
+    // id выдаёт база (SERIAL) и возвращает в том же запросе
+    public int addUser(long telegramId, String name, LocalDate birthday) throws SQLException {
+        try (Connection conn = getWriteConnection("addUser", telegramId);
+             PreparedStatement pstmt = conn.prepareStatement(INSERT_USER_SQL, new String[]{"id"})) {
+
+            pstmt.setLong(1, telegramId);
+            pstmt.setString(2, name);
+            pstmt.setDate(3, Date.valueOf(birthday));
+            pstmt.setInt(4, toMonthDay(birthday));
 
             pstmt.executeUpdate();
+
+            int id;
+            try (ResultSet keys = pstmt.getGeneratedKeys()) {
+                if (!keys.next()) {
+                    throw new SQLException("Database did not return generated id for telegram_id=" + telegramId);
+                }
+                id = keys.getInt(1);
+            }
+
+            BirthdayCalendarIndex index = calendarIndex;
+            if (index != null) {
+                index.put(id, telegramId, name, birthday);
+            }
             LOGGER.info(String.format("User added: id=%d, telegram_id=%d, name=%s, birthday=%s",
                     id, telegramId, name, birthday));
-            return true;
+            return id;
 
         } catch (SQLException e) {
-            if (e.getSQLState().equals("23505")) {
-                LOGGER.info(String.format("User already exists: id=%d", id));
-                return false;
-            }
             LOGGER.log(Level.SEVERE, "Ошибка при добавлении пользователя: " + telegramId, e);
             throw e;
         }
@@ -91,7 +391,7 @@ public class DatabaseManager {
     public int getUsersNum(long telegramId) {
         String sql = "SELECT COUNT(*) as user_count FROM users WHERE telegram_id = ?";
 
-        try (Connection conn = dataSource.getConnection();
+        try (Connection conn = getReadConnection("getUsersNum", telegramId);
              PreparedStatement pstmt = conn.prepareStatement(sql)) {
 
             pstmt.setLong(1, telegramId);
@@ -112,13 +412,17 @@ public class DatabaseManager {
     public boolean deleteUserById(long telegramId) {
         String sql = "DELETE FROM users WHERE id = ?";
 
-        try (Connection conn = dataSource.getConnection();
+        try (Connection conn = getConnection("deleteUserById");
              PreparedStatement pstmt = conn.prepareStatement(sql)) {
 
             pstmt.setLong(1, telegramId);
             int affectedRows = pstmt.executeUpdate();
 
             if (affectedRows > 0) {
+                BirthdayCalendarIndex index = calendarIndex;
+                if (index != null) {
+                    index.remove((int) telegramId);
+                }
                 LOGGER.info("User deleted with id: " + telegramId);
                 return true;
             } else {
@@ -132,23 +436,56 @@ public class DatabaseManager {
         }
     }
 
+    // Удаляет запись чата по id. Номер из списка переводится в id по тому списку, который видел
+    // пользователь (Bot хранит его в диалоге): OFFSET по текущей таблице сдвигается от чужих добавлений
+    // и удалений и попадает не в ту запись
+    public boolean deleteUser(long telegramId, int id) {
+        String sql = "DELETE FROM users WHERE id = ? AND telegram_id = ?";
+
+        try (Connection conn = getWriteConnection("deleteUser", telegramId);
+             PreparedStatement pstmt = conn.prepareStatement(sql)) {
+
+            pstmt.setInt(1, id);
+            pstmt.setLong(2, telegramId);
+            if (pstmt.executeUpdate() == 0) {
+                LOGGER.info("User not found for deletion: telegram_id=" + telegramId + ", id=" + id);
+                return false;
+            }
+
+            BirthdayCalendarIndex index = calendarIndex;
+            if (index != null) {
+                index.remove(id);
+            }
+            LOGGER.info("User deleted with id: " + id + " (telegram_id=" + telegramId + ")");
+            return true;
+
+        } catch (SQLException e) {
+            LOGGER.log(Level.SEVERE, "Failed to delete user " + id + " for telegram_id: " + telegramId, e);
+            return false;
+        }
+    }
+
     public List<BirthdayUser> getAllUsers(long telegramId) {
         List<BirthdayUser> users = new ArrayList<>();
-        String sql = "SELECT id, telegram_id, name, birthday FROM users WHERE telegram_id = ?";
+        // ordinal - номер записи внутри чата для показа пользователю, считается в том же запросе
+        String sql = "SELECT id, telegram_id, name, birthday, ROW_NUMBER() OVER (ORDER BY id) AS ordinal " +
+                "FROM users WHERE telegram_id = ? ORDER BY id";
 
-        try (Connection conn = dataSource.getConnection();
+        try (Connection conn = getReadConnection("getAllUsers", telegramId);
              PreparedStatement pstmt = conn.prepareStatement(sql)) {
 
             pstmt.setLong(1, telegramId);
 
             try (ResultSet rs = pstmt.executeQuery()) {
                 while (rs.next()) {
-                    users.add(new BirthdayUser(
+                    BirthdayUser user = new BirthdayUser(
                             rs.getInt("id"),
                             rs.getLong("telegram_id"),
                             rs.getString("name"),
                             rs.getDate("birthday").toLocalDate()
-                    ));
+                    );
+                    user.setOrdinal(rs.getInt("ordinal"));
+                    users.add(user);
                 }
             }
 
@@ -161,30 +498,102 @@ public class DatabaseManager {
         return users;
     }
 
+    // Постраничный список чата по ключу: записи с id > afterId (afterId = 0 - первая страница).
+    // Без OFFSET - индекс (telegram_id, id) отдаёт ровно limit + 1 строку, лишняя говорит о следующей странице.
+    // Тем же запросом читается одна строка по другую сторону границы: есть ли предыдущая страница,
+    // видно по самим данным, а не по курсору - записи до него могли удалить
+    public UserPage getUsersPageAfter(long telegramId, int afterId, int limit) {
+        String sql = "(SELECT id, telegram_id, name, birthday FROM users " +
+                "WHERE telegram_id = ? AND id <= ? ORDER BY id DESC LIMIT 1) UNION ALL " +
+                "(SELECT id, telegram_id, name, birthday FROM users " +
+                "WHERE telegram_id = ? AND id > ? ORDER BY id LIMIT ?)";
+        return queryUsersPage("getUsersPageAfter", sql, true, telegramId, afterId, limit);
+    }
+
+    // Страница перед записью beforeId: читается в обратном порядке и переворачивается
+    public UserPage getUsersPageBefore(long telegramId, int beforeId, int limit) {
+        String sql = "(SELECT id, telegram_id, name, birthday FROM users " +
+                "WHERE telegram_id = ? AND id >= ? ORDER BY id LIMIT 1) UNION ALL " +
+                "(SELECT id, telegram_id, name, birthday FROM users " +
+                "WHERE telegram_id = ? AND id < ? ORDER BY id DESC LIMIT ?)";
+        return queryUsersPage("getUsersPageBefore", sql, false, telegramId, beforeId, limit);
+    }
+
+    // UNION ALL не обещает порядок строк, поэтому строки страницы сортируются здесь,
+    // а строка по другую сторону границы узнаётся по id
+    private UserPage queryUsersPage(String method, String sql, boolean forward, long telegramId, int boundId,
+                                    int limit) {
+        List<BirthdayUser> users = new ArrayList<>(limit + 1);
+        boolean beyondBound = false;
+
+        try (Connection conn = getReadConnection(method, telegramId);
+             PreparedStatement pstmt = conn.prepareStatement(sql)) {
+
+            pstmt.setLong(1, telegramId);
+            pstmt.setInt(2, boundId);
+            pstmt.setLong(3, telegramId);
+            pstmt.setInt(4, boundId);
+            pstmt.setInt(5, limit + 1);
+
+            try (ResultSet rs = pstmt.executeQuery()) {
+                while (rs.next()) {
+                    int id = rs.getInt("id");
+                    if (forward ? id <= boundId : id >= boundId) {
+                        beyondBound = true;
+                        continue;
+                    }
+                    users.add(new BirthdayUser(
+                            id,
+                            rs.getLong("telegram_id"),
+                            rs.getString("name"),
+                            rs.getDate("birthday").toLocalDate()
+                    ));
+                }
+            }
+
+        } catch (SQLException e) {
+            LOGGER.log(Level.SEVERE, "Failed to get users page for telegram_id: " + telegramId, e);
+        }
+
+        // ближние к границе строки - первые, лишняя (limit + 1-я) говорит о странице дальше
+        Comparator<BirthdayUser> byId = Comparator.comparingInt(BirthdayUser::getId);
+        users.sort(forward ? byId : byId.reversed());
+        boolean beyondPage = users.size() > limit;
+        if (beyondPage) {
+            users.remove(limit);
+        }
+        if (forward) {
+            return new UserPage(users, beyondBound, beyondPage);
+        }
+        Collections.reverse(users);
+        return new UserPage(users, beyondPage, beyondBound);
+    }
+
     public List<BirthdayUser> getAllRecUsers(long telegramId) {
         List<BirthdayUser> users = new ArrayList<>();
 
         LocalDate now = LocalDate.now();
         LocalDate sameDayLastMonth = now.minusMonths(1);
 
+        int from = toMonthDay(sameDayLastMonth);
+        int to = lastMonthDayOf(now);
+
+        BirthdayCalendarIndex index = calendarIndex;
+        if (index != null) {
+            return index.findInWindow(telegramId, from, to);
+        }
+
         String sql = "SELECT id, telegram_id, name, birthday FROM users " +
                 "WHERE telegram_id = ? " +
-                "AND (" +
-                "   (EXTRACT(MONTH FROM birthday) = ? AND EXTRACT(DAY FROM birthday) BETWEEN ? AND ?) " +
-                "   OR " +
-                "   (EXTRACT(MONTH FROM birthday) = ? AND EXTRACT(DAY FROM birthday) BETWEEN 1 AND ?)" +
-                ") " +
-                "ORDER BY EXTRACT(MONTH FROM birthday), EXTRACT(DAY FROM birthday)";
-
-        try (Connection conn = dataSource.getConnection();
+                "AND " + monthDayWindow(from, to) + " " +
+                "ORDER BY birth_mmdd";
+
+        try (Connection conn = getReadConnection("getAllRecUsers", telegramId);
              PreparedStatement pstmt = conn.prepareStatement(sql)) {
 
             pstmt.setLong(1, telegramId);
-            pstmt.setInt(2, sameDayLastMonth.getMonthValue());
-            pstmt.setInt(3, sameDayLastMonth.getDayOfMonth());
-            pstmt.setInt(4, sameDayLastMonth.lengthOfMonth());
-            pstmt.setInt(5, now.getMonthValue());
-            pstmt.setInt(6, now.getDayOfMonth());
+            pstmt.setInt(2, from);
+            pstmt.setInt(3, to);
 
             try (ResultSet rs = pstmt.executeQuery()) {
                 while (rs.next()) {
@@ -213,24 +622,25 @@ public class DatabaseManager {
         LocalDate now = LocalDate.now();
         LocalDate sameDayNextMonth = now.plusMonths(1);
 
+        int from = toMonthDay(now);
+        int to = lastMonthDayOf(sameDayNextMonth);
+
+        BirthdayCalendarIndex index = calendarIndex;
+        if (index != null) {
+            return index.findInWindow(telegramId, from, to);
+        }
+
         String sql = "SELECT id, telegram_id, name, birthday FROM users " +
                 "WHERE telegram_id = ? " +
-                "AND (" +
-                "   (EXTRACT(MONTH FROM birthday) = ? AND EXTRACT(DAY FROM birthday) BETWEEN ? AND ?) " +
-                "   OR " +
-                "   (EXTRACT(MONTH FROM birthday) = ? AND EXTRACT(DAY FROM birthday) BETWEEN 1 AND ?)" +
-                ") " +
-                "ORDER BY EXTRACT(MONTH FROM birthday), EXTRACT(DAY FROM birthday)";
-
-        try (Connection conn = dataSource.getConnection();
+                "AND " + monthDayWindow(from, to) + " " +
+                "ORDER BY birth_mmdd";
+
+        try (Connection conn = getReadConnection("getAllFutUsers", telegramId);
              PreparedStatement pstmt = conn.prepareStatement(sql)) {
 
             pstmt.setLong(1, telegramId);
-            pstmt.setInt(2, now.getMonthValue());
-            pstmt.setInt(3, now.getDayOfMonth());
-            pstmt.setInt(4, now.lengthOfMonth());
-            pstmt.setInt(5, sameDayNextMonth.getMonthValue());
-            pstmt.setInt(6, sameDayNextMonth.getDayOfMonth());
+            pstmt.setInt(2, from);
+            pstmt.setInt(3, to);
 
             try (ResultSet rs = pstmt.executeQuery()) {
                 while (rs.next()) {
@@ -257,15 +667,16 @@ public class DatabaseManager {
         List<BirthdayUser> users = new ArrayList<>();
         String sql = "SELECT id, telegram_id, name, birthday " +
                 "FROM users " +
-                "WHERE EXTRACT(MONTH FROM birthday) = ? " +
-                "AND telegram_id = ? " +
-                "ORDER BY EXTRACT(DAY FROM birthday), name";
+                "WHERE telegram_id = ? " +
+                "AND birth_mmdd BETWEEN ? AND ? " +
+                "ORDER BY birth_mmdd, name";
 
-        try (Connection conn = dataSource.getConnection();
+        try (Connection conn = getReadConnection("getAllUsersOnMonth", chatID);
              PreparedStatement pstmt = conn.prepareStatement(sql)) {
 
-            pstmt.setInt(1, month);
-            pstmt.setLong(2, chatID);
+            pstmt.setLong(1, chatID);
+            pstmt.setInt(2, month * 100 + 1);
+            pstmt.setInt(3, month * 100 + 31);
 
             LOGGER.info("Executing query for month=" + month + ", chatID=" + chatID);
 
@@ -293,16 +704,15 @@ public class DatabaseManager {
         List<BirthdayUser> birthdays = new ArrayList<>();
         String sql = "SELECT id, telegram_id, name, birthday " +
                 "FROM users " +
-                "WHERE EXTRACT(MONTH FROM birthday) = ? " +
-                "AND EXTRACT(DAY FROM birthday) = ?";
+                "WHERE birth_mmdd BETWEEN ? AND ?";
 
         LocalDate today = LocalDate.now();
 
-        try (Connection conn = dataSource.getConnection();
+        try (Connection conn = getReadConnection("getTodayBirthdays");
              PreparedStatement pstmt = conn.prepareStatement(sql)) {
 
-            pstmt.setInt(1, today.getMonthValue());
-            pstmt.setInt(2, today.getDayOfMonth());
+            pstmt.setInt(1, toMonthDay(today));
+            pstmt.setInt(2, lastMonthDayOf(today));
 
             try (ResultSet rs = pstmt.executeQuery()) {
                 while (rs.next()) {
@@ -327,7 +737,7 @@ public class DatabaseManager {
     public boolean userExists(long telegramId) {
         String sql = "SELECT COUNT(*) FROM users WHERE telegram_id = ?";
 
-        try (Connection conn = dataSource.getConnection();
+        try (Connection conn = getReadConnection("userExists", telegramId);
              PreparedStatement pstmt = conn.prepareStatement(sql)) {
 
             pstmt.setLong(1, telegramId);
@@ -346,17 +756,20 @@ public class DatabaseManager {
     }
 
     public boolean updateBirthday(long telegramId, LocalDate birthday) {
-        String sql = "UPDATE users SET birthday = ?, updated_at = CURRENT_TIMESTAMP WHERE telegram_id = ?";
-
-        try (Connection conn = dataSource.getConnection();
-             PreparedStatement pstmt = conn.prepareStatement(sql)) {
+        try (Connection conn = getWriteConnection("updateBirthday", telegramId);
+             PreparedStatement pstmt = conn.prepareStatement(UPDATE_BIRTHDAY_SQL)) {
 
             pstmt.setDate(1, Date.valueOf(birthday));
-            pstmt.setLong(2, telegramId);
+            pstmt.setInt(2, toMonthDay(birthday));
+            pstmt.setLong(3, telegramId);
 
             int rowsAffected = pstmt.executeUpdate();
 
             if (rowsAffected > 0) {
+                BirthdayCalendarIndex index = calendarIndex;
+                if (index != null) {
+                    index.moveChat(telegramId, birthday);
+                }
                 LOGGER.info(String.format("Birthday updated for telegram_id=%d: %s", telegramId, birthday));
                 return true;
             }
@@ -371,10 +784,8 @@ public class DatabaseManager {
     }
 
     public boolean updateName(long telegramId, String name) {
-        String sql = "UPDATE users SET name = ?, updated_at = CURRENT_TIMESTAMP WHERE telegram_id = ?";
-
-        try (Connection conn = dataSource.getConnection();
-             PreparedStatement pstmt = conn.prepareStatement(sql)) {
+        try (Connection conn = getWriteConnection("updateName", telegramId);
+             PreparedStatement pstmt = conn.prepareStatement(UPDATE_NAME_SQL)) {
 
             pstmt.setString(1, name);
             pstmt.setLong(2, telegramId);
@@ -382,6 +793,10 @@ public class DatabaseManager {
             int rowsAffected = pstmt.executeUpdate();
 
             if (rowsAffected > 0) {
+                BirthdayCalendarIndex index = calendarIndex;
+                if (index != null) {
+                    index.renameChat(telegramId, name);
+                }
                 LOGGER.info(String.format("Name updated for telegram_id=%d: %s", telegramId, name));
                 return true;
             }
@@ -395,37 +810,729 @@ public class DatabaseManager {
         }
     }
 
+    // Отложенная запись для addUser/updateName/updateBirthday: при всплеске записей соединения пула
+    // не тратятся на отдельный autocommit на каждое изменение - пачка уходит одной транзакцией
+    public void enableWriteBehind(long flushIntervalMillis, int maxBatch) {
+        writeBehind = new WriteBehindBuffer(flushIntervalMillis, maxBatch, this::writeBatch);
+        LOGGER.info("Write-behind enabled: flush every " + flushIntervalMillis + " ms or " + maxBatch + " changes");
+    }
+
+    // future завершается после коммита; значение - как у addUser
+    public CompletableFuture<Integer> addUserAsync(long telegramId, String name, LocalDate birthday) {
+        WriteBehindBuffer buffer = writeBehind;
+        if (buffer != null) {
+            return buffer.submit(WriteBehindBuffer.Write.addUser(telegramId, name, birthday));
+        }
+        try {
+            return CompletableFuture.completedFuture(addUser(telegramId, name, birthday));
+        } catch (SQLException e) {
+            return CompletableFuture.failedFuture(e);
+        }
+    }
+
+    public CompletableFuture<Boolean> updateNameAsync(long telegramId, String name) {
+        WriteBehindBuffer buffer = writeBehind;
+        if (buffer != null) {
+            return buffer.submit(WriteBehindBuffer.Write.updateName(telegramId, name)).thenApply(rows -> rows > 0);
+        }
+        return CompletableFuture.completedFuture(updateName(telegramId, name));
+    }
+
+    public CompletableFuture<Boolean> updateBirthdayAsync(long telegramId, LocalDate birthday) {
+        WriteBehindBuffer buffer = writeBehind;
+        if (buffer != null) {
+            return buffer.submit(WriteBehindBuffer.Write.updateBirthday(telegramId, birthday))
+                    .thenApply(rows -> rows > 0);
+        }
+        return CompletableFuture.completedFuture(updateBirthday(telegramId, birthday));
+    }
+
+    // Пачка write-behind одной транзакцией. Подряд идущие изменения одного вида идут одним executeBatch,
+    // порядок между видами сохраняется. Если пачка не прошла (например, одна вставка нарушила
+    // уникальность), транзакция откатывается и изменения применяются по одному, как без write-behind
+    void writeBatch(List<WriteBehindBuffer.Write> writes) {
+        int[] results = new int[writes.size()];
+
+        try (Connection conn = getConnection("writeBatch")) {
+            conn.setAutoCommit(false);
+            try {
+                int from = 0;
+                while (from < writes.size()) {
+                    WriteBehindBuffer.Kind kind = writes.get(from).getKind();
+                    int to = from;
+                    while (to < writes.size() && writes.get(to).getKind() == kind) {
+                        to++;
+                    }
+                    executeWriteRun(conn, kind, writes.subList(from, to), results, from);
+                    from = to;
+                }
+                conn.commit();
+            } catch (SQLException e) {
+                conn.rollback();
+                throw e;
+            } finally {
+                conn.setAutoCommit(true);
+            }
+
+        } catch (SQLException e) {
+            LOGGER.log(Level.WARNING, "Write-behind batch of " + writes.size() + " changes failed, applying one by one", e);
+            for (WriteBehindBuffer.Write write : writes) {
+                try {
+                    write.getResult().complete(applyWrite(write));
+                } catch (SQLException ex) {
+                    write.getResult().completeExceptionally(ex);
+                }
+            }
+            return;
+        }
+
+        // индекс и маршрутизатор чтений узнают об изменениях только после коммита
+        BirthdayCalendarIndex index = calendarIndex;
+        ReadReplicaRouter router = readReplica;
+        for (int i = 0; i < writes.size(); i++) {
+            WriteBehindBuffer.Write write = writes.get(i);
+            if (index != null && results[i] > 0) {
+                switch (write.getKind()) {
+                    case ADD_USER:
+                        index.put(results[i], write.getTelegramId(), write.getName(), write.getBirthday());
+                        break;
+                    case UPDATE_NAME:
+                        index.renameChat(write.getTelegramId(), write.getName());
+                        break;
+                    case UPDATE_BIRTHDAY:
+                        index.moveChat(write.getTelegramId(), write.getBirthday());
+                        break;
+                }
+            }
+            if (router != null) {
+                router.recordWrite(write.getTelegramId());
+            }
+            write.getResult().complete(results[i]);
+        }
+    }
+
+    private static void executeWriteRun(Connection conn, WriteBehindBuffer.Kind kind, List<WriteBehindBuffer.Write> run,
+                                        int[] results, int offset) throws SQLException {
+        if (kind == WriteBehindBuffer.Kind.ADD_USER) {
+            try (PreparedStatement pstmt = conn.prepareStatement(INSERT_USER_SQL, new String[]{"id"})) {
+                for (WriteBehindBuffer.Write write : run) {
+                    pstmt.setLong(1, write.getTelegramId());
+                    pstmt.setString(2, write.getName());
+                    pstmt.setDate(3, Date.valueOf(write.getBirthday()));
+                    pstmt.setInt(4, toMonthDay(write.getBirthday()));
+                    pstmt.addBatch();
+                }
+                pstmt.executeBatch();
+                // ключи приходят в порядке строк пачки
+                try (ResultSet keys = pstmt.getGeneratedKeys()) {
+                    for (int i = 0; i < run.size(); i++) {
+                        if (!keys.next()) {
+                            throw new SQLException("Database did not return generated ids for the batch");
+                        }
+                        results[offset + i] = keys.getInt(1);
+                    }
+                }
+            }
+            return;
+        }
+
+        boolean rename = kind == WriteBehindBuffer.Kind.UPDATE_NAME;
+        try (PreparedStatement pstmt = conn.prepareStatement(rename ? UPDATE_NAME_SQL : UPDATE_BIRTHDAY_SQL)) {
+            for (WriteBehindBuffer.Write write : run) {
+                if (rename) {
+                    pstmt.setString(1, write.getName());
+                    pstmt.setLong(2, write.getTelegramId());
+                } else {
+                    pstmt.setDate(1, Date.valueOf(write.getBirthday()));
+                    pstmt.setInt(2, toMonthDay(write.getBirthday()));
+                    pstmt.setLong(3, write.getTelegramId());
+                }
+                pstmt.addBatch();
+            }
+            int[] counts = pstmt.executeBatch();
+            for (int i = 0; i < run.size(); i++) {
+                // SUCCESS_NO_INFO: драйвер не сообщил число строк, но оператор выполнен
+                results[offset + i] = counts[i] == Statement.SUCCESS_NO_INFO ? 1 : counts[i];
+            }
+        }
+    }
+
+    private int applyWrite(WriteBehindBuffer.Write write) throws SQLException {
+        switch (write.getKind()) {
+            case ADD_USER:
+                return addUser(write.getTelegramId(), write.getName(), write.getBirthday());
+            case UPDATE_NAME:
+                return updateName(write.getTelegramId(), write.getName()) ? 1 : 0;
+            default:
+                return updateBirthday(write.getTelegramId(), write.getBirthday()) ? 1 : 0;
+        }
+    }
+
+    // Массовый импорт записей одного чата. На PostgreSQL строки идут через COPY FROM STDIN
+    // прямо из итератора, иначе (H2) - пачками addBatch в одной транзакции.
+    // progress вызывается каждые IMPORT_PROGRESS_STEP строк с числом уже переданных строк.
+    public ImportResult importUsers(long telegramId, Iterator<BirthdayEntry> entries, IntConsumer progress)
+            throws SQLException {
+        long start = System.nanoTime();
+        int imported;
+
+        try (Connection conn = getWriteConnection("importUsers", telegramId)) {
+            if (conn.isWrapperFor(PGConnection.class)) {
+                imported = copyUsers(conn.unwrap(PGConnection.class), telegramId, entries, progress);
+            } else {
+                imported = batchInsertUsers(conn, telegramId, entries, progress);
+            }
+        } catch (SQLException e) {
+            LOGGER.log(Level.SEVERE, "Failed to import users for telegram_id: " + telegramId, e);
+            throw e;
+        }
+
+        BirthdayCalendarIndex index = calendarIndex;
+        if (index != null && imported > 0) {
+            // COPY не возвращает id, поэтому перечитываем записи чата
+            for (BirthdayUser user : getAllUsers(telegramId)) {
+                index.put(user.getId(), user.getTelegramId(), user.getName(), user.getBirthday());
+            }
+        }
+
+        ImportResult result = new ImportResult(imported, System.nanoTime() - start);
+        LOGGER.info("Imported users for telegram_id=" + telegramId + ": " + result);
+        return result;
+    }
+
+    private int copyUsers(PGConnection conn, long telegramId, Iterator<BirthdayEntry> entries,
+                          IntConsumer progress) throws SQLException {
+        String sql = "COPY users (telegram_id, name, birthday, birth_mmdd) FROM STDIN WITH (FORMAT csv)";
+        try (CsvCopyReader reader = new CsvCopyReader(telegramId, entries, progress)) {
+            return (int) conn.getCopyAPI().copyIn(sql, reader);
+        } catch (IOException e) {
+            throw new SQLException("COPY of imported users failed", e);
+        }
+    }
+
+    private int batchInsertUsers(Connection conn, long telegramId, Iterator<BirthdayEntry> entries,
+                                 IntConsumer progress) throws SQLException {
+        String sql = "INSERT INTO users (telegram_id, name, birthday, birth_mmdd) VALUES (?, ?, ?, ?)";
+        int imported = 0;
+
+        conn.setAutoCommit(false);
+        try (PreparedStatement pstmt = conn.prepareStatement(sql)) {
+            while (entries.hasNext()) {
+                BirthdayEntry entry = entries.next();
+                pstmt.setLong(1, telegramId);
+                pstmt.setString(2, entry.getPersonName());
+                pstmt.setDate(3, Date.valueOf(entry.getBirthday()));
+                pstmt.setInt(4, toMonthDay(entry.getBirthday()));
+                pstmt.addBatch();
+                imported++;
+
+                if (imported % IMPORT_BATCH_SIZE == 0) {
+                    pstmt.executeBatch();
+                }
+                if (imported % IMPORT_PROGRESS_STEP == 0) {
+                    progress.accept(imported);
+                }
+            }
+            pstmt.executeBatch();
+            conn.commit();
+        } catch (SQLException | RuntimeException e) {
+            conn.rollback();
+            throw e;
+        } finally {
+            conn.setAutoCommit(true);
+        }
+
+        return imported;
+    }
+
+    // Отдаёт записи в формате CSV для COPY, вытягивая их из итератора по мере чтения
+    private static final class CsvCopyReader extends Reader {
+        private final long telegramId;
+        private final Iterator<BirthdayEntry> entries;
+        private final IntConsumer progress;
+        private final StringBuilder buffer = new StringBuilder();
+        private int position;
+        private int rows;
+
+        CsvCopyReader(long telegramId, Iterator<BirthdayEntry> entries, IntConsumer progress) {
+            this.telegramId = telegramId;
+            this.entries = entries;
+            this.progress = progress;
+        }
+
+        @Override
+        public int read(char[] cbuf, int off, int len) {
+            if (position == buffer.length()) {
+                buffer.setLength(0);
+                position = 0;
+                while (buffer.length() < len && entries.hasNext()) {
+                    appendRow(entries.next());
+                }
+                if (buffer.length() == 0) {
+                    return -1;
+                }
+            }
+            int count = Math.min(len, buffer.length() - position);
+            buffer.getChars(position, position + count, cbuf, off);
+            position += count;
+            return count;
+        }
+
+        private void appendRow(BirthdayEntry entry) {
+            buffer.append(telegramId).append(',')
+                    .append('"').append(entry.getPersonName().replace("\"", "\"\"")).append('"').append(',')
+                    .append(entry.getBirthday()).append(',')
+                    .append(toMonthDay(entry.getBirthday())).append('\n');
+            rows++;
+            if (rows % IMPORT_PROGRESS_STEP == 0) {
+                progress.accept(rows);
+            }
+        }
+
+        @Override
+        public void close() {
+        }
+    }
+
+    // Загружает всю таблицу в календарь в памяти; дальше он обновляется вместе с записью в БД.
+    // Календарь видит только записи этого процесса - подходит, когда пишет в базу один узел
+    public BirthdayCalendarIndex enableCalendarIndex() {
+        BirthdayCalendarIndex index = loadCalendarIndex();
+        if (index != null) {
+            calendarIndex = index;
+        }
+        return calendarIndex;
+    }
+
+    // Если в базу пишут несколько узлов (или правят её напрямую), чужие записи попадают в календарь
+    // только при перезагрузке: раз в refreshMillis таблица читается заново. Окна /recentbirthdays,
+    // /futurebirthdays и утренняя выборка могут отставать от чужих записей на этот срок; свои записи
+    // видны сразу
+    public BirthdayCalendarIndex enableCalendarIndex(long refreshMillis) {
+        BirthdayCalendarIndex index = enableCalendarIndex();
+        if (refreshMillis > 0 && calendarRefresher == null) {
+            ScheduledExecutorService refresher = Executors.newSingleThreadScheduledExecutor(runnable -> {
+                Thread thread = new Thread(runnable, "calendar-index-refresh");
+                thread.setDaemon(true);
+                return thread;
+            });
+            refresher.scheduleWithFixedDelay(this::reloadCalendarIndex, refreshMillis, refreshMillis,
+                    TimeUnit.MILLISECONDS);
+            calendarRefresher = refresher;
+        }
+        return index;
+    }
+
+    // Собирает новый календарь из таблицы и подменяет им текущий. Изменения, сделанные этим узлом
+    // за время загрузки, не теряются: старый календарь ведёт журнал и передаёт его новому (handOver)
+    void reloadCalendarIndex() {
+        BirthdayCalendarIndex current = calendarIndex;
+        if (current == null) {
+            return;
+        }
+        current.startRecording();
+        BirthdayCalendarIndex fresh = loadCalendarIndex();
+        if (fresh == null) {
+            current.stopRecording();
+            return;
+        }
+        current.handOver(fresh);
+        calendarIndex = fresh;
+    }
+
+    // null - если таблицу прочитать не удалось
+    private BirthdayCalendarIndex loadCalendarIndex() {
+        BirthdayCalendarIndex index = new BirthdayCalendarIndex();
+        String sql = "SELECT id, telegram_id, name, birthday FROM users";
+
+        try (Connection conn = getConnection("enableCalendarIndex")) {
+            conn.setAutoCommit(false);
+            try (PreparedStatement pstmt = conn.prepareStatement(sql)) {
+                pstmt.setFetchSize(INDEX_LOAD_FETCH_SIZE);
+
+                try (ResultSet rs = pstmt.executeQuery()) {
+                    while (rs.next()) {
+                        index.put(
+                                rs.getInt("id"),
+                                rs.getLong("telegram_id"),
+                                rs.getString("name"),
+                                rs.getDate("birthday").toLocalDate()
+                        );
+                    }
+                }
+            } finally {
+                conn.commit();
+                conn.setAutoCommit(true);
+            }
+
+            LOGGER.info("Birthday calendar index loaded: " + index.size() + " entries");
+            return index;
+
+        } catch (SQLException e) {
+            LOGGER.log(Level.SEVERE, "Failed to load birthday calendar index, falling back to queries", e);
+            return null;
+        }
+    }
+
     public void shutdown() {
+        ScheduledExecutorService refresher = calendarRefresher;
+        if (refresher != null) {
+            calendarRefresher = null;
+            refresher.shutdownNow();
+        }
+        WriteBehindBuffer buffer = writeBehind;
+        if (buffer != null) {
+            writeBehind = null;
+            buffer.close();
+        }
         if (dataSource != null && !dataSource.isClosed()) {
             dataSource.close();
             LOGGER.info("Database connection pool closed");
         }
-    }
-
-    public String getPoolStats() {
-        if (dataSource != null) {
-            return String.format(
-                    "Active connections: %d, Idle connections: %d, Total connections: %d",
-                    dataSource.getHikariPoolMXBean().getActiveConnections(),
-                    dataSource.getHikariPoolMXBean().getIdleConnections(),
-                    dataSource.getHikariPoolMXBean().getTotalConnections()
-            );
+        ReadReplicaRouter router = readReplica;
+        if (router != null) {
+            router.close();
+            LOGGER.info("Replica connection pool closed");
         }
-        return "Connection pool not initialized";
     }
 
-    // Метод для BirthdayScheduler
-    public List<BirthdayNotification> getTodayNotifications() {
+    // Дни рождения на произвольную дату (например, завтрашнюю - для заготовки поздравлений)
+    public List<BirthdayNotification> getNotificationsOn(LocalDate date) {
         List<BirthdayNotification> notifications = new ArrayList<>();
-        List<BirthdayUser> todayBirthdays = getTodayBirthdays();
 
-        for (BirthdayUser user : todayBirthdays) {
-            notifications.add(new BirthdayNotification(
-                    user.getTelegramId(),
-                    user.getName()
-            ));
+        BirthdayCalendarIndex index = calendarIndex;
+        if (index != null) {
+            for (BirthdayUser user : index.findOn(date)) {
+                notifications.add(new BirthdayNotification(user.getId(), user.getTelegramId(), user.getName()));
+            }
+            return notifications;
+        }
+
+        String sql = "SELECT id, telegram_id, name FROM users WHERE birth_mmdd BETWEEN ? AND ?";
+
+        try (Connection conn = getReadConnection("getNotificationsOn");
+             PreparedStatement pstmt = conn.prepareStatement(sql)) {
+            pstmt.setInt(1, toMonthDay(date));
+            pstmt.setInt(2, lastMonthDayOf(date));
+
+            try (ResultSet rs = pstmt.executeQuery()) {
+                while (rs.next()) {
+                    notifications.add(new BirthdayNotification(
+                            rs.getInt("id"),
+                            rs.getLong("telegram_id"),
+                            rs.getString("name")
+                    ));
+                }
+            }
+
+        } catch (SQLException e) {
+            LOGGER.log(Level.SEVERE, "Failed to get notifications for " + date, e);
         }
 
         return notifications;
     }
-}
\ No newline at end of file
+
+    // Повторная заготовка на ту же дату ничего не перезаписывает. Конфликт возможен только по первичному
+    // ключу, поэтому он не указан явно - в таком виде запрос понимает и встроенная H2
+    public void saveGreeting(int entryId, LocalDate date, String text) {
+        String sql = "INSERT INTO greetings (entry_id, greeting_date, text) VALUES (?, ?, ?) " +
+                "ON CONFLICT DO NOTHING";
+
+        try (Connection conn = getConnection("saveGreeting");
+             PreparedStatement pstmt = conn.prepareStatement(sql)) {
+            pstmt.setInt(1, entryId);
+            pstmt.setDate(2, Date.valueOf(date));
+            pstmt.setString(3, text);
+            pstmt.executeUpdate();
+
+        } catch (SQLException e) {
+            LOGGER.log(Level.WARNING, "Failed to save greeting for entry " + entryId, e);
+        }
+    }
+
+    // Все заготовленные на дату поздравления: id записи -> текст. Читается один раз за рассылку
+    public Map<Integer, String> getGreetings(LocalDate date) {
+        Map<Integer, String> greetings = new HashMap<>();
+        String sql = "SELECT entry_id, text FROM greetings WHERE greeting_date = ?";
+
+        try (Connection conn = getConnection("getGreetings");
+             PreparedStatement pstmt = conn.prepareStatement(sql)) {
+            pstmt.setDate(1, Date.valueOf(date));
+
+            try (ResultSet rs = pstmt.executeQuery()) {
+                while (rs.next()) {
+                    greetings.put(rs.getInt("entry_id"), rs.getString("text"));
+                }
+            }
+
+        } catch (SQLException e) {
+            LOGGER.log(Level.WARNING, "Failed to load greetings for " + date, e);
+        }
+
+        return greetings;
+    }
+
+    public int deleteGreetingsBefore(LocalDate date) {
+        String sql = "DELETE FROM greetings WHERE greeting_date < ?";
+
+        try (Connection conn = getConnection("deleteGreetingsBefore");
+             PreparedStatement pstmt = conn.prepareStatement(sql)) {
+            pstmt.setDate(1, Date.valueOf(date));
+            return pstmt.executeUpdate();
+
+        } catch (SQLException e) {
+            LOGGER.log(Level.WARNING, "Failed to delete old greetings", e);
+            return 0;
+        }
+    }
+
+    public boolean setChatTimeZone(long telegramId, ZoneId zone) {
+        String updateSql = "UPDATE chats SET time_zone = ?, updated_at = CURRENT_TIMESTAMP WHERE telegram_id = ?";
+        String insertSql = "INSERT INTO chats (telegram_id, time_zone) VALUES (?, ?) ON CONFLICT DO NOTHING";
+
+        try (Connection conn = getWriteConnection("setChatTimeZone", telegramId)) {
+            try (PreparedStatement update = conn.prepareStatement(updateSql)) {
+                update.setString(1, zone.getId());
+                update.setLong(2, telegramId);
+                if (update.executeUpdate() > 0) {
+                    return true;
+                }
+            }
+            try (PreparedStatement insert = conn.prepareStatement(insertSql)) {
+                insert.setLong(1, telegramId);
+                insert.setString(2, zone.getId());
+                return insert.executeUpdate() > 0;
+            }
+
+        } catch (SQLException e) {
+            LOGGER.log(Level.SEVERE, "Failed to set time zone for telegram_id: " + telegramId, e);
+            return false;
+        }
+    }
+
+    // null - пояс не задан, чат живёт по времени сервера
+    public ZoneId getChatTimeZone(long telegramId) {
+        String sql = "SELECT time_zone FROM chats WHERE telegram_id = ?";
+
+        try (Connection conn = getReadConnection("getChatTimeZone", telegramId);
+             PreparedStatement pstmt = conn.prepareStatement(sql)) {
+            pstmt.setLong(1, telegramId);
+            try (ResultSet rs = pstmt.executeQuery()) {
+                return rs.next() ? ZoneId.of(rs.getString("time_zone")) : null;
+            }
+
+        } catch (SQLException | DateTimeException e) {
+            LOGGER.log(Level.SEVERE, "Failed to get time zone for telegram_id: " + telegramId, e);
+            return null;
+        }
+    }
+
+    // Все пояса, заданные чатами: их немного, и по ним планировщик решает, у кого наступило утро
+    public Set<String> getChatTimeZones() {
+        String sql = "SELECT DISTINCT time_zone FROM chats";
+        Set<String> zones = new HashSet<>();
+
+        try (Connection conn = getConnection("getChatTimeZones");
+             Statement stmt = conn.createStatement();
+             ResultSet rs = stmt.executeQuery(sql)) {
+            while (rs.next()) {
+                zones.add(rs.getString("time_zone"));
+            }
+
+        } catch (SQLException e) {
+            LOGGER.log(Level.SEVERE, "Failed to get chat time zones", e);
+        }
+
+        return zones;
+    }
+
+    // Заполняет outbox на date одним INSERT ... SELECT - только для чатов из поясов zones
+    // (чаты без своего пояса считаются в defaultZone). Вызывается всеми узлами и на каждом тике
+    // окна рассылки: ON CONFLICT оставляет уже созданные строки как есть
+    public int fillOutbox(LocalDate date, Collection<String> zones, String defaultZone) {
+        if (zones.isEmpty()) {
+            return 0;
+        }
+        String cleanupSql = "DELETE FROM notification_outbox WHERE run_date < ?";
+        String fillSql = "INSERT INTO notification_outbox (run_date, entry_id, telegram_id, name) " +
+                "SELECT ?, u.id, u.telegram_id, u.name FROM users u " +
+                "LEFT JOIN chats c ON c.telegram_id = u.telegram_id " +
+                "WHERE u.birth_mmdd BETWEEN ? AND ? AND COALESCE(c.time_zone, ?) IN (" +
+                String.join(", ", Collections.nCopies(zones.size(), "?")) + ") " +
+                "ON CONFLICT DO NOTHING";
+
+        try (Connection conn = getConnection("fillOutbox")) {
+            try (PreparedStatement cleanup = conn.prepareStatement(cleanupSql)) {
+                cleanup.setDate(1, Date.valueOf(date.minusDays(OUTBOX_RETENTION_DAYS)));
+                cleanup.executeUpdate();
+            }
+            try (PreparedStatement fill = conn.prepareStatement(fillSql)) {
+                fill.setDate(1, Date.valueOf(date));
+                fill.setInt(2, toMonthDay(date));
+                fill.setInt(3, lastMonthDayOf(date));
+                fill.setString(4, defaultZone);
+                int param = 5;
+                for (String zone : zones) {
+                    fill.setString(param++, zone);
+                }
+                int added = fill.executeUpdate();
+                if (added > 0) {
+                    LOGGER.info("Added " + added + " notifications to the outbox for " + date + " " + zones);
+                }
+                return added;
+            }
+
+        } catch (SQLException e) {
+            LOGGER.log(Level.SEVERE, "Failed to fill the outbox for " + date, e);
+            return 0;
+        }
+    }
+
+    // Забирает до limit неотправленных строк. SKIP LOCKED пропускает строки, которые в этот момент
+    // захватывает другой узел, поэтому узлы не ждут друг друга и не получают одну строку дважды.
+    // Захват, не подтверждённый за OUTBOX_CLAIM_LEASE_MINUTES, считается брошенным и засчитывается
+    // как неудачная попытка: строка, на которой узел падает или зависает, после OUTBOX_MAX_ATTEMPTS
+    // уходит в dead, а не переходит от узла к узлу бесконечно.
+    // Строки идут по telegram_id: строки одного чата приходят подряд и попадают в одну сводку
+    public List<BirthdayNotification> claimOutboxBatch(LocalDate date, String nodeId, int limit) {
+        String selectSql = "SELECT entry_id, telegram_id, name, status, attempts FROM notification_outbox " +
+                "WHERE run_date = ? AND (status = 'pending' OR (status = 'claimed' " +
+                "AND claimed_at < CURRENT_TIMESTAMP - INTERVAL '" + OUTBOX_CLAIM_LEASE_MINUTES + "' MINUTE)) " +
+                "ORDER BY telegram_id, entry_id LIMIT ? FOR UPDATE SKIP LOCKED";
+        String claimSql = "UPDATE notification_outbox SET status = 'claimed', claimed_by = ?, " +
+                "claimed_at = CURRENT_TIMESTAMP, attempts = attempts + ? WHERE run_date = ? AND entry_id = ?";
+        String deadSql = "UPDATE notification_outbox SET status = 'dead', attempts = attempts + 1, " +
+                "claimed_by = NULL WHERE run_date = ? AND entry_id = ?";
+        List<BirthdayNotification> batch = new ArrayList<>(limit);
+        List<Integer> reclaimed = new ArrayList<>();
+        List<Integer> dead = new ArrayList<>();
+
+        try (Connection conn = getConnection("claimOutboxBatch")) {
+            conn.setAutoCommit(false);
+            try {
+                try (PreparedStatement select = conn.prepareStatement(selectSql)) {
+                    select.setDate(1, Date.valueOf(date));
+                    select.setInt(2, limit);
+                    try (ResultSet rs = select.executeQuery()) {
+                        while (rs.next()) {
+                            int entryId = rs.getInt("entry_id");
+                            if ("claimed".equals(rs.getString("status"))) {
+                                if (rs.getInt("attempts") + 1 >= OUTBOX_MAX_ATTEMPTS) {
+                                    dead.add(entryId);
+                                    continue;
+                                }
+                                reclaimed.add(entryId);
+                            }
+                            batch.add(new BirthdayNotification(
+                                    entryId,
+                                    rs.getLong("telegram_id"),
+                                    rs.getString("name")
+                            ));
+                        }
+                    }
+                }
+                if (!batch.isEmpty()) {
+                    try (PreparedStatement claim = conn.prepareStatement(claimSql)) {
+                        for (BirthdayNotification notification : batch) {
+                            claim.setString(1, nodeId);
+                            claim.setInt(2, reclaimed.contains(notification.getEntryId()) ? 1 : 0);
+                            claim.setDate(3, Date.valueOf(date));
+                            claim.setInt(4, notification.getEntryId());
+                            claim.addBatch();
+                        }
+                        claim.executeBatch();
+                    }
+                }
+                if (!dead.isEmpty()) {
+                    try (PreparedStatement deadLetter = conn.prepareStatement(deadSql)) {
+                        for (Integer entryId : dead) {
+                            deadLetter.setDate(1, Date.valueOf(date));
+                            deadLetter.setInt(2, entryId);
+                            deadLetter.addBatch();
+                        }
+                        deadLetter.executeBatch();
+                    }
+                }
+                conn.commit();
+            } catch (SQLException e) {
+                conn.rollback();
+                throw e;
+            } finally {
+                conn.setAutoCommit(true);
+            }
+
+        } catch (SQLException e) {
+            // пустой список значит "строк больше нет" - ошибка должна дойти до прохода рассылки,
+            // который запишет её в лог, а строки заберёт следующий тик
+            throw new RuntimeException("Failed to claim outbox batch for " + date, e);
+        }
+
+        if (!reclaimed.isEmpty() || !dead.isEmpty()) {
+            LOGGER.warning("Outbox for " + date + ": reclaimed " + reclaimed.size()
+                    + " abandoned rows, dead-lettered " + dead.size());
+        }
+        // пачка целиком ушла в dead - пустой ответ значил бы для вызывающего, что строк больше нет
+        if (batch.isEmpty() && !dead.isEmpty()) {
+            return claimOutboxBatch(date, nodeId, limit);
+        }
+        return batch;
+    }
+
+    // Отметки принимаются только от узла, который держит захват: узел, чей захват истёк
+    // и перешёл к другому, не перезапишет итог нового владельца
+    public void markOutboxDelivered(LocalDate date, String nodeId, List<Integer> entryIds) {
+        updateOutbox("markOutboxDelivered", "UPDATE notification_outbox SET status = 'delivered', " +
+                "delivered_at = CURRENT_TIMESTAMP WHERE run_date = ? AND entry_id = ? AND claimed_by = ?",
+                date, nodeId, entryIds);
+    }
+
+    // Неудачная отправка возвращает строку в pending для следующей попытки,
+    // а после OUTBOX_MAX_ATTEMPTS - в dead
+    public void markOutboxFailed(LocalDate date, String nodeId, List<Integer> entryIds) {
+        updateOutbox("markOutboxFailed", "UPDATE notification_outbox SET attempts = attempts + 1, " +
+                "status = CASE WHEN attempts + 1 >= " + OUTBOX_MAX_ATTEMPTS + " THEN 'dead' ELSE 'pending' END, " +
+                "claimed_by = NULL WHERE run_date = ? AND entry_id = ? AND claimed_by = ?", date, nodeId, entryIds);
+    }
+
+    // Одна пачка addBatch на все подтверждения: отправители копят их и сбрасывают разом
+    private void updateOutbox(String method, String sql, LocalDate date, String nodeId, List<Integer> entryIds) {
+        if (entryIds.isEmpty()) {
+            return;
+        }
+        try (Connection conn = getConnection(method);
+             PreparedStatement pstmt = conn.prepareStatement(sql)) {
+            for (Integer entryId : entryIds) {
+                pstmt.setDate(1, Date.valueOf(date));
+                pstmt.setInt(2, entryId);
+                pstmt.setString(3, nodeId);
+                pstmt.addBatch();
+            }
+            pstmt.executeBatch();
+
+        } catch (SQLException e) {
+            LOGGER.log(Level.SEVERE, "Failed to update " + entryIds.size() + " outbox rows for " + date, e);
+        }
+    }
+
+    // Сводка по рассылке дня одним GROUP BY по первичному ключу
+    public OutboxStats getOutboxStats(LocalDate date) {
+        String sql = "SELECT status, COUNT(*) AS cnt FROM notification_outbox WHERE run_date = ? GROUP BY status";
+        Map<String, Integer> counts = new HashMap<>();
+
+        try (Connection conn = getConnection("getOutboxStats");
+             PreparedStatement pstmt = conn.prepareStatement(sql)) {
+            pstmt.setDate(1, Date.valueOf(date));
+            try (ResultSet rs = pstmt.executeQuery()) {
+                while (rs.next()) {
+                    counts.put(rs.getString("status"), rs.getInt("cnt"));
+                }
+            }
+
+        } catch (SQLException e) {
+            LOGGER.log(Level.SEVERE, "Failed to read outbox stats for " + date, e);
+        }
+
+        return new OutboxStats(counts.getOrDefault("pending", 0), counts.getOrDefault("claimed", 0),
+                counts.getOrDefault("delivered", 0), counts.getOrDefault("dead", 0));
+    }
+}
@@ -0,0 +1,24 @@
+import java.nio.file.Path;
+
+// Встроенная база H2 в файле рядом с ботом - для одного узла без отдельного PostgreSQL:
+// запросы выполняются в том же процессе, без сетевого обмена. Схема и запросы те же, что у DatabaseManager,
+// H2 работает в режиме совместимости с PostgreSQL. Импорт идёт пачками addBatch вместо COPY
+public class EmbeddedBirthdayRepository extends DatabaseManager {
+    private static final String URL_OPTIONS = ";MODE=PostgreSQL";
+
+    private final Path file;
+
+    // file - путь без расширения; H2 создаст рядом <file>.mv.db
+    public EmbeddedBirthdayRepository(Path file) {
+        this.file = file;
+    }
+
+    public EmbeddedBirthdayRepository open() {
+        initialize(jdbcUrl(file), "sa", "");
+        return this;
+    }
+
+    static String jdbcUrl(Path file) {
+        return "jdbc:h2:file:" + file.toAbsolutePath() + URL_OPTIONS;
+    }
+}
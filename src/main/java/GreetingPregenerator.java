@@ -0,0 +1,83 @@
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Semaphore;
+import java.util.function.BiFunction;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+// Заранее генерирует поздравления моделью на дни рождения указанной даты и складывает их в БД,
+// чтобы утренняя рассылка не ждала модель. Что не успело сгенерироваться, рассылка заменит шаблоном
+public class GreetingPregenerator {
+    private static final Logger LOGGER = Logger.getLogger(GreetingPregenerator.class.getName());
+
+    // меньше лимита RuGPT3Generator: запросам пользователей тоже должно хватать места
+    static final int DEFAULT_CONCURRENCY = 2;
+
+    private final BirthdayRepository database;
+    private final BiFunction<String, String, CompletableFuture<String>> generator;
+    private final String apiToken;
+    private final int concurrency;
+
+    public GreetingPregenerator(BirthdayRepository database, String apiToken) {
+        this(database, apiToken, DEFAULT_CONCURRENCY, RuGPT3Generator::requestGreetingAsync);
+    }
+
+    GreetingPregenerator(BirthdayRepository database, String apiToken, int concurrency,
+                         BiFunction<String, String, CompletableFuture<String>> generator) {
+        this.database = database;
+        this.apiToken = apiToken;
+        this.concurrency = concurrency;
+        this.generator = generator;
+    }
+
+    // Возвращает, сколько поздравлений удалось заготовить. Старые заготовки удаляет BirthdayScheduler:
+    // только он знает, какие даты ещё идут в поясах чатов
+    public int pregenerate(LocalDate date) throws InterruptedException {
+        List<BirthdayNotification> birthdays = database.getNotificationsOn(date);
+        Map<Integer, String> existing = database.getGreetings(date);
+
+        Semaphore permits = new Semaphore(concurrency);
+        List<CompletableFuture<Boolean>> pending = new ArrayList<>();
+        for (BirthdayNotification birthday : birthdays) {
+            if (birthday.getEntryId() == 0 || existing.containsKey(birthday.getEntryId())) {
+                continue;
+            }
+
+            permits.acquire();
+            CompletableFuture<Boolean> saved;
+            try {
+                saved = generator.apply(apiToken, birthday.getPersonName())
+                        .thenApply(greeting -> {
+                            if (greeting == null || greeting.isEmpty()) {
+                                return false;
+                            }
+                            database.saveGreeting(birthday.getEntryId(), date, greeting);
+                            return true;
+                        })
+                        .exceptionally(e -> {
+                            LOGGER.log(Level.WARNING, "Failed to pregenerate greeting for entry "
+                                    + birthday.getEntryId(), e);
+                            return false;
+                        });
+            } catch (RuntimeException e) {
+                permits.release();
+                throw e;
+            }
+            saved.whenComplete((ignored, error) -> permits.release());
+            pending.add(saved);
+        }
+
+        int generated = 0;
+        for (CompletableFuture<Boolean> saved : pending) {
+            if (saved.join()) {
+                generated++;
+            }
+        }
+
+        LOGGER.info("Pregenerated " + generated + " of " + birthdays.size() + " greetings for " + date);
+        return generated;
+    }
+}
@@ -0,0 +1,436 @@
+import java.time.LocalDate;
+import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.IntConsumer;
+import java.util.function.LongSupplier;
+
+// Хранилище целиком в памяти процесса, без сохранения между запусками - для тестов и бенчмарков.
+// Записи чата лежат в ConcurrentSkipListMap по id (списки и страницы идут в том же порядке, что ORDER BY id),
+// выборки по датам идут через BirthdayCalendarIndex. Поведение повторяет DatabaseManager,
+// это проверяет общий контрактный тест AbstractBirthdayRepositoryTest
+public class InMemoryBirthdayRepository implements BirthdayRepository {
+    private static final int IMPORT_PROGRESS_STEP = 5_000;
+    // как у DatabaseManager: через сколько захват строки outbox считается брошенным
+    private static final long OUTBOX_CLAIM_LEASE_NANOS = TimeUnit.MINUTES.toNanos(10);
+    private static final int OUTBOX_RETENTION_DAYS = 7;
+
+    private final AtomicInteger ids = new AtomicInteger();
+    // telegram_id -> (id -> запись)
+    private final ConcurrentMap<Long, ConcurrentSkipListMap<Integer, BirthdayUser>> chats = new ConcurrentHashMap<>();
+    private final BirthdayCalendarIndex calendar = new BirthdayCalendarIndex();
+    private final ConcurrentMap<Long, String> timeZones = new ConcurrentHashMap<>();
+    // дата -> (id записи -> текст)
+    private final ConcurrentMap<LocalDate, ConcurrentMap<Integer, String>> greetings = new ConcurrentHashMap<>();
+    // строки outbox по датам; все операции с ним - под его монитором
+    private final Map<LocalDate, Map<Integer, OutboxRow>> outbox = new HashMap<>();
+    // время для аренды захвата outbox; в тестах подменяется
+    private final LongSupplier clock;
+
+    public InMemoryBirthdayRepository() {
+        this(System::nanoTime);
+    }
+
+    InMemoryBirthdayRepository(LongSupplier clock) {
+        this.clock = clock;
+    }
+
+    @Override
+    public int addUser(long telegramId, String name, LocalDate birthday) {
+        ConcurrentSkipListMap<Integer, BirthdayUser> chat = chat(telegramId);
+        synchronized (chat) {
+            int id = ids.incrementAndGet();
+            chat.put(id, new BirthdayUser(id, telegramId, name, birthday));
+            calendar.put(id, telegramId, name, birthday);
+            return id;
+        }
+    }
+
+    @Override
+    public boolean updateName(long telegramId, String name) {
+        ConcurrentSkipListMap<Integer, BirthdayUser> chat = chats.get(telegramId);
+        if (chat == null) {
+            return false;
+        }
+        synchronized (chat) {
+            chat.replaceAll((id, user) -> new BirthdayUser(id, telegramId, name, user.getBirthday()));
+            calendar.renameChat(telegramId, name);
+            return !chat.isEmpty();
+        }
+    }
+
+    @Override
+    public boolean updateBirthday(long telegramId, LocalDate birthday) {
+        ConcurrentSkipListMap<Integer, BirthdayUser> chat = chats.get(telegramId);
+        if (chat == null) {
+            return false;
+        }
+        synchronized (chat) {
+            chat.replaceAll((id, user) -> new BirthdayUser(id, telegramId, user.getName(), birthday));
+            calendar.moveChat(telegramId, birthday);
+            return !chat.isEmpty();
+        }
+    }
+
+    @Override
+    public boolean deleteUser(long telegramId, int id) {
+        ConcurrentSkipListMap<Integer, BirthdayUser> chat = chats.get(telegramId);
+        if (chat == null) {
+            return false;
+        }
+        synchronized (chat) {
+            if (chat.remove(id) == null) {
+                return false;
+            }
+            calendar.remove(id);
+        }
+        // как ON DELETE CASCADE в базе
+        for (ConcurrentMap<Integer, String> byEntry : greetings.values()) {
+            byEntry.remove(id);
+        }
+        synchronized (outbox) {
+            for (Map<Integer, OutboxRow> rows : outbox.values()) {
+                rows.remove(id);
+            }
+        }
+        return true;
+    }
+
+    @Override
+    public int getUsersNum(long telegramId) {
+        ConcurrentSkipListMap<Integer, BirthdayUser> chat = chats.get(telegramId);
+        return chat != null ? chat.size() : 0;
+    }
+
+    @Override
+    public List<BirthdayUser> getAllUsers(long telegramId) {
+        List<BirthdayUser> users = new ArrayList<>();
+        ConcurrentSkipListMap<Integer, BirthdayUser> chat = chats.get(telegramId);
+        if (chat != null) {
+            int ordinal = 0;
+            for (BirthdayUser user : chat.values()) {
+                BirthdayUser copy = copyOf(user);
+                copy.setOrdinal(++ordinal);
+                users.add(copy);
+            }
+        }
+        return users;
+    }
+
+    // Как и в базе, соседние страницы определяются по наличию записей, а не по курсору
+    @Override
+    public UserPage getUsersPageAfter(long telegramId, int afterId, int limit) {
+        NavigableMap<Integer, BirthdayUser> chat = chatOrEmpty(telegramId);
+        List<BirthdayUser> users = take(chat.tailMap(afterId, false), limit + 1);
+        boolean hasNext = users.size() > limit;
+        if (hasNext) {
+            users.remove(limit);
+        }
+        return new UserPage(users, chat.floorKey(afterId) != null, hasNext);
+    }
+
+    @Override
+    public UserPage getUsersPageBefore(long telegramId, int beforeId, int limit) {
+        NavigableMap<Integer, BirthdayUser> chat = chatOrEmpty(telegramId);
+        List<BirthdayUser> users = take(chat.headMap(beforeId, false).descendingMap(), limit + 1);
+        boolean hasPrevious = users.size() > limit;
+        if (hasPrevious) {
+            users.remove(limit);
+        }
+        Collections.reverse(users);
+        return new UserPage(users, hasPrevious, chat.ceilingKey(beforeId) != null);
+    }
+
+    @Override
+    public List<BirthdayUser> getAllRecUsers(long telegramId) {
+        LocalDate now = LocalDate.now();
+        return calendar.findInWindow(telegramId, DatabaseManager.toMonthDay(now.minusMonths(1)),
+                DatabaseManager.lastMonthDayOf(now));
+    }
+
+    @Override
+    public List<BirthdayUser> getAllFutUsers(long telegramId) {
+        LocalDate now = LocalDate.now();
+        return calendar.findInWindow(telegramId, DatabaseManager.toMonthDay(now),
+                DatabaseManager.lastMonthDayOf(now.plusMonths(1)));
+    }
+
+    @Override
+    public List<BirthdayUser> getAllUsersOnMonth(int month, long chatID) {
+        List<BirthdayUser> users = new ArrayList<>();
+        for (BirthdayUser user : chatOrEmpty(chatID).values()) {
+            if (user.getBirthday().getMonthValue() == month) {
+                users.add(copyOf(user));
+            }
+        }
+        // ORDER BY birth_mmdd, name
+        users.sort(Comparator.comparingInt((BirthdayUser user) -> DatabaseManager.toMonthDay(user.getBirthday()))
+                .thenComparing(BirthdayUser::getName));
+        return users;
+    }
+
+    // Как и в базе, импорт всё или ничего: файл сначала разбирается целиком в готовые записи,
+    // и только потом они вставляются одним шагом под монитором чата. Ошибка разбора не оставляет
+    // ни одной записи, а другие изменения этого чата не вклиниваются в середину импорта.
+    // Чтения без блокировки, как и при updateName, могут застать вставку в процессе
+    @Override
+    public ImportResult importUsers(long telegramId, Iterator<BirthdayEntry> entries, IntConsumer progress) {
+        long start = System.nanoTime();
+        List<BirthdayEntry> parsed = new ArrayList<>();
+        while (entries.hasNext()) {
+            parsed.add(entries.next());
+            if (parsed.size() % IMPORT_PROGRESS_STEP == 0) {
+                progress.accept(parsed.size());
+            }
+        }
+
+        ConcurrentSkipListMap<Integer, BirthdayUser> chat = chat(telegramId);
+        synchronized (chat) {
+            for (BirthdayEntry entry : parsed) {
+                int id = ids.incrementAndGet();
+                chat.put(id, new BirthdayUser(id, telegramId, entry.getPersonName(), entry.getBirthday()));
+                calendar.put(id, telegramId, entry.getPersonName(), entry.getBirthday());
+            }
+        }
+        return new ImportResult(parsed.size(), System.nanoTime() - start);
+    }
+
+    @Override
+    public boolean setChatTimeZone(long telegramId, ZoneId zone) {
+        timeZones.put(telegramId, zone.getId());
+        return true;
+    }
+
+    @Override
+    public ZoneId getChatTimeZone(long telegramId) {
+        String zone = timeZones.get(telegramId);
+        return zone != null ? ZoneId.of(zone) : null;
+    }
+
+    @Override
+    public Set<String> getChatTimeZones() {
+        return new HashSet<>(timeZones.values());
+    }
+
+    @Override
+    public List<BirthdayNotification> getNotificationsOn(LocalDate date) {
+        List<BirthdayNotification> notifications = new ArrayList<>();
+        for (BirthdayUser user : calendar.findOn(date)) {
+            notifications.add(new BirthdayNotification(user.getId(), user.getTelegramId(), user.getName()));
+        }
+        return notifications;
+    }
+
+    // Заготовка для удалённой записи не сохраняется - как при нарушении внешнего ключа в базе
+    @Override
+    public void saveGreeting(int entryId, LocalDate date, String text) {
+        if (!entryExists(entryId)) {
+            return;
+        }
+        greetings.computeIfAbsent(date, key -> new ConcurrentHashMap<>()).putIfAbsent(entryId, text);
+    }
+
+    @Override
+    public Map<Integer, String> getGreetings(LocalDate date) {
+        ConcurrentMap<Integer, String> byEntry = greetings.get(date);
+        return byEntry != null ? new HashMap<>(byEntry) : new HashMap<>();
+    }
+
+    @Override
+    public int deleteGreetingsBefore(LocalDate date) {
+        int deleted = 0;
+        for (Iterator<Map.Entry<LocalDate, ConcurrentMap<Integer, String>>> it = greetings.entrySet().iterator();
+             it.hasNext(); ) {
+            Map.Entry<LocalDate, ConcurrentMap<Integer, String>> day = it.next();
+            if (day.getKey().isBefore(date)) {
+                deleted += day.getValue().size();
+                it.remove();
+            }
+        }
+        return deleted;
+    }
+
+    @Override
+    public int fillOutbox(LocalDate date, Collection<String> zones, String defaultZone) {
+        if (zones.isEmpty()) {
+            return 0;
+        }
+        List<BirthdayNotification> due = new ArrayList<>();
+        for (BirthdayNotification n : getNotificationsOn(date)) {
+            if (zones.contains(timeZones.getOrDefault(n.getNotifyChatId(), defaultZone))) {
+                due.add(n);
+            }
+        }
+
+        synchronized (outbox) {
+            outbox.keySet().removeIf(day -> day.isBefore(date.minusDays(OUTBOX_RETENTION_DAYS)));
+            Map<Integer, OutboxRow> rows = outbox.computeIfAbsent(date, key -> new TreeMap<>());
+            int added = 0;
+            for (BirthdayNotification n : due) {
+                if (rows.putIfAbsent(n.getEntryId(), new OutboxRow(n)) == null) {
+                    added++;
+                }
+            }
+            return added;
+        }
+    }
+
+    // Истёкший захват, как и в DatabaseManager, засчитывается неудачной попыткой
+    @Override
+    public List<BirthdayNotification> claimOutboxBatch(LocalDate date, String nodeId, int limit) {
+        long now = clock.getAsLong();
+        synchronized (outbox) {
+            Map<Integer, OutboxRow> rows = outbox.get(date);
+            if (rows == null) {
+                return new ArrayList<>();
+            }
+            List<OutboxRow> claimable = new ArrayList<>();
+            for (OutboxRow row : rows.values()) {
+                if (row.status == OutboxStatus.CLAIMED && now - row.claimedAt > OUTBOX_CLAIM_LEASE_NANOS) {
+                    row.attempts++;
+                    if (row.attempts >= DatabaseManager.OUTBOX_MAX_ATTEMPTS) {
+                        row.status = OutboxStatus.DEAD;
+                        row.claimedBy = null;
+                        continue;
+                    }
+                    claimable.add(row);
+                } else if (row.status == OutboxStatus.PENDING) {
+                    claimable.add(row);
+                }
+            }
+            // ORDER BY telegram_id, entry_id
+            claimable.sort(Comparator.comparingLong((OutboxRow row) -> row.notification.getNotifyChatId())
+                    .thenComparingInt(row -> row.notification.getEntryId()));
+
+            List<BirthdayNotification> batch = new ArrayList<>();
+            for (OutboxRow row : claimable.subList(0, Math.min(limit, claimable.size()))) {
+                row.status = OutboxStatus.CLAIMED;
+                row.claimedBy = nodeId;
+                row.claimedAt = now;
+                batch.add(row.notification);
+            }
+            return batch;
+        }
+    }
+
+    @Override
+    public void markOutboxDelivered(LocalDate date, String nodeId, List<Integer> entryIds) {
+        synchronized (outbox) {
+            for (OutboxRow row : outboxRows(date, nodeId, entryIds)) {
+                row.status = OutboxStatus.DELIVERED;
+            }
+        }
+    }
+
+    @Override
+    public void markOutboxFailed(LocalDate date, String nodeId, List<Integer> entryIds) {
+        synchronized (outbox) {
+            for (OutboxRow row : outboxRows(date, nodeId, entryIds)) {
+                row.attempts++;
+                row.claimedBy = null;
+                row.status = row.attempts >= DatabaseManager.OUTBOX_MAX_ATTEMPTS
+                        ? OutboxStatus.DEAD
+                        : OutboxStatus.PENDING;
+            }
+        }
+    }
+
+    @Override
+    public OutboxStats getOutboxStats(LocalDate date) {
+        int[] counts = new int[OutboxStatus.values().length];
+        synchronized (outbox) {
+            Map<Integer, OutboxRow> rows = outbox.get(date);
+            if (rows != null) {
+                for (OutboxRow row : rows.values()) {
+                    counts[row.status.ordinal()]++;
+                }
+            }
+        }
+        return new OutboxStats(counts[OutboxStatus.PENDING.ordinal()], counts[OutboxStatus.CLAIMED.ordinal()],
+                counts[OutboxStatus.DELIVERED.ordinal()], counts[OutboxStatus.DEAD.ordinal()]);
+    }
+
+    @Override
+    public void shutdown() {
+    }
+
+    private ConcurrentSkipListMap<Integer, BirthdayUser> chat(long telegramId) {
+        return chats.computeIfAbsent(telegramId, key -> new ConcurrentSkipListMap<>());
+    }
+
+    private NavigableMap<Integer, BirthdayUser> chatOrEmpty(long telegramId) {
+        ConcurrentSkipListMap<Integer, BirthdayUser> chat = chats.get(telegramId);
+        return chat != null ? chat : Collections.emptyNavigableMap();
+    }
+
+    private boolean entryExists(int entryId) {
+        for (ConcurrentSkipListMap<Integer, BirthdayUser> chat : chats.values()) {
+            if (chat.containsKey(entryId)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    // Строки из entryIds, которые сейчас числятся за nodeId (AND claimed_by = ?)
+    private List<OutboxRow> outboxRows(LocalDate date, String nodeId, List<Integer> entryIds) {
+        List<OutboxRow> found = new ArrayList<>();
+        Map<Integer, OutboxRow> rows = outbox.get(date);
+        if (rows != null) {
+            for (Integer entryId : entryIds) {
+                OutboxRow row = rows.get(entryId);
+                if (row != null && nodeId.equals(row.claimedBy)) {
+                    found.add(row);
+                }
+            }
+        }
+        return found;
+    }
+
+    private static List<BirthdayUser> take(NavigableMap<Integer, BirthdayUser> users, int limit) {
+        List<BirthdayUser> result = new ArrayList<>(limit);
+        for (BirthdayUser user : users.values()) {
+            if (result.size() == limit) {
+                break;
+            }
+            result.add(copyOf(user));
+        }
+        return result;
+    }
+
+    // Наружу отдаются копии: BirthdayUser изменяемый, а хранилище не должно меняться в обход методов
+    private static BirthdayUser copyOf(BirthdayUser user) {
+        return new BirthdayUser(user.getId(), user.getTelegramId(), user.getName(), user.getBirthday());
+    }
+
+    private enum OutboxStatus {
+        PENDING, CLAIMED, DELIVERED, DEAD
+    }
+
+    private static final class OutboxRow {
+        private final BirthdayNotification notification;
+        private OutboxStatus status = OutboxStatus.PENDING;
+        private int attempts;
+        private String claimedBy;
+        private long claimedAt;
+
+        OutboxRow(BirthdayNotification notification) {
+            this.notification = notification;
+        }
+    }
+}
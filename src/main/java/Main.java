@@ -1,12 +1,41 @@
+import java.io.IOException;
+
 public class Main {
-    public static void main(String[] args) {
+    // порт эндпоинта /metrics; METRICS_PORT=0 - отключить
+    private static final int DEFAULT_METRICS_PORT = 9404;
+    private static final int DEFAULT_WEBHOOK_PORT = 8443;
+
+    public static void main(String[] args) throws IOException {
         String token = args[0];
         String url = args[1];
         String username = args[2];
         String password = args[3];
         String apiToken = args[4];
-        Bot.start(token, url, username, password, apiToken);
+
+        // WEBHOOK_URL задан - апдейты принимаются webhook'ом, иначе long polling
+        String webhookUrl = System.getenv("WEBHOOK_URL");
+        if (webhookUrl != null && !webhookUrl.isEmpty()) {
+            String secret = System.getenv("WEBHOOK_SECRET");
+            if (secret == null || secret.isEmpty()) {
+                throw new IllegalArgumentException("WEBHOOK_SECRET is required in webhook mode");
+            }
+            String webhookPort = System.getenv("WEBHOOK_PORT");
+            int port = webhookPort != null ? Integer.parseInt(webhookPort) : DEFAULT_WEBHOOK_PORT;
+            Bot.startWebhook(token, url, username, password, apiToken, webhookUrl, port, secret);
+        } else {
+            Bot.start(token, url, username, password, apiToken);
+        }
+
+        String metricsPort = System.getenv("METRICS_PORT");
+        int port = metricsPort != null ? Integer.parseInt(metricsPort) : DEFAULT_METRICS_PORT;
+        if (port > 0) {
+            try {
+                new MetricsServer(port, MetricsRegistry.getDefault()).start();
+            } catch (IOException e) {
+                System.err.println("Не удалось запустить /metrics на порту " + port + ": " + e.getMessage());
+            }
+        }
 
         System.out.println("Бот запущен...");
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,152 @@
+import java.io.IOException;
+import java.io.StringWriter;
+import java.io.Writer;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.DoubleSupplier;
+import java.util.function.LongSupplier;
+
+// Реестр метрик приложения с выгрузкой в текстовом формате Prometheus.
+// Метрика - имя плюс набор меток; повторный запрос с теми же метками возвращает тот же объект.
+// Задержки хранятся в LatencyHistogram и выгружаются как summary с квантилями в секундах
+public class MetricsRegistry {
+    private static final MetricsRegistry DEFAULT = new MetricsRegistry();
+    private static final double[] QUANTILES = {0.5, 0.9, 0.99, 0.999};
+
+    private final ConcurrentMap<String, Family> families = new ConcurrentSkipListMap<>();
+
+    public static MetricsRegistry getDefault() {
+        return DEFAULT;
+    }
+
+    // labels - пары "имя", "значение"
+    public LatencyHistogram latency(String name, String help, String... labels) {
+        return (LatencyHistogram) family(name, help, "summary").series
+                .computeIfAbsent(formatLabels(labels), key -> new LatencyHistogram());
+    }
+
+    public LongAdder counter(String name, String help, String... labels) {
+        return (LongAdder) family(name, help, "counter").series
+                .computeIfAbsent(formatLabels(labels), key -> new LongAdder());
+    }
+
+    // Счётчик, который уже ведётся где-то ещё (например, в CircuitBreaker): значение читается при выгрузке
+    public void counter(String name, String help, LongSupplier value, String... labels) {
+        family(name, help, "counter").series.put(formatLabels(labels), value);
+    }
+
+    // Повторная регистрация с теми же метками заменяет источник значения
+    public void gauge(String name, String help, DoubleSupplier value, String... labels) {
+        family(name, help, "gauge").series.put(formatLabels(labels), value);
+    }
+
+    private Family family(String name, String help, String type) {
+        Family family = families.computeIfAbsent(name, key -> new Family(help, type));
+        if (!family.type.equals(type)) {
+            throw new IllegalArgumentException("Metric " + name + " is already registered as " + family.type);
+        }
+        return family;
+    }
+
+    public String scrape() {
+        StringWriter out = new StringWriter();
+        try {
+            writePrometheus(out);
+        } catch (IOException e) {
+            throw new IllegalStateException(e);
+        }
+        return out.toString();
+    }
+
+    public void writePrometheus(Writer out) throws IOException {
+        for (Map.Entry<String, Family> entry : families.entrySet()) {
+            String name = entry.getKey();
+            Family family = entry.getValue();
+            if (family.series.isEmpty()) {
+                continue;
+            }
+            out.write("# HELP " + name + " " + family.help + "\n");
+            out.write("# TYPE " + name + " " + family.type + "\n");
+
+            for (Map.Entry<String, Object> series : family.series.entrySet()) {
+                String labels = series.getKey();
+                Object metric = series.getValue();
+                if (metric instanceof LatencyHistogram) {
+                    writeSummary(out, name, labels, (LatencyHistogram) metric);
+                } else {
+                    writeSample(out, name, labels, valueOf(metric));
+                }
+            }
+        }
+    }
+
+    private static void writeSummary(Writer out, String name, String labels, LatencyHistogram histogram)
+            throws IOException {
+        for (double quantile : QUANTILES) {
+            String quantileLabel = "quantile=\"" + format(quantile) + "\"";
+            String withQuantile = labels.isEmpty() ? quantileLabel : labels + "," + quantileLabel;
+            writeSample(out, name, withQuantile, histogram.getPercentileNanos(quantile * 100) / 1e9);
+        }
+        writeSample(out, name + "_sum", labels, histogram.getSumNanos() / 1e9);
+        writeSample(out, name + "_count", labels, histogram.getCount());
+    }
+
+    private static void writeSample(Writer out, String name, String labels, double value) throws IOException {
+        out.write(name);
+        if (!labels.isEmpty()) {
+            out.write("{" + labels + "}");
+        }
+        out.write(" " + format(value) + "\n");
+    }
+
+    private static double valueOf(Object metric) {
+        if (metric instanceof LongAdder) {
+            return ((LongAdder) metric).sum();
+        }
+        if (metric instanceof LongSupplier) {
+            return ((LongSupplier) metric).getAsLong();
+        }
+        return ((DoubleSupplier) metric).getAsDouble();
+    }
+
+    private static String format(double value) {
+        if (Double.isNaN(value)) {
+            return "NaN";
+        }
+        if (value == Math.rint(value) && Math.abs(value) < 1e15) {
+            return Long.toString((long) value);
+        }
+        return String.format(Locale.ROOT, "%s", value);
+    }
+
+    static String formatLabels(String... labels) {
+        if (labels.length % 2 != 0) {
+            throw new IllegalArgumentException("Labels must be name/value pairs");
+        }
+        StringBuilder text = new StringBuilder();
+        for (int i = 0; i < labels.length; i += 2) {
+            if (i > 0) {
+                text.append(',');
+            }
+            text.append(labels[i]).append("=\"")
+                    .append(labels[i + 1].replace("\\", "\\\\").replace("\"", "\\\"").replace("\n", "\\n"))
+                    .append('"');
+        }
+        return text.toString();
+    }
+
+    private static final class Family {
+        private final String help;
+        private final String type;
+        // серии по строке меток; отсортированы, чтобы выгрузка была стабильной
+        private final ConcurrentMap<String, Object> series = new ConcurrentSkipListMap<>();
+
+        Family(String help, String type) {
+            this.help = help;
+            this.type = type;
+        }
+    }
+}
@@ -0,0 +1,295 @@
+import com.pengrad.telegrambot.TelegramBot;
+import com.pengrad.telegrambot.request.SendMessage;
+import com.pengrad.telegrambot.response.SendResponse;
+
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Consumer;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+// Рассылка уведомлений пулом воркеров с учётом лимитов Telegram:
+// ~30 сообщений в секунду на бота и не больше 1 сообщения в секунду в один чат
+public class NotificationDispatcher {
+    private static final Logger LOGGER = Logger.getLogger(NotificationDispatcher.class.getName());
+
+    public static final int DEFAULT_WORKERS = 8;
+    public static final int TELEGRAM_MESSAGES_PER_SECOND = 30;
+
+    private static final long PER_CHAT_INTERVAL_NANOS = TimeUnit.SECONDS.toNanos(1);
+    private static final int QUEUE_CAPACITY = 1_000;
+    private static final int MAX_ATTEMPTS = 5;
+    private static final long DEFAULT_RETRY_BACKOFF_MILLIS = 500;
+    private static final long MAX_RETRY_BACKOFF_MILLIS = 30_000;
+    private static final int TOO_MANY_REQUESTS = 429;
+
+    private static final MetricsRegistry METRICS = MetricsRegistry.getDefault();
+    private static final LatencyHistogram SEND_LATENCY = METRICS.latency("telegram_send_duration_seconds",
+            "Duration of one sendMessage call for notifications");
+    private static final LongAdder RATE_LIMITED = METRICS.counter("telegram_rate_limited_total",
+            "Notification sends rejected by Telegram with 429");
+    private static final LongAdder RETRIES = METRICS.counter("telegram_send_retries_total",
+            "Notification send attempts that were retried");
+    private static final LongAdder SENT = METRICS.counter("telegram_notifications_total",
+            "Notifications by final outcome", "result", "sent");
+    private static final LongAdder FAILED = METRICS.counter("telegram_notifications_total",
+            "Notifications by final outcome", "result", "failed");
+
+    private final TelegramBot bot;
+    private final int workers;
+    private final long retryBackoffMillis;
+    private final TokenBucket globalLimit;
+    private final ExecutorService executor;
+    // когда каждому чату можно будет отправить следующее сообщение
+    private final Map<Long, Long> nextChatSlot = new ConcurrentHashMap<>();
+    // после 429 без привязки к чату притормаживаем всех воркеров
+    private final AtomicLong pausedUntilNanos = new AtomicLong();
+
+    public NotificationDispatcher(TelegramBot bot) {
+        this(bot, DEFAULT_WORKERS, TELEGRAM_MESSAGES_PER_SECOND);
+    }
+
+    public NotificationDispatcher(TelegramBot bot, int workers, int messagesPerSecond) {
+        this(bot, workers, messagesPerSecond, DEFAULT_RETRY_BACKOFF_MILLIS);
+    }
+
+    NotificationDispatcher(TelegramBot bot, int workers, int messagesPerSecond, long retryBackoffMillis) {
+        this.bot = bot;
+        this.workers = workers;
+        this.retryBackoffMillis = retryBackoffMillis;
+        this.globalLimit = new TokenBucket(messagesPerSecond, messagesPerSecond);
+        this.executor = Executors.newFixedThreadPool(workers);
+    }
+
+    public Run startRun() {
+        Run run = new Run();
+        for (int i = 0; i < workers; i++) {
+            executor.execute(run::work);
+        }
+        return run;
+    }
+
+    public void shutdown() {
+        executor.shutdown();
+        try {
+            if (!executor.awaitTermination(5, TimeUnit.SECONDS)) {
+                executor.shutdownNow();
+            }
+        } catch (InterruptedException e) {
+            executor.shutdownNow();
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private boolean send(PendingMessage message, Run run) throws InterruptedException {
+        for (int attempt = 1; attempt <= MAX_ATTEMPTS; attempt++) {
+            awaitSlot(message.chatId);
+
+            long backoffMillis = Math.min(MAX_RETRY_BACKOFF_MILLIS, retryBackoffMillis << (attempt - 1));
+            try {
+                long start = System.nanoTime();
+                SendResponse response = bot.execute(new SendMessage(message.chatId, message.text));
+                SEND_LATENCY.recordSince(start);
+                if (response == null) {
+                    LOGGER.warning("Telegram returned no response for notification to chat " + message.chatId);
+                    return false;
+                }
+                if (response.isOk()) {
+                    return true;
+                }
+                if (response.errorCode() != TOO_MANY_REQUESTS) {
+                    LOGGER.warning("Telegram rejected notification for chat " + message.chatId
+                            + ": " + response.errorCode() + " " + response.description());
+                    return false;
+                }
+
+                run.rateLimited.incrementAndGet();
+                RATE_LIMITED.increment();
+                Integer retryAfter = response.parameters() != null ? response.parameters().retryAfter() : null;
+                if (retryAfter != null) {
+                    backoffMillis = Math.max(backoffMillis, TimeUnit.SECONDS.toMillis(retryAfter));
+                    pausedUntilNanos.accumulateAndGet(
+                            System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(backoffMillis), Math::max);
+                }
+            } catch (RuntimeException e) {
+                LOGGER.log(Level.WARNING, "Failed to send notification to chat " + message.chatId, e);
+            }
+
+            if (attempt < MAX_ATTEMPTS) {
+                run.retried.incrementAndGet();
+                RETRIES.increment();
+                TimeUnit.MILLISECONDS.sleep(backoffMillis);
+            }
+        }
+        return false;
+    }
+
+    private void awaitSlot(long chatId) throws InterruptedException {
+        long pauseNanos = pausedUntilNanos.get() - System.nanoTime();
+        if (pauseNanos > 0) {
+            TimeUnit.NANOSECONDS.sleep(pauseNanos);
+        }
+
+        long now = System.nanoTime();
+        long slot = nextChatSlot.merge(chatId, now,
+                (next, ignored) -> Math.max(next, now - PER_CHAT_INTERVAL_NANOS) + PER_CHAT_INTERVAL_NANOS);
+        long waitNanos = slot - now;
+        if (waitNanos > 0) {
+            TimeUnit.NANOSECONDS.sleep(waitNanos);
+        }
+
+        // общий токен - последним, прямо перед отправкой: взятый до ожидания слота чата он тратился бы
+        // впустую, а отправки после ожидания сбивались бы в пачки быстрее общего лимита
+        globalLimit.acquire();
+    }
+
+    // Один прогон рассылки: источник кладёт сообщения через submit, finish дожидается отправки всех
+    public final class Run {
+        private final BlockingQueue<PendingMessage> queue = new ArrayBlockingQueue<>(QUEUE_CAPACITY);
+        private final CountDownLatch finished = new CountDownLatch(workers);
+        private final long startNanos = System.nanoTime();
+        private volatile boolean closed;
+
+        private final AtomicInteger submitted = new AtomicInteger();
+        private final AtomicInteger sent = new AtomicInteger();
+        private final AtomicInteger failed = new AtomicInteger();
+        private final AtomicInteger retried = new AtomicInteger();
+        private final AtomicInteger rateLimited = new AtomicInteger();
+
+        // Блокируется, пока в очереди нет места: так чтение из БД не обгоняет отправку
+        public void submit(long chatId, String text) {
+            submit(chatId, text, null);
+        }
+
+        // onDone получает итог отправки (true - доставлено) в потоке воркера, после всех повторов
+        public void submit(long chatId, String text, Consumer<Boolean> onDone) {
+            try {
+                queue.put(new PendingMessage(chatId, text, onDone));
+                submitted.incrementAndGet();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IllegalStateException("Notification dispatch interrupted", e);
+            }
+        }
+
+        public Stats finish() {
+            closed = true;
+            try {
+                finished.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            nextChatSlot.clear();
+            return new Stats(submitted.get(), sent.get(), failed.get(), retried.get(), rateLimited.get(),
+                    System.nanoTime() - startNanos);
+        }
+
+        private void work() {
+            try {
+                while (!closed || !queue.isEmpty()) {
+                    PendingMessage message = queue.poll(100, TimeUnit.MILLISECONDS);
+                    if (message == null) {
+                        continue;
+                    }
+                    boolean delivered = send(message, this);
+                    if (delivered) {
+                        sent.incrementAndGet();
+                        SENT.increment();
+                    } else {
+                        failed.incrementAndGet();
+                        FAILED.increment();
+                    }
+                    message.complete(delivered);
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            } finally {
+                finished.countDown();
+            }
+        }
+    }
+
+    public static final class Stats {
+        private final int submitted;
+        private final int sent;
+        private final int failed;
+        private final int retried;
+        private final int rateLimited;
+        private final long elapsedNanos;
+
+        Stats(int submitted, int sent, int failed, int retried, int rateLimited, long elapsedNanos) {
+            this.submitted = submitted;
+            this.sent = sent;
+            this.failed = failed;
+            this.retried = retried;
+            this.rateLimited = rateLimited;
+            this.elapsedNanos = elapsedNanos;
+        }
+
+        public int getSubmitted() {
+            return submitted;
+        }
+
+        public int getSent() {
+            return sent;
+        }
+
+        public int getFailed() {
+            return failed;
+        }
+
+        public int getRetried() {
+            return retried;
+        }
+
+        public int getRateLimited() {
+            return rateLimited;
+        }
+
+        public long getElapsedMillis() {
+            return TimeUnit.NANOSECONDS.toMillis(elapsedNanos);
+        }
+
+        public double getMessagesPerSecond() {
+            return elapsedNanos == 0 ? 0 : (sent + failed) * 1e9 / elapsedNanos;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("submitted=%d, sent=%d, failed=%d, retried=%d, 429=%d, elapsed=%d ms, %.1f msg/s",
+                    submitted, sent, failed, retried, rateLimited, getElapsedMillis(), getMessagesPerSecond());
+        }
+    }
+
+    private static final class PendingMessage {
+        private final long chatId;
+        private final String text;
+        private final Consumer<Boolean> onDone;
+
+        PendingMessage(long chatId, String text, Consumer<Boolean> onDone) {
+            this.chatId = chatId;
+            this.text = text;
+            this.onDone = onDone;
+        }
+
+        void complete(boolean delivered) {
+            if (onDone == null) {
+                return;
+            }
+            try {
+                onDone.accept(delivered);
+            } catch (RuntimeException e) {
+                LOGGER.log(Level.WARNING, "Delivery callback failed for chat " + chatId, e);
+            }
+        }
+    }
+}
@@ -0,0 +1,78 @@
+import com.zaxxer.hikari.HikariDataSource;
+
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+// Решает, куда идёт чтение: в пул реплики или в основной.
+// Реплика отстаёт от основной базы, поэтому после записи чата его чтения readYourWritesMillis
+// идут в основной пул - пользователь сразу видит то, что только что добавил
+public class ReadReplicaRouter {
+    private static final Logger LOGGER = Logger.getLogger(ReadReplicaRouter.class.getName());
+    // при таком числе отметок о записи устаревшие вычищаются разом
+    private static final int PRUNE_THRESHOLD = 10_000;
+    // на простаивающей основной базе pg_last_xact_replay_timestamp не двигается - если всё полученное
+    // уже применено, отставания нет
+    private static final String LAG_SQL = "SELECT CASE WHEN NOT pg_is_in_recovery() " +
+            "OR pg_last_wal_receive_lsn() = pg_last_wal_replay_lsn() THEN 0 " +
+            "ELSE EXTRACT(EPOCH FROM now() - pg_last_xact_replay_timestamp()) END AS lag";
+
+    private final HikariDataSource replica;
+    private final long readYourWritesNanos;
+    // telegram_id -> System.nanoTime() последней записи
+    private final ConcurrentMap<Long, Long> lastWrites = new ConcurrentHashMap<>();
+
+    public ReadReplicaRouter(HikariDataSource replica, long readYourWritesMillis) {
+        this.replica = replica;
+        this.readYourWritesNanos = TimeUnit.MILLISECONDS.toNanos(readYourWritesMillis);
+    }
+
+    public HikariDataSource getReplica() {
+        return replica;
+    }
+
+    public void recordWrite(long telegramId) {
+        long now = System.nanoTime();
+        lastWrites.put(telegramId, now);
+        if (lastWrites.size() > PRUNE_THRESHOLD) {
+            lastWrites.values().removeIf(writtenAt -> now - writtenAt >= readYourWritesNanos);
+        }
+    }
+
+    // false - чат недавно писал, и реплика могла ещё не получить его запись
+    public boolean routesToReplica(long telegramId) {
+        Long writtenAt = lastWrites.get(telegramId);
+        if (writtenAt == null) {
+            return true;
+        }
+        if (System.nanoTime() - writtenAt < readYourWritesNanos) {
+            return false;
+        }
+        lastWrites.remove(telegramId, writtenAt);
+        return true;
+    }
+
+    // Отставание реплики в секундах; NaN - если реплика недоступна
+    public double getLagSeconds() {
+        try (Connection conn = replica.getConnection();
+             Statement stmt = conn.createStatement();
+             ResultSet rs = stmt.executeQuery(LAG_SQL)) {
+            return rs.next() ? rs.getDouble("lag") : Double.NaN;
+        } catch (SQLException e) {
+            LOGGER.log(Level.WARNING, "Failed to read replica lag", e);
+            return Double.NaN;
+        }
+    }
+
+    public void close() {
+        if (!replica.isClosed()) {
+            replica.close();
+        }
+    }
+}
@@ -1,99 +1,306 @@
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+
+import java.io.IOException;
+import java.io.StringReader;
 import java.net.URI;
 import java.net.http.HttpClient;
 import java.net.http.HttpRequest;
 import java.net.http.HttpResponse;
 import java.time.Duration;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+import java.util.function.LongSupplier;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
 public class RuGPT3Generator {
     private static final Logger LOGGER = Logger.getLogger(RuGPT3Generator.class.getName());
 
-    private static final String MODEL_URL = "https://router.huggingface.co/v1/completions";
+    private static final URI MODEL_URI = URI.create("https://router.huggingface.co/v1/completions");
     private static final String GREETING_PROMPT = "Напиши красивое поздравление с днём рождения:";
+    // timeout запроса ждёт только заголовков ответа; тело (в том числе поток SSE) ограничено общим сроком
     private static final int REQUEST_TIMEOUT_SECONDS = 30;
+    private static final Duration RESPONSE_DEADLINE = Duration.ofSeconds(60);
     private static final int MAX_NEW_TOKENS = 100;
+    // Сколько запросов к модели может быть в полёте одновременно (bulkhead); остальным сразу отдаём запасное поздравление
+    private static final int MAX_CONCURRENT_REQUESTS = 4;
+
+    // Один клиент на всё приложение: соединения (и TLS-сессии) переиспользуются между запросами
+    private static final HttpClient CLIENT = HttpClient.newBuilder()
+            .version(HttpClient.Version.HTTP_2)
+            .connectTimeout(Duration.ofSeconds(10))
+            .build();
+    private static final Bulkhead BULKHEAD = new Bulkhead(MAX_CONCURRENT_REQUESTS);
+    // размыкается, если из последних 20 вызовов половина с ошибкой или дольше 10 секунд
+    // (потоковый вызов - до первого фрагмента текста);
+    // через 30 секунд пропускает 3 пробных запроса
+    private static final CircuitBreaker CIRCUIT_BREAKER =
+            new CircuitBreaker("ruGPT-3", 20, 0.5, 0.5, 10_000, 30_000, 3);
+
+    private static final MetricsRegistry METRICS = MetricsRegistry.getDefault();
+
+    static {
+        METRICS.gauge("greeting_circuit_state", "Greeting model circuit breaker: 0 closed, 1 open, 2 half-open",
+                () -> CIRCUIT_BREAKER.getState().ordinal());
+        for (CircuitBreaker.State state : CircuitBreaker.State.values()) {
+            METRICS.counter("greeting_circuit_transitions_total", "Circuit breaker transitions by target state",
+                    () -> CIRCUIT_BREAKER.getTransitions(state), "state", state.name().toLowerCase());
+        }
+        METRICS.counter("greeting_circuit_not_permitted_total", "Calls short-circuited while the breaker was open",
+                CIRCUIT_BREAKER::getNotPermitted);
+        METRICS.gauge("greeting_requests_in_flight", "Greeting model requests in flight", BULKHEAD::getInFlight);
+        METRICS.counter("greeting_bulkhead_rejected_total", "Greeting requests rejected by the concurrency limit",
+                BULKHEAD::getRejected);
+    }
+
+    // Общий клиент для других исходящих запросов приложения (например, скачивания файлов импорта)
+    static HttpClient httpClient() {
+        return CLIENT;
+    }
+
     public static String generateGreeting(String apiToken, String userName) {
-        try {
-            String prompt = String.format("%s %s!\n", GREETING_PROMPT, userName);
-            String jsonRequest = buildJsonRequest(prompt);
+        return generateGreetingAsync(apiToken, userName).join();
+    }
+
+    // Никогда не завершается ошибкой: при любой проблеме результат - запасное поздравление
+    public static CompletableFuture<String> generateGreetingAsync(String apiToken, String userName) {
+        return generateGreetingAsync(CLIENT, CIRCUIT_BREAKER, BULKHEAD, apiToken, userName);
+    }
+
+    // То же, но без подмены: null, если модель не ответила. Нужно тем, кто сохраняет результат заранее
+    public static CompletableFuture<String> requestGreetingAsync(String apiToken, String userName) {
+        return requestGreetingAsync(CLIENT, CIRCUIT_BREAKER, BULKHEAD, apiToken, userName);
+    }
 
-            HttpClient client = HttpClient.newHttpClient();
+    static CompletableFuture<String> generateGreetingAsync(HttpClient client, CircuitBreaker breaker,
+                                                           Bulkhead bulkhead, String apiToken, String userName) {
+        return requestGreetingAsync(client, breaker, bulkhead, apiToken, userName)
+                .thenApply(greeting -> greeting != null ? greeting : getFallbackGreeting(userName));
+    }
+
+    static CompletableFuture<String> requestGreetingAsync(HttpClient client, CircuitBreaker breaker,
+                                                          Bulkhead bulkhead, String apiToken, String userName) {
+        return send(client, MODEL_URI, breaker, bulkhead, apiToken, buildJsonRequest(prompt(userName), false),
+                HttpResponse.BodyHandlers.ofString(), "blocking", () -> 0, RESPONSE_DEADLINE, () -> { })
+                .thenApply(httpResponse -> {
+                    if (httpResponse == null) {
+                        return null;
+                    }
+                    if (httpResponse.statusCode() == 200) {
+                        String greeting = parseResponse(httpResponse.body());
+                        LOGGER.info("Greeting generated successfully");
+                        return greeting;
+                    }
+                    LOGGER.log(Level.WARNING, "API returned status code: " + httpResponse.statusCode());
+                    return null;
+                })
+                .whenComplete((greeting, error) -> countResult(greeting));
+    }
+
+    // Потоковая генерация (SSE): onText получает накопленный текст после каждого пришедшего фрагмента,
+    // результат - полный текст или null, если модель не ответила
+    public static CompletableFuture<String> streamGreetingAsync(String apiToken, String userName,
+                                                                Consumer<String> onText) {
+        return streamGreetingAsync(CLIENT, MODEL_URI, CIRCUIT_BREAKER, BULKHEAD, apiToken, userName, onText);
+    }
+
+    static CompletableFuture<String> streamGreetingAsync(HttpClient client, URI uri, CircuitBreaker breaker,
+                                                         Bulkhead bulkhead, String apiToken, String userName,
+                                                         Consumer<String> onText) {
+        return streamGreetingAsync(client, uri, breaker, bulkhead, apiToken, userName, onText, RESPONSE_DEADLINE);
+    }
+
+    // Поток, замолчавший дольше deadline, обрывается: подписка отменяется, а результат - null
+    static CompletableFuture<String> streamGreetingAsync(HttpClient client, URI uri, CircuitBreaker breaker,
+                                                         Bulkhead bulkhead, String apiToken, String userName,
+                                                         Consumer<String> onText, Duration deadline) {
+        SseCompletionSubscriber subscriber = new SseCompletionSubscriber(onText);
+        return send(client, uri, breaker, bulkhead, apiToken, buildJsonRequest(prompt(userName), true),
+                HttpResponse.BodyHandlers.fromLineSubscriber(subscriber), "stream", subscriber::getFirstEventNanos,
+                deadline, subscriber::cancel)
+                .thenApply(httpResponse -> {
+                    if (httpResponse == null) {
+                        return null;
+                    }
+                    if (httpResponse.statusCode() != 200) {
+                        LOGGER.log(Level.WARNING, "API returned status code: " + httpResponse.statusCode());
+                        return null;
+                    }
+                    String greeting = subscriber.getText().trim();
+                    return greeting.isEmpty() ? null : greeting;
+                })
+                .whenComplete((greeting, error) -> countResult(greeting));
+    }
+
+    // Доля "fallback" среди всех запросов - доля пользователей, не получивших текст модели
+    private static void countResult(String greeting) {
+        METRICS.counter("greeting_requests_total", "Greeting requests by result: model text or fallback",
+                "result", greeting != null ? "model" : "fallback").increment();
+    }
+
+    private static String prompt(String userName) {
+        return String.format("%s %s!\n", GREETING_PROMPT, userName);
+    }
+
+    // Общий путь запроса к модели через bulkhead и circuit breaker.
+    // Завершается null-ответом, если запрос не был отправлен или упал; исключением - никогда.
+    // answeredAt - System.nanoTime(), когда модель начала отвечать (0 - только по завершении ответа):
+    // для потока breaker судит о медленности по первому событию, а не по длине всего текста.
+    // Ответ, не дочитанный за deadline, отменяется (onDeadline обрывает чтение тела) и считается ошибкой:
+    // зависший ответ не держит место в bulkhead и не проходит мимо breaker
+    private static <T> CompletableFuture<HttpResponse<T>> send(HttpClient client, URI uri, CircuitBreaker breaker,
+                                                               Bulkhead bulkhead, String apiToken, String json,
+                                                               HttpResponse.BodyHandler<T> bodyHandler,
+                                                               String mode, LongSupplier answeredAt,
+                                                               Duration deadline, Runnable onDeadline) {
+        if (!bulkhead.tryAcquire()) {
+            LOGGER.warning("Too many greeting requests in flight, using fallback greeting");
+            return CompletableFuture.completedFuture(null);
+        }
+        if (!breaker.tryAcquirePermission()) {
+            bulkhead.release();
+            LOGGER.fine("Greeting model circuit is open, using fallback greeting");
+            return CompletableFuture.completedFuture(null);
+        }
+
+        long start = System.nanoTime();
+        CompletableFuture<HttpResponse<T>> response;
+        try {
             HttpRequest request = HttpRequest.newBuilder()
-                    .uri(URI.create(MODEL_URL))
+                    .uri(uri)
                     .timeout(Duration.ofSeconds(REQUEST_TIMEOUT_SECONDS))
                     .header("Authorization", "Bearer " + apiToken)
                     .header("Content-Type", "application/json")
-                    .POST(HttpRequest.BodyPublishers.ofString(jsonRequest))
+                    .POST(HttpRequest.BodyPublishers.ofString(json))
                     .build();
 
             LOGGER.info("Sending request to ruGPT-3 model...");
-            HttpResponse<String> response = client.send(request, HttpResponse.BodyHandlers.ofString());
+            response = client.sendAsync(request, bodyHandler);
+        } catch (RuntimeException e) {
+            bulkhead.release();
+            breaker.onError(System.nanoTime() - start);
+            LOGGER.log(Level.SEVERE, "Error generating greeting", e);
+            return CompletableFuture.completedFuture(null);
+        }
 
-            if (response.statusCode() == 200) {
-                String greeting = parseResponse(response.body());
-                LOGGER.info("Greeting generated successfully");
-                return greeting;
-            } else {
-                LOGGER.log(Level.WARNING, "API returned status code: " + response.statusCode());
-                return getFallbackGreeting(userName);
+        CompletableFuture<HttpResponse<T>> sent = response;
+        CompletableFuture.delayedExecutor(deadline.toMillis(), TimeUnit.MILLISECONDS).execute(() -> {
+            if (!sent.isDone()) {
+                LOGGER.warning("Greeting model did not finish the response in " + deadline.toSeconds() + " s");
+                onDeadline.run();
+                sent.cancel(true);
             }
+        });
 
-        } catch (Exception e) {
-            LOGGER.log(Level.SEVERE, "Error generating greeting", e);
-            return getFallbackGreeting(userName);
-        }
+        return response
+                .whenComplete((httpResponse, error) -> {
+                    bulkhead.release();
+                    long end = System.nanoTime();
+                    METRICS.latency("greeting_model_duration_seconds", "Greeting model request duration",
+                            "mode", mode).record(end - start);
+                    long answered = answeredAt.getAsLong();
+                    long callDuration = (answered != 0 ? answered : end) - start;
+                    if (error != null || isServiceFailure(httpResponse.statusCode())) {
+                        breaker.onError(callDuration);
+                    } else {
+                        breaker.onSuccess(callDuration);
+                    }
+                })
+                .exceptionally(e -> {
+                    LOGGER.log(Level.SEVERE, "Error generating greeting", e);
+                    return null;
+                });
+    }
+
+    // 5xx и 429 - сервис не справляется; прочие 4xx (неверный токен и т.п.) - ошибка запроса, а не сервиса
+    private static boolean isServiceFailure(int statusCode) {
+        return statusCode >= 500 || statusCode == 429;
+    }
+
+    public static CircuitBreaker getCircuitBreaker() {
+        return CIRCUIT_BREAKER;
+    }
+
+    public static Bulkhead getBulkhead() {
+        return BULKHEAD;
     }
-    private static String buildJsonRequest(String prompt) {
+
+    private static String buildJsonRequest(String prompt, boolean stream) {
         return String.format(
                 "{" +
                         "\"model\": \"ai-forever/rugpt3small_based_on_gpt2\"," +
                         "\"prompt\": \"%s\"," +
                         "\"max_tokens\": %d," +
-                        "\"temperature\": 0.7" +
+                        "\"temperature\": 0.7," +
+                        "\"stream\": %b" +
                         "}",
                 escapeJson(prompt),
-                MAX_NEW_TOKENS
+                MAX_NEW_TOKENS,
+                stream
         );
     }
-    private static String escapeJson(String text) {
+    static String escapeJson(String text) {
         return text.replace("\\", "\\\\")
                 .replace("\"", "\\\"")
                 .replace("\n", "\\n")
                 .replace("\r", "\\r")
                 .replace("\t", "\\t");
     }
-    private static String parseResponse(String jsonResponse) {
+    // null - в ответе нет текста; вызывающий сам подставит запасное поздравление с именем
+    static String parseResponse(String jsonResponse) {
         try {
-            int choicesIndex = jsonResponse.indexOf("\"choices\"");
-            if (choicesIndex == -1) {
-                return getFallbackGreeting("друг");
-            }
+            String text = extractChoiceText(jsonResponse);
+            return text == null || text.trim().isEmpty() ? null : text.trim();
+        } catch (IOException | IllegalStateException e) {
+            LOGGER.log(Level.WARNING, "Failed to parse response", e);
+            return null;
+        }
+    }
 
-            int textIndex = jsonResponse.indexOf("\"text\"", choicesIndex);
-            if (textIndex == -1) {
-                return getFallbackGreeting("друг");
+    // Текст первого варианта: choices[0].text (completions) или choices[0].delta.content / message.content (chat).
+    // Читается потоково, без построения дерева всего ответа
+    static String extractChoiceText(String json) throws IOException {
+        try (JsonReader reader = new JsonReader(new StringReader(json))) {
+            reader.beginObject();
+            while (reader.hasNext()) {
+                if (!reader.nextName().equals("choices") || reader.peek() != JsonToken.BEGIN_ARRAY) {
+                    reader.skipValue();
+                    continue;
+                }
+                reader.beginArray();
+                return reader.hasNext() && reader.peek() == JsonToken.BEGIN_OBJECT ? readChoiceText(reader) : null;
             }
+            return null;
+        }
+    }
 
-            int colonIndex = jsonResponse.indexOf(":", textIndex);
-            int startQuote = jsonResponse.indexOf("\"", colonIndex + 1);
-            int endQuote = jsonResponse.indexOf("\"", startQuote + 1);
-
-            if (startQuote == -1 || endQuote == -1) {
-                return getFallbackGreeting("друг");
+    private static String readChoiceText(JsonReader reader) throws IOException {
+        String text = null;
+        reader.beginObject();
+        while (reader.hasNext()) {
+            String name = reader.nextName();
+            if (name.equals("text") && reader.peek() == JsonToken.STRING) {
+                text = reader.nextString();
+            } else if ((name.equals("delta") || name.equals("message")) && reader.peek() == JsonToken.BEGIN_OBJECT) {
+                reader.beginObject();
+                while (reader.hasNext()) {
+                    if (reader.nextName().equals("content") && reader.peek() == JsonToken.STRING) {
+                        text = reader.nextString();
+                    } else {
+                        reader.skipValue();
+                    }
+                }
+                reader.endObject();
+            } else {
+                reader.skipValue();
             }
-
-            String text = jsonResponse.substring(startQuote + 1, endQuote);
-            text = text.replace("\\n", "\n")
-                    .replace("\\\"", "\"")
-                    .replace("\\\\", "\\");
-
-            return text.trim();
-        } catch (Exception e) {
-            LOGGER.log(Level.WARNING, "Failed to parse response", e);
-            return getFallbackGreeting("друг");
         }
+        reader.endObject();
+        return text;
     }
+
     //вопросы ко мне есть?&
     public static String getFallbackGreeting(String userName) {
         String[] greetings = {
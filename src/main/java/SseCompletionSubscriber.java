@@ -0,0 +1,96 @@
+import java.io.IOException;
+import java.util.concurrent.Flow;
+import java.util.function.Consumer;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+// Разбирает поток server-sent events от completions API построчно, по мере прихода байтов:
+// каждая строка "data: {...}" несёт очередной фрагмент текста, "data: [DONE]" - конец
+public class SseCompletionSubscriber implements Flow.Subscriber<String> {
+    private static final Logger LOGGER = Logger.getLogger(SseCompletionSubscriber.class.getName());
+    private static final String DATA_PREFIX = "data:";
+    private static final String DONE = "[DONE]";
+
+    private final Consumer<String> onText;
+    private final StringBuilder text = new StringBuilder();
+    private volatile boolean done;
+    // System.nanoTime() первого события с текстом; 0 - пока не было
+    private volatile long firstEventNanos;
+    private volatile Flow.Subscription subscription;
+
+    public SseCompletionSubscriber(Consumer<String> onText) {
+        this.onText = onText;
+    }
+
+    @Override
+    public void onSubscribe(Flow.Subscription subscription) {
+        this.subscription = subscription;
+        subscription.request(Long.MAX_VALUE);
+    }
+
+    // Обрывает чтение потока: соединение освобождается, дальше фрагменты не приходят
+    public void cancel() {
+        done = true;
+        Flow.Subscription current = subscription;
+        if (current != null) {
+            current.cancel();
+        }
+    }
+
+    @Override
+    public void onNext(String line) {
+        if (done || !line.startsWith(DATA_PREFIX)) {
+            return;
+        }
+        String data = line.substring(DATA_PREFIX.length()).trim();
+        if (data.equals(DONE)) {
+            done = true;
+            return;
+        }
+
+        String fragment;
+        try {
+            fragment = RuGPT3Generator.extractChoiceText(data);
+        } catch (IOException | IllegalStateException e) {
+            LOGGER.log(Level.FINE, "Skipping malformed SSE event: " + data, e);
+            return;
+        }
+        if (fragment == null || fragment.isEmpty()) {
+            return;
+        }
+
+        if (firstEventNanos == 0) {
+            firstEventNanos = System.nanoTime();
+        }
+        String current;
+        synchronized (text) {
+            text.append(fragment);
+            current = text.toString();
+        }
+        try {
+            onText.accept(current);
+        } catch (RuntimeException e) {
+            LOGGER.log(Level.WARNING, "Partial greeting consumer failed", e);
+        }
+    }
+
+    @Override
+    public void onError(Throwable throwable) {
+        LOGGER.log(Level.FINE, "SSE stream failed", throwable);
+    }
+
+    @Override
+    public void onComplete() {
+        done = true;
+    }
+
+    public long getFirstEventNanos() {
+        return firstEventNanos;
+    }
+
+    public String getText() {
+        synchronized (text) {
+            return text.toString();
+        }
+    }
+}
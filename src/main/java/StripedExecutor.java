@@ -0,0 +1,102 @@
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Logger;
+
+// Пул из однопоточных "полос": задачи с одним ключом (chatId) всегда идут в одну полосу
+// и выполняются по порядку, разные ключи обрабатываются параллельно.
+// Очередь каждой полосы ограничена; когда она заполнена, execute ждёт свободного места,
+// а offer ждёт не дольше таймаута и сообщает, принята ли задача.
+public class StripedExecutor {
+    private static final Logger LOGGER = Logger.getLogger(StripedExecutor.class.getName());
+
+    private final ThreadPoolExecutor[] stripes;
+    private final int queueCapacityPerStripe;
+
+    public StripedExecutor(String name, int stripeCount, int queueCapacityPerStripe) {
+        this.queueCapacityPerStripe = queueCapacityPerStripe;
+        stripes = new ThreadPoolExecutor[stripeCount];
+        for (int i = 0; i < stripeCount; i++) {
+            String threadName = name + "-" + i;
+            stripes[i] = new ThreadPoolExecutor(1, 1, 0L, TimeUnit.MILLISECONDS,
+                    new ArrayBlockingQueue<>(queueCapacityPerStripe),
+                    r -> {
+                        Thread thread = new Thread(r, threadName);
+                        thread.setDaemon(true);
+                        return thread;
+                    },
+                    (task, executor) -> {
+                        if (executor.isShutdown()) {
+                            throw new RejectedExecutionException(threadName + " is shut down");
+                        }
+                        try {
+                            executor.getQueue().put(task);
+                        } catch (InterruptedException e) {
+                            Thread.currentThread().interrupt();
+                            throw new RejectedExecutionException("Interrupted while waiting for " + threadName, e);
+                        }
+                    });
+            // offer кладёт задачи прямо в очередь, поэтому поток полосы должен уже работать
+            stripes[i].prestartAllCoreThreads();
+        }
+    }
+
+    public void execute(long key, Runnable task) {
+        stripes[stripeOf(key)].execute(task);
+    }
+
+    // false - полоса так и не освободилась за timeout или пул остановлен; задача тогда не выполнится
+    public boolean offer(long key, Runnable task, long timeout, TimeUnit unit) throws InterruptedException {
+        ThreadPoolExecutor stripe = stripes[stripeOf(key)];
+        if (stripe.isShutdown()) {
+            return false;
+        }
+        return stripe.getQueue().offer(task, timeout, unit);
+    }
+
+    int stripeOf(long key) {
+        return (Long.hashCode(key) & Integer.MAX_VALUE) % stripes.length;
+    }
+
+    // Сколько задач ждёт выполнения во всех полосах
+    public int getQueueDepth() {
+        int depth = 0;
+        for (ThreadPoolExecutor stripe : stripes) {
+            depth += stripe.getQueue().size();
+        }
+        return depth;
+    }
+
+    // Сколько задач помещается в очереди всех полос вместе
+    public int getCapacity() {
+        return queueCapacityPerStripe * stripes.length;
+    }
+
+    public int getActiveCount() {
+        int active = 0;
+        for (ThreadPoolExecutor stripe : stripes) {
+            active += stripe.getActiveCount();
+        }
+        return active;
+    }
+
+    public void shutdown() {
+        for (ThreadPoolExecutor stripe : stripes) {
+            stripe.shutdown();
+        }
+        try {
+            for (ThreadPoolExecutor stripe : stripes) {
+                if (!stripe.awaitTermination(5, TimeUnit.SECONDS)) {
+                    LOGGER.warning("Stripe did not finish in time, " + stripe.getQueue().size() + " tasks dropped");
+                    stripe.shutdownNow();
+                }
+            }
+        } catch (InterruptedException e) {
+            for (ThreadPoolExecutor stripe : stripes) {
+                stripe.shutdownNow();
+            }
+            Thread.currentThread().interrupt();
+        }
+    }
+}
@@ -0,0 +1,68 @@
+import com.pengrad.telegrambot.TelegramBot;
+import com.pengrad.telegrambot.request.EditMessageText;
+
+import java.util.concurrent.TimeUnit;
+import java.util.function.LongSupplier;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+// Постепенно обновляет одно сообщение по мере генерации текста.
+// Telegram ограничивает частоту правок, поэтому промежуточные версии отправляются не чаще раза в minInterval;
+// первая правка - сразу, чтобы пользователь увидел начало текста как можно раньше
+public class ThrottledMessageEditor {
+    private static final Logger LOGGER = Logger.getLogger(ThrottledMessageEditor.class.getName());
+    private static final long DEFAULT_MIN_INTERVAL_MILLIS = 1_000;
+
+    private final TelegramBot bot;
+    private final long chatId;
+    private final int messageId;
+    private final long minIntervalNanos;
+    private final LongSupplier clock;
+
+    private String shownText;
+    private long lastEditNanos;
+    private boolean edited;
+    private boolean finished;
+
+    public ThrottledMessageEditor(TelegramBot bot, long chatId, int messageId) {
+        this(bot, chatId, messageId, DEFAULT_MIN_INTERVAL_MILLIS, System::nanoTime);
+    }
+
+    ThrottledMessageEditor(TelegramBot bot, long chatId, int messageId, long minIntervalMillis, LongSupplier clock) {
+        this.bot = bot;
+        this.chatId = chatId;
+        this.messageId = messageId;
+        this.minIntervalNanos = TimeUnit.MILLISECONDS.toNanos(minIntervalMillis);
+        this.clock = clock;
+    }
+
+    // Промежуточный текст: пропускается, если с прошлой правки прошло меньше minInterval
+    public synchronized void update(String text) {
+        if (finished || text.trim().isEmpty() || text.equals(shownText)) {
+            return;
+        }
+        if (edited && clock.getAsLong() - lastEditNanos < minIntervalNanos) {
+            return;
+        }
+        edit(text);
+    }
+
+    // Окончательный текст отправляется всегда (если отличается от показанного)
+    public synchronized void finish(String text) {
+        finished = true;
+        if (!text.trim().isEmpty() && !text.equals(shownText)) {
+            edit(text);
+        }
+    }
+
+    private void edit(String text) {
+        try {
+            bot.execute(new EditMessageText(chatId, messageId, text));
+        } catch (RuntimeException e) {
+            LOGGER.log(Level.WARNING, "Failed to edit message " + messageId + " in chat " + chatId, e);
+        }
+        shownText = text;
+        lastEditNanos = clock.getAsLong();
+        edited = true;
+    }
+}
@@ -0,0 +1,60 @@
+import java.util.concurrent.TimeUnit;
+import java.util.function.LongSupplier;
+
+// Классический token bucket: permitsPerSecond токенов в секунду, не больше capacity в запасе
+public class TokenBucket {
+    private final long capacity;
+    private final double nanosPerPermit;
+    private final LongSupplier clock;
+
+    private double tokens;
+    private long lastRefillNanos;
+
+    public TokenBucket(int permitsPerSecond, int capacity) {
+        this(permitsPerSecond, capacity, System::nanoTime);
+    }
+
+    TokenBucket(int permitsPerSecond, int capacity, LongSupplier clock) {
+        if (permitsPerSecond <= 0 || capacity <= 0) {
+            throw new IllegalArgumentException("permitsPerSecond and capacity must be positive");
+        }
+        this.capacity = capacity;
+        this.nanosPerPermit = (double) TimeUnit.SECONDS.toNanos(1) / permitsPerSecond;
+        this.clock = clock;
+        this.tokens = capacity;
+        this.lastRefillNanos = clock.getAsLong();
+    }
+
+    // Резервирует токен и возвращает, сколько наносекунд нужно подождать до его появления (0 - можно сразу).
+    // Токен списывается в долг, поэтому параллельные вызовы выстраиваются в очередь, а не толпятся.
+    public synchronized long reserve() {
+        long now = clock.getAsLong();
+        tokens = Math.min(capacity, tokens + (now - lastRefillNanos) / nanosPerPermit);
+        lastRefillNanos = now;
+
+        tokens -= 1;
+        if (tokens >= 0) {
+            return 0;
+        }
+        return (long) Math.ceil(-tokens * nanosPerPermit);
+    }
+
+    public synchronized boolean tryAcquire() {
+        long now = clock.getAsLong();
+        tokens = Math.min(capacity, tokens + (now - lastRefillNanos) / nanosPerPermit);
+        lastRefillNanos = now;
+
+        if (tokens >= 1) {
+            tokens -= 1;
+            return true;
+        }
+        return false;
+    }
+
+    public void acquire() throws InterruptedException {
+        long waitNanos = reserve();
+        if (waitNanos > 0) {
+            TimeUnit.NANOSECONDS.sleep(waitNanos);
+        }
+    }
+}
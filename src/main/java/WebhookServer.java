@@ -0,0 +1,181 @@
+import com.pengrad.telegrambot.model.Update;
+import com.pengrad.telegrambot.utility.BotUtils;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Predicate;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+// Приём апдейтов от Telegram через webhook вместо long polling.
+// Запрос проверяется по заголовку с секретом (задаётся в setWebhook), апдейт передаётся в обработку
+// и сразу подтверждается 200 - Telegram не ждёт, пока бот ответит пользователю.
+// Не-2xx Telegram считает ошибкой доставки и повторяет тот же апдейт позже. Повтор уже принятого апдейта
+// (например, когда 200 не дошёл до Telegram) узнаётся по update_id и подтверждается без повторной обработки
+public class WebhookServer {
+    private static final Logger LOGGER = Logger.getLogger(WebhookServer.class.getName());
+    private static final MetricsRegistry METRICS = MetricsRegistry.getDefault();
+    static final String SECRET_HEADER = "X-Telegram-Bot-Api-Secret-Token";
+    // апдейты - небольшие JSON; всё, что больше, не от Telegram
+    private static final int MAX_BODY_BYTES = 1024 * 1024;
+    private static final int ACCEPT_THREADS = 4;
+    // сколько последних update_id помнить для отсева повторов
+    private static final int RECENT_UPDATE_IDS = 10_000;
+
+    private static final LongAdder ACCEPTED = counter("accepted");
+    private static final LongAdder UNAUTHORIZED = counter("unauthorized");
+    private static final LongAdder BAD_REQUEST = counter("bad_request");
+    private static final LongAdder REJECTED = counter("rejected");
+    private static final LongAdder DUPLICATE = counter("duplicate");
+
+    private final HttpServer server;
+    private final ExecutorService executor;
+    private final byte[] secret;
+    private final Predicate<Update> handler;
+    // id принятых (и принимаемых прямо сейчас) апдейтов; самые старые вытесняются
+    private final Set<Integer> recentUpdateIds = Collections.newSetFromMap(new LinkedHashMap<Integer, Boolean>() {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<Integer, Boolean> eldest) {
+            return size() > RECENT_UPDATE_IDS;
+        }
+    });
+
+    // handler должен быстро поставить апдейт в очередь, а не обрабатывать его в потоке сервера;
+    // false - очередь полна, Telegram получит 503 и пришлёт апдейт повторно
+    public WebhookServer(int port, String path, String secret, Predicate<Update> handler) throws IOException {
+        this.secret = secret.getBytes(StandardCharsets.UTF_8);
+        this.handler = handler;
+        this.executor = Executors.newFixedThreadPool(ACCEPT_THREADS, runnable -> {
+            Thread thread = new Thread(runnable, "webhook-http");
+            thread.setDaemon(true);
+            return thread;
+        });
+        server = HttpServer.create(new InetSocketAddress(port), 0);
+        server.setExecutor(executor);
+        server.createContext(path, this::handle);
+    }
+
+    private static LongAdder counter(String result) {
+        return METRICS.counter("telegram_webhook_requests_total", "Webhook requests by result", "result", result);
+    }
+
+    private void handle(HttpExchange exchange) throws IOException {
+        try {
+            if (!"POST".equals(exchange.getRequestMethod())) {
+                exchange.sendResponseHeaders(405, -1);
+                return;
+            }
+            String token = exchange.getRequestHeaders().getFirst(SECRET_HEADER);
+            if (token == null || !MessageDigest.isEqual(secret, token.getBytes(StandardCharsets.UTF_8))) {
+                UNAUTHORIZED.increment();
+                exchange.sendResponseHeaders(401, -1);
+                return;
+            }
+
+            String body = readBody(exchange.getRequestBody());
+            Update update = body != null ? parse(body) : null;
+            if (update == null) {
+                BAD_REQUEST.increment();
+                exchange.sendResponseHeaders(400, -1);
+                return;
+            }
+
+            if (!markSeen(update.updateId())) {
+                DUPLICATE.increment();
+                exchange.sendResponseHeaders(200, -1);
+                return;
+            }
+            if (!accept(update)) {
+                REJECTED.increment();
+                exchange.getResponseHeaders().set("Retry-After", "1");
+                exchange.sendResponseHeaders(503, -1);
+                return;
+            }
+            ACCEPTED.increment();
+            exchange.sendResponseHeaders(200, -1);
+        } catch (RuntimeException e) {
+            LOGGER.log(Level.SEVERE, "Failed to accept webhook update", e);
+            exchange.sendResponseHeaders(500, -1);
+        } finally {
+            exchange.close();
+        }
+    }
+
+    // false - апдейт с таким id уже принят или принимается другим запросом
+    private boolean markSeen(Integer updateId) {
+        synchronized (recentUpdateIds) {
+            return recentUpdateIds.add(updateId);
+        }
+    }
+
+    // Непринятый апдейт Telegram пришлёт снова - его id забывается, чтобы повтор не сочли дублем
+    private boolean accept(Update update) {
+        boolean accepted = false;
+        try {
+            accepted = handler.test(update);
+            return accepted;
+        } finally {
+            if (!accepted) {
+                synchronized (recentUpdateIds) {
+                    recentUpdateIds.remove(update.updateId());
+                }
+            }
+        }
+    }
+
+    private static Update parse(String body) {
+        try {
+            return BotUtils.parseUpdate(body);
+        } catch (RuntimeException e) {
+            LOGGER.log(Level.WARNING, "Malformed webhook update", e);
+            return null;
+        }
+    }
+
+    // null - если тело больше MAX_BODY_BYTES
+    private static String readBody(InputStream in) throws IOException {
+        ByteArrayOutputStream body = new ByteArrayOutputStream();
+        byte[] buffer = new byte[8192];
+        int read;
+        while ((read = in.read(buffer)) != -1) {
+            if (body.size() + read > MAX_BODY_BYTES) {
+                return null;
+            }
+            body.write(buffer, 0, read);
+        }
+        return body.toString(StandardCharsets.UTF_8.name());
+    }
+
+    public void start() {
+        server.start();
+        LOGGER.info("Webhook endpoint started on port " + getPort());
+    }
+
+    public int getPort() {
+        return server.getAddress().getPort();
+    }
+
+    public void stop() {
+        server.stop(1);
+        executor.shutdown();
+        try {
+            executor.awaitTermination(5, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
@@ -0,0 +1,203 @@
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Consumer;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+// Буфер отложенной записи (write-behind): изменения копятся в памяти и уходят в БД одной транзакцией
+// раз в flushIntervalMillis или как только набралось maxBatch изменений.
+// Обновления одного поля одного чата схлопываются: в базу попадает только последнее,
+// а future всех схлопнутых вызовов завершается вместе с ним. Вставки не схлопываются.
+// Порядок изменений сохраняется: writer получает их в порядке последнего вызова
+public class WriteBehindBuffer {
+    private static final Logger LOGGER = Logger.getLogger(WriteBehindBuffer.class.getName());
+    private static final MetricsRegistry METRICS = MetricsRegistry.getDefault();
+    private static final LongAdder COALESCED = METRICS.counter("db_write_behind_coalesced_total",
+            "Buffered updates replaced by a later update of the same row");
+
+    public enum Kind {
+        ADD_USER, UPDATE_NAME, UPDATE_BIRTHDAY
+    }
+
+    private final int maxBatch;
+    private final Consumer<List<Write>> writer;
+    private final ScheduledExecutorService flusher;
+    // ключ схлопывания -> изменение; вставки идут под уникальными ключами
+    private final Map<String, Write> pending = new LinkedHashMap<>();
+    private long insertSeq;
+    private boolean flushRequested;
+    // после close изменения не принимаются: их future сразу завершается ошибкой
+    private boolean closed;
+
+    // writer пишет пачку одной транзакцией и завершает future каждого изменения
+    public WriteBehindBuffer(long flushIntervalMillis, int maxBatch, Consumer<List<Write>> writer) {
+        this.maxBatch = maxBatch;
+        this.writer = writer;
+        this.flusher = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "write-behind");
+            thread.setDaemon(true);
+            return thread;
+        });
+        flusher.scheduleWithFixedDelay(this::flush, flushIntervalMillis, flushIntervalMillis, TimeUnit.MILLISECONDS);
+        METRICS.gauge("db_write_behind_pending", "Changes waiting for the next write-behind flush", this::size);
+    }
+
+    public CompletableFuture<Integer> submit(Write write) {
+        boolean flushNow;
+        synchronized (pending) {
+            if (closed) {
+                write.getResult().completeExceptionally(new IllegalStateException("Write-behind buffer is closed"));
+                return write.getResult();
+            }
+            String key = write.getKind() == Kind.ADD_USER
+                    ? "add:" + insertSeq++
+                    : write.getKind() + ":" + write.getTelegramId();
+            Write replaced = pending.remove(key);
+            if (replaced != null) {
+                write.getResult().whenComplete((result, error) -> {
+                    if (error != null) {
+                        replaced.getResult().completeExceptionally(error);
+                    } else {
+                        replaced.getResult().complete(result);
+                    }
+                });
+                COALESCED.increment();
+            }
+            pending.put(key, write);
+            flushNow = pending.size() >= maxBatch && !flushRequested;
+            if (flushNow) {
+                flushRequested = true;
+            }
+        }
+        if (flushNow) {
+            try {
+                flusher.execute(this::flush);
+            } catch (RejectedExecutionException e) {
+                // close начался после добавления - изменение допишет его последний flush
+            }
+        }
+        return write.getResult();
+    }
+
+    public int size() {
+        synchronized (pending) {
+            return pending.size();
+        }
+    }
+
+    // Вызывается только из потока flusher (и из close после его остановки), поэтому пачки не пересекаются
+    void flush() {
+        List<Write> batch;
+        synchronized (pending) {
+            flushRequested = false;
+            if (pending.isEmpty()) {
+                return;
+            }
+            batch = new ArrayList<>(pending.values());
+            pending.clear();
+        }
+        try {
+            writer.accept(batch);
+        } catch (RuntimeException e) {
+            LOGGER.log(Level.SEVERE, "Write-behind flush of " + batch.size() + " changes failed", e);
+            for (Write write : batch) {
+                write.getResult().completeExceptionally(e);
+            }
+        }
+    }
+
+    // Останавливает таймер и дописывает всё, что осталось в буфере. Если текущая запись не закончилась
+    // за 5 секунд, остаток не пишется параллельно с ней, а завершается ошибкой
+    public void close() {
+        synchronized (pending) {
+            if (closed) {
+                return;
+            }
+            closed = true;
+        }
+        flusher.shutdown();
+        boolean terminated = false;
+        try {
+            terminated = flusher.awaitTermination(5, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        if (terminated) {
+            flush();
+            return;
+        }
+        flusher.shutdownNow();
+        failPending(new IllegalStateException("Write-behind buffer closed before the changes were written"));
+    }
+
+    private void failPending(Throwable error) {
+        List<Write> dropped;
+        synchronized (pending) {
+            dropped = new ArrayList<>(pending.values());
+            pending.clear();
+        }
+        if (!dropped.isEmpty()) {
+            LOGGER.severe("Write-behind closed with " + dropped.size() + " unwritten changes");
+        }
+        for (Write write : dropped) {
+            write.getResult().completeExceptionally(error);
+        }
+    }
+
+    public static final class Write {
+        private final Kind kind;
+        private final long telegramId;
+        private final String name;
+        private final LocalDate birthday;
+        // id новой записи для ADD_USER, число изменённых строк для обновлений
+        private final CompletableFuture<Integer> result = new CompletableFuture<>();
+
+        private Write(Kind kind, long telegramId, String name, LocalDate birthday) {
+            this.kind = kind;
+            this.telegramId = telegramId;
+            this.name = name;
+            this.birthday = birthday;
+        }
+
+        public static Write addUser(long telegramId, String name, LocalDate birthday) {
+            return new Write(Kind.ADD_USER, telegramId, name, birthday);
+        }
+
+        public static Write updateName(long telegramId, String name) {
+            return new Write(Kind.UPDATE_NAME, telegramId, name, null);
+        }
+
+        public static Write updateBirthday(long telegramId, LocalDate birthday) {
+            return new Write(Kind.UPDATE_BIRTHDAY, telegramId, null, birthday);
+        }
+
+        public Kind getKind() {
+            return kind;
+        }
+
+        public long getTelegramId() {
+            return telegramId;
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        public LocalDate getBirthday() {
+            return birthday;
+        }
+
+        public CompletableFuture<Integer> getResult() {
+            return result;
+        }
+    }
+}
@@ -0,0 +1,334 @@
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.time.LocalDate;
+import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+// Общий контракт BirthdayRepository: один и тот же набор проверок гоняется на каждой реализации.
+// База может быть общей (PostgreSQL), поэтому каждый тест работает со своими случайными чатами
+// и смотрит только на их строки. Сам класс в прогон не попадает (exclude '**/*Abstract*Test.class')
+abstract class AbstractBirthdayRepositoryTest {
+    private static final LocalDate OUTBOX_DATE = LocalDate.of(2023, 5, 15);
+    private static final String TEST_ZONE = "Pacific/Chatham";
+    private static final String NODE_ID = "contract-test";
+
+    protected BirthdayRepository repository;
+    protected long chatId;
+    private long otherChatId;
+
+    protected abstract BirthdayRepository createRepository() throws Exception;
+
+    @BeforeEach
+    void setUpRepository() throws Exception {
+        repository = createRepository();
+        chatId = ThreadLocalRandom.current().nextLong(1_000_000_000L, 1_000_000_000_000L);
+        otherChatId = chatId + 1;
+    }
+
+    @AfterEach
+    void tearDownRepository() {
+        // null - createRepository пропустил тест (нет базы)
+        if (repository != null) {
+            repository.shutdown();
+        }
+    }
+
+    @Test
+    void testAddUser_ListedInInsertionOrderWithOrdinals() throws Exception {
+        // Given
+        int first = repository.addUser(chatId, "Иван", LocalDate.of(1990, 1, 1));
+        int second = repository.addUser(chatId, "Мария", LocalDate.of(1991, 2, 2));
+        repository.addUser(otherChatId, "Пётр", LocalDate.of(1992, 3, 3));
+
+        // When
+        List<BirthdayUser> users = repository.getAllUsers(chatId);
+
+        // Then
+        assertTrue(second > first);
+        assertEquals(2, repository.getUsersNum(chatId));
+        assertEquals(Arrays.asList("Иван", "Мария"), names(users));
+        assertEquals(1, users.get(0).getOrdinal());
+        assertEquals(2, users.get(1).getOrdinal());
+        assertEquals(LocalDate.of(1991, 2, 2), users.get(1).getBirthday());
+    }
+
+    @Test
+    void testDeleteUser() throws Exception {
+        // Given
+        repository.addUser(chatId, "Иван", LocalDate.of(1990, 1, 1));
+        int maria = repository.addUser(chatId, "Мария", LocalDate.of(1991, 2, 2));
+        repository.addUser(chatId, "Пётр", LocalDate.of(1992, 3, 3));
+        int foreign = repository.addUser(otherChatId, "Анна", LocalDate.of(1993, 4, 4));
+
+        // When & Then: id чужого чата и уже удалённый id не удаляются
+        assertTrue(repository.deleteUser(chatId, maria));
+        assertFalse(repository.deleteUser(chatId, maria));
+        assertFalse(repository.deleteUser(chatId, foreign));
+        assertEquals(Arrays.asList("Иван", "Пётр"), names(repository.getAllUsers(chatId)));
+        assertEquals(1, repository.getUsersNum(otherChatId));
+    }
+
+    @Test
+    void testUsersPages() throws Exception {
+        // Given
+        for (int i = 1; i <= 5; i++) {
+            repository.addUser(chatId, "Гость " + i, LocalDate.of(1990, 1, i));
+        }
+
+        // When
+        BirthdayRepository.UserPage first = repository.getUsersPageAfter(chatId, 0, 2);
+        BirthdayRepository.UserPage second = repository.getUsersPageAfter(chatId, first.getLastId(), 2);
+        BirthdayRepository.UserPage last = repository.getUsersPageAfter(chatId, second.getLastId(), 2);
+        BirthdayRepository.UserPage back = repository.getUsersPageBefore(chatId, second.getFirstId(), 2);
+
+        // Then
+        assertEquals(Arrays.asList("Гость 1", "Гость 2"), names(first.getUsers()));
+        assertFalse(first.hasPrevious());
+        assertTrue(first.hasNext());
+        assertEquals(Arrays.asList("Гость 3", "Гость 4"), names(second.getUsers()));
+        assertEquals(Collections.singletonList("Гость 5"), names(last.getUsers()));
+        assertFalse(last.hasNext());
+        assertEquals(names(first.getUsers()), names(back.getUsers()));
+        assertFalse(back.hasPrevious());
+        assertTrue(back.hasNext());
+    }
+
+    @Test
+    void testUsersPages_NeighboursFollowData() throws Exception {
+        // Given: пользователь листает вторую страницу, а записи вокруг неё тем временем удалили
+        List<Integer> ids = new ArrayList<>();
+        for (int i = 1; i <= 5; i++) {
+            ids.add(repository.addUser(chatId, "Гость " + i, LocalDate.of(1990, 1, i)));
+        }
+        repository.deleteUser(chatId, ids.get(0));
+        repository.deleteUser(chatId, ids.get(1));
+        repository.deleteUser(chatId, ids.get(4));
+
+        // When
+        BirthdayRepository.UserPage forward = repository.getUsersPageAfter(chatId, ids.get(1), 2);
+        BirthdayRepository.UserPage backward = repository.getUsersPageBefore(chatId, ids.get(4), 2);
+
+        // Then: кнопок на пустые страницы нет
+        assertEquals(Arrays.asList("Гость 3", "Гость 4"), names(forward.getUsers()));
+        assertFalse(forward.hasPrevious());
+        assertFalse(forward.hasNext());
+        assertEquals(Arrays.asList("Гость 3", "Гость 4"), names(backward.getUsers()));
+        assertFalse(backward.hasPrevious());
+        assertFalse(backward.hasNext());
+    }
+
+    @Test
+    void testUpdatesApplyToWholeChat() throws Exception {
+        // Given
+        repository.addUser(chatId, "Иван", LocalDate.of(1990, 1, 1));
+        repository.addUser(chatId, "Мария", LocalDate.of(1991, 2, 2));
+
+        // When
+        boolean renamed = repository.updateName(chatId, "Семья");
+        boolean moved = repository.updateBirthday(chatId, LocalDate.of(2000, 7, 7));
+
+        // Then
+        assertTrue(renamed);
+        assertTrue(moved);
+        assertFalse(repository.updateName(otherChatId, "Никто"));
+        for (BirthdayUser user : repository.getAllUsers(chatId)) {
+            assertEquals("Семья", user.getName());
+            assertEquals(LocalDate.of(2000, 7, 7), user.getBirthday());
+        }
+        assertEquals(2, repository.getAllUsersOnMonth(7, chatId).size());
+    }
+
+    @Test
+    void testUsersOnMonth_OrderedByDayThenName() throws Exception {
+        // Given
+        repository.addUser(chatId, "Пётр", LocalDate.of(1990, 3, 20));
+        repository.addUser(chatId, "Мария", LocalDate.of(1985, 3, 5));
+        repository.addUser(chatId, "Анна", LocalDate.of(2001, 3, 20));
+        repository.addUser(chatId, "Иван", LocalDate.of(1990, 4, 1));
+
+        // When
+        List<BirthdayUser> march = repository.getAllUsersOnMonth(3, chatId);
+
+        // Then
+        assertEquals(Arrays.asList("Мария", "Анна", "Пётр"), names(march));
+    }
+
+    @Test
+    void testRecentAndUpcomingWindows() throws Exception {
+        // Given
+        LocalDate today = LocalDate.now();
+        repository.addUser(chatId, "Сегодня", today.minusYears(30));
+        repository.addUser(chatId, "Неделю назад", today.minusWeeks(1).minusYears(30));
+        repository.addUser(chatId, "Через неделю", today.plusWeeks(1).minusYears(30));
+        repository.addUser(chatId, "Через три месяца", today.plusMonths(3).minusYears(30));
+
+        // When
+        List<String> recent = names(repository.getAllRecUsers(chatId));
+        List<String> upcoming = names(repository.getAllFutUsers(chatId));
+
+        // Then
+        assertTrue(recent.containsAll(Arrays.asList("Сегодня", "Неделю назад")));
+        assertFalse(recent.contains("Через три месяца"));
+        assertTrue(upcoming.containsAll(Arrays.asList("Сегодня", "Через неделю")));
+        assertFalse(upcoming.contains("Через три месяца"));
+    }
+
+    @Test
+    void testImportUsers() throws Exception {
+        // Given
+        List<BirthdayEntry> entries = new ArrayList<>();
+        for (int i = 0; i < 30; i++) {
+            entries.add(new BirthdayEntry(0, chatId, "Гость " + i, LocalDate.of(1990, 1, 1).plusDays(i)));
+        }
+
+        // When
+        BirthdayRepository.ImportResult result = repository.importUsers(chatId, entries.iterator(), imported -> { });
+
+        // Then
+        assertEquals(30, result.getImported());
+        assertEquals(30, repository.getUsersNum(chatId));
+        assertEquals("Гость 29", repository.getAllUsers(chatId).get(29).getName());
+    }
+
+    @Test
+    void testChatTimeZones() {
+        // When
+        assertNull(repository.getChatTimeZone(chatId));
+        repository.setChatTimeZone(chatId, ZoneId.of("Asia/Tokyo"));
+        repository.setChatTimeZone(chatId, ZoneId.of(TEST_ZONE));
+
+        // Then: повторная установка заменяет пояс
+        assertEquals(ZoneId.of(TEST_ZONE), repository.getChatTimeZone(chatId));
+        assertTrue(repository.getChatTimeZones().contains(TEST_ZONE));
+    }
+
+    @Test
+    void testGreetings_FirstOneWins() throws Exception {
+        // Given
+        int entryId = repository.addUser(chatId, "Иван", LocalDate.of(1990, 5, 15));
+        LocalDate day = LocalDate.of(2024, 5, 15);
+
+        // When
+        repository.saveGreeting(entryId, day, "Первое");
+        repository.saveGreeting(entryId, day, "Второе");
+
+        // Then
+        assertEquals("Первое", repository.getGreetings(day).get(entryId));
+        assertTrue(repository.deleteGreetingsBefore(day.plusDays(1)) >= 1);
+        assertNull(repository.getGreetings(day).get(entryId));
+    }
+
+    @Test
+    void testNotificationsOn_Feb29InCommonYear() throws Exception {
+        // в невисокосный год 29 февраля отмечается 28-го
+        // Given
+        int leapling = repository.addUser(chatId, "Иван", LocalDate.of(2000, 2, 29));
+        int regular = repository.addUser(chatId, "Мария", LocalDate.of(1990, 2, 28));
+
+        // When
+        List<Integer> commonYear = entryIds(repository.getNotificationsOn(LocalDate.of(2023, 2, 28)));
+        List<Integer> leapYear = entryIds(repository.getNotificationsOn(LocalDate.of(2024, 2, 28)));
+
+        // Then
+        assertTrue(commonYear.containsAll(Arrays.asList(leapling, regular)));
+        assertTrue(leapYear.contains(regular));
+        assertFalse(leapYear.contains(leapling));
+    }
+
+    @Test
+    void testOutbox_ClaimRetryAndDeadLetter() throws Exception {
+        // Given: чат в своём поясе, день рождения в дату рассылки
+        repository.setChatTimeZone(chatId, ZoneId.of(TEST_ZONE));
+        int entryId = repository.addUser(chatId, "Иван", LocalDate.of(1990, 5, 15));
+        repository.addUser(otherChatId, "Мария", LocalDate.of(1990, 5, 15));
+
+        // When: заполняется только корзина TEST_ZONE, второй чат живёт по умолчанию в UTC
+        repository.fillOutbox(OUTBOX_DATE, Collections.singletonList(TEST_ZONE), "UTC");
+
+        // Then
+        List<Integer> claimed = claimOwn();
+        assertEquals(Collections.singletonList(entryId), claimed);
+        assertTrue(claimOwn().isEmpty(), "claimed row must not be handed out twice");
+
+        // повторное заполнение не создаёт дублей
+        repository.fillOutbox(OUTBOX_DATE, Collections.singletonList(TEST_ZONE), "UTC");
+        assertTrue(claimOwn().isEmpty());
+
+        // неудачная попытка возвращает строку в pending, после OUTBOX_MAX_ATTEMPTS - dead
+        for (int attempt = 1; attempt < DatabaseManager.OUTBOX_MAX_ATTEMPTS; attempt++) {
+            repository.markOutboxFailed(OUTBOX_DATE, NODE_ID, claimed);
+            assertEquals(claimed, claimOwn());
+        }
+        repository.markOutboxFailed(OUTBOX_DATE, NODE_ID, claimed);
+        assertTrue(claimOwn().isEmpty());
+        assertTrue(repository.getOutboxStats(OUTBOX_DATE).getDead() >= 1);
+    }
+
+    @Test
+    void testOutbox_DeliveredRowsAreDone() throws Exception {
+        // Given
+        repository.setChatTimeZone(chatId, ZoneId.of(TEST_ZONE));
+        repository.addUser(chatId, "Иван", LocalDate.of(1990, 5, 15));
+        repository.fillOutbox(OUTBOX_DATE, Collections.singletonList(TEST_ZONE), "UTC");
+
+        // When
+        List<Integer> claimed = claimOwn();
+        repository.markOutboxDelivered(OUTBOX_DATE, NODE_ID, claimed);
+
+        // Then
+        assertEquals(1, claimed.size());
+        assertTrue(claimOwn().isEmpty());
+        assertTrue(repository.getOutboxStats(OUTBOX_DATE).getDelivered() >= 1);
+    }
+
+    @Test
+    void testOutbox_OnlyClaimingNodeCanMark() throws Exception {
+        // Given
+        repository.setChatTimeZone(chatId, ZoneId.of(TEST_ZONE));
+        repository.addUser(chatId, "Иван", LocalDate.of(1990, 5, 15));
+        repository.fillOutbox(OUTBOX_DATE, Collections.singletonList(TEST_ZONE), "UTC");
+        List<Integer> claimed = claimOwn();
+
+        // When: узел, который строку не держит (например, его захват истёк), сообщает о неудаче
+        repository.markOutboxFailed(OUTBOX_DATE, "stale-node", claimed);
+
+        // Then: строка осталась за владельцем и в pending не вернулась
+        assertTrue(claimOwn().isEmpty());
+        repository.markOutboxFailed(OUTBOX_DATE, NODE_ID, claimed);
+        assertEquals(claimed, claimOwn());
+    }
+
+    // Забирает всё доступное за дату, но возвращает только строки своих чатов
+    private List<Integer> claimOwn() {
+        List<Integer> own = new ArrayList<>();
+        List<BirthdayNotification> batch;
+        while (!(batch = repository.claimOutboxBatch(OUTBOX_DATE, NODE_ID, 100)).isEmpty()) {
+            for (BirthdayNotification n : batch) {
+                if (n.getNotifyChatId() == chatId || n.getNotifyChatId() == otherChatId) {
+                    own.add(n.getEntryId());
+                }
+            }
+        }
+        return own;
+    }
+
+    private static List<String> names(List<BirthdayUser> users) {
+        return users.stream().map(BirthdayUser::getName).collect(Collectors.toList());
+    }
+
+    private List<Integer> entryIds(List<BirthdayNotification> notifications) {
+        return notifications.stream()
+                .filter(n -> n.getNotifyChatId() == chatId)
+                .map(BirthdayNotification::getEntryId)
+                .collect(Collectors.toList());
+    }
+}
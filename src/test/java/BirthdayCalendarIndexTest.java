@@ -0,0 +1,118 @@
+import org.junit.jupiter.api.Test;
+
+import java.time.LocalDate;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class BirthdayCalendarIndexTest {
+
+    @Test
+    void testFindOn() {
+        // Given
+        BirthdayCalendarIndex index = new BirthdayCalendarIndex();
+        index.put(1, 100L, "Иван", LocalDate.of(1990, 5, 15));
+        index.put(2, 200L, "Мария", LocalDate.of(1985, 5, 15));
+        index.put(3, 100L, "Пётр", LocalDate.of(1990, 5, 16));
+
+        // When
+        List<BirthdayUser> result = index.findOn(LocalDate.of(2024, 5, 15));
+
+        // Then
+        assertEquals(2, result.size());
+        assertEquals(3, index.size());
+    }
+
+    @Test
+    void testFindOn_Feb29InNonLeapYear() {
+        // Given
+        BirthdayCalendarIndex index = new BirthdayCalendarIndex();
+        index.put(1, 100L, "Високосный", LocalDate.of(2000, 2, 29));
+        index.put(2, 100L, "Обычный", LocalDate.of(1990, 2, 28));
+
+        // Then: в 2023 году 29 февраля нет, поздравляем 28-го
+        assertEquals(2, index.findOn(LocalDate.of(2023, 2, 28)).size());
+        assertEquals(1, index.findOn(LocalDate.of(2024, 2, 28)).size());
+        assertEquals(1, index.findOn(LocalDate.of(2024, 2, 29)).size());
+        assertEquals(LocalDate.of(2000, 2, 29), index.findOn(LocalDate.of(2024, 2, 29)).get(0).getBirthday());
+    }
+
+    @Test
+    void testFindInWindow_WrapsAcrossNewYear() {
+        // Given
+        BirthdayCalendarIndex index = new BirthdayCalendarIndex();
+        index.put(1, 100L, "Декабрь", LocalDate.of(1990, 12, 20));
+        index.put(2, 100L, "Январь", LocalDate.of(1990, 1, 5));
+        index.put(3, 100L, "Март", LocalDate.of(1990, 3, 1));
+        index.put(4, 200L, "Чужой", LocalDate.of(1990, 12, 25));
+
+        // When
+        List<BirthdayUser> result = index.findInWindow(100L, 1215, 115);
+
+        // Then: порядок как у ORDER BY birth_mmdd
+        assertEquals(2, result.size());
+        assertEquals("Январь", result.get(0).getName());
+        assertEquals("Декабрь", result.get(1).getName());
+    }
+
+    @Test
+    void testRemoveAndRename() {
+        // Given
+        BirthdayCalendarIndex index = new BirthdayCalendarIndex();
+        index.put(1, 100L, "Иван", LocalDate.of(1990, 5, 15));
+        index.put(2, 100L, "Мария", LocalDate.of(1990, 5, 15));
+
+        // When
+        assertTrue(index.remove(1));
+        assertFalse(index.remove(1));
+        index.renameChat(100L, "Анна");
+
+        // Then
+        List<BirthdayUser> result = index.findOn(LocalDate.of(2024, 5, 15));
+        assertEquals(1, result.size());
+        assertEquals("Анна", result.get(0).getName());
+    }
+
+    @Test
+    void testMoveChat() {
+        // Given
+        BirthdayCalendarIndex index = new BirthdayCalendarIndex();
+        index.put(1, 100L, "Иван", LocalDate.of(1990, 5, 15));
+        index.put(2, 100L, "Мария", LocalDate.of(1991, 6, 1));
+        index.put(3, 200L, "Пётр", LocalDate.of(1992, 5, 15));
+
+        // When
+        int moved = index.moveChat(100L, LocalDate.of(1995, 7, 7));
+
+        // Then
+        assertEquals(2, moved);
+        assertEquals(1, index.findOn(LocalDate.of(2024, 5, 15)).size());
+        assertEquals(2, index.findOn(LocalDate.of(2024, 7, 7)).size());
+        assertTrue(index.remove(2));
+        assertEquals(1, index.findOn(LocalDate.of(2024, 7, 7)).size());
+    }
+
+    @Test
+    void testHandOver_KeepsChangesMadeDuringReload() {
+        // Given: идёт перезагрузка, новая выборка из базы ещё не видит записи 2 и переименования
+        BirthdayCalendarIndex current = new BirthdayCalendarIndex();
+        current.put(1, 100L, "Иван", LocalDate.of(1990, 5, 15));
+        current.startRecording();
+        current.put(2, 100L, "Мария", LocalDate.of(1985, 5, 15));
+        current.renameChat(100L, "Семья");
+        BirthdayCalendarIndex fresh = new BirthdayCalendarIndex();
+        fresh.put(1, 100L, "Иван", LocalDate.of(1990, 5, 15));
+        fresh.put(3, 200L, "Пётр", LocalDate.of(1990, 5, 15));
+
+        // When: журнал переносится, а запись через старую ссылку приходит уже после подмены
+        current.handOver(fresh);
+        current.remove(1);
+
+        // Then
+        List<BirthdayUser> result = fresh.findOn(LocalDate.of(2024, 5, 15));
+        assertEquals(2, result.size());
+        assertEquals(2, fresh.size());
+        assertTrue(result.stream().anyMatch(user -> user.getId() == 2 && user.getName().equals("Семья")));
+        assertTrue(result.stream().anyMatch(user -> user.getId() == 3));
+    }
+}
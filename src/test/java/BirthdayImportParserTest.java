@@ -0,0 +1,93 @@
+import org.junit.jupiter.api.Test;
+
+import java.io.StringReader;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class BirthdayImportParserTest {
+
+    private static List<BirthdayEntry> readAll(BirthdayImportParser parser) {
+        List<BirthdayEntry> entries = new ArrayList<>();
+        parser.forEachRemaining(entries::add);
+        return entries;
+    }
+
+    @Test
+    void testCsv() {
+        // Given
+        String csv = "name;birthday\n"
+                + "Иван Иванов;15.05.1990\n"
+                + "\"Петров, Пётр\";1985-12-31\n"
+                + "\n"
+                + "Без даты;\n"
+                + "Мария;31.13.1990\n"
+                + "Анна,01.01.2000\n";
+
+        // When
+        BirthdayImportParser parser = new BirthdayImportParser(new StringReader(csv), 42L);
+        List<BirthdayEntry> entries = readAll(parser);
+
+        // Then: заголовок не ошибка, две битые строки отклонены
+        assertEquals(3, entries.size());
+        assertEquals("Иван Иванов", entries.get(0).getPersonName());
+        assertEquals(LocalDate.of(1990, 5, 15), entries.get(0).getBirthday());
+        assertEquals(42L, entries.get(0).getOwnerUserId());
+        assertEquals("Петров, Пётр", entries.get(1).getPersonName());
+        assertEquals("Анна", entries.get(2).getPersonName());
+        assertEquals(2, parser.getRejected());
+    }
+
+    @Test
+    void testVcard() {
+        // Given
+        String vcf = "BEGIN:VCARD\r\n"
+                + "VERSION:3.0\r\n"
+                + "FN:Иван Иванов\r\n"
+                + "BDAY;VALUE=date:1990-05-15\r\n"
+                + "END:VCARD\r\n"
+                + "BEGIN:VCARD\r\n"
+                + "FN:Без дня рождения\r\n"
+                + "END:VCARD\r\n"
+                + "BEGIN:VCARD\r\n"
+                + "FN:Мария\r\n"
+                + "BDAY:19851231\r\n"
+                + "END:VCARD\r\n"
+                + "BEGIN:VCARD\r\n"
+                + "FN:Только день\r\n"
+                + "BDAY:--0515\r\n"
+                + "END:VCARD\r\n";
+
+        // When
+        BirthdayImportParser parser = new BirthdayImportParser(new StringReader(vcf), 42L);
+        List<BirthdayEntry> entries = readAll(parser);
+
+        // Then
+        assertEquals(2, entries.size());
+        assertEquals("Иван Иванов", entries.get(0).getPersonName());
+        assertEquals(LocalDate.of(1985, 12, 31), entries.get(1).getBirthday());
+        assertEquals(1, parser.getRejected());
+    }
+
+    @Test
+    void testFormatOf() {
+        assertEquals(BirthdayImportParser.Format.VCARD, BirthdayImportParser.formatOf("contacts.VCF"));
+        assertEquals(BirthdayImportParser.Format.CSV, BirthdayImportParser.formatOf("list.csv"));
+        assertNull(BirthdayImportParser.formatOf("list.txt"));
+    }
+
+    @Test
+    void testFutureDateRejected() {
+        // Given
+        String csv = "Будущий;" + LocalDate.now().plusDays(1).format(java.time.format.DateTimeFormatter.ofPattern("dd.MM.yyyy"));
+
+        // When
+        BirthdayImportParser parser = new BirthdayImportParser(new StringReader(csv), 42L);
+
+        // Then
+        assertFalse(parser.hasNext());
+        assertEquals(1, parser.getRejected());
+    }
+}
@@ -12,4 +12,15 @@ class BirthdayNotificationTest {
         assertEquals(123456L, notification.getNotifyChatId());
         assertEquals("Иван Иванов", notification.getPersonName());
     }
+
+    @Test
+    void testNotificationWithEntryId() {
+        // When
+        BirthdayNotification notification = new BirthdayNotification(7, 123456L, "Иван Иванов");
+
+        // Then
+        assertEquals(7, notification.getEntryId());
+        assertEquals(123456L, notification.getNotifyChatId());
+        assertEquals(0, new BirthdayNotification(123456L, "Иван Иванов").getEntryId());
+    }
 }
@@ -1,5 +1,6 @@
 import com.pengrad.telegrambot.TelegramBot;
 import com.pengrad.telegrambot.request.SendMessage;
+import com.pengrad.telegrambot.response.SendResponse;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
@@ -8,13 +9,26 @@ import org.mockito.Mock;
 import org.mockito.junit.jupiter.MockitoExtension;
 
 import java.lang.reflect.Field;
-import java.lang.reflect.Method;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.LocalTime;
+import java.time.ZoneId;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
 import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.TimeUnit;
 
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
 import static org.mockito.ArgumentMatchers.*;
 import static org.mockito.Mockito.*;
 
@@ -32,6 +46,9 @@ class BirthdaySchedulerTest {
 
     private BirthdayScheduler birthdayScheduler;
 
+    private static final LocalDate DAY = LocalDate.of(2024, 5, 15);
+    private static final Instant UTC_MORNING = Instant.parse("2024-05-15T09:02:00Z");
+
     @BeforeEach
     void setUp() throws Exception {
         // Создаем реальный объект
@@ -48,34 +65,35 @@ class BirthdaySchedulerTest {
         // Act
         birthdayScheduler.start();
 
-        // Assert
+        // Assert: тик каждые 5 минут вместо одного запуска раз в сутки
         verify(scheduler).scheduleAtFixedRate(
                 any(Runnable.class),
                 anyLong(),
-                eq(24 * 60L),
-                eq(TimeUnit.MINUTES)
+                eq(TimeUnit.MINUTES.toMillis(5)),
+                eq(TimeUnit.MILLISECONDS)
         );
     }
 
     @Test
-    void testCheckBirthdays_WithNotifications() throws Exception {
+    void testCheckBirthdays_WithNotifications() {
         // Arrange
         List<BirthdayNotification> notifications = Arrays.asList(
                 new BirthdayNotification(123L, "Иван"),
                 new BirthdayNotification(456L, "Мария")
         );
 
-        when(database.getTodayNotifications()).thenReturn(notifications);
-
-        // Получаем приватный метод через рефлексию
-        Method checkBirthdaysMethod = BirthdayScheduler.class.getDeclaredMethod("checkBirthdays");
-        checkBirthdaysMethod.setAccessible(true);
+        when(database.claimOutboxBatch(any(), anyString(), anyInt()))
+                .thenReturn(notifications, Collections.emptyList());
+        when(database.getOutboxStats(any())).thenReturn(new DatabaseManager.OutboxStats(0, 0, 2, 0));
 
         // Act
-        checkBirthdaysMethod.invoke(birthdayScheduler);
+        birthdayScheduler.checkBirthdays(UTC_MORNING, ZoneOffset.UTC);
 
-        // Assert
-        verify(database, times(1)).getTodayNotifications();
+        // Assert: outbox заполняется и разбирается пачками; бот в моке ничего не доставил,
+        // поэтому обе строки отмечены неудачными и вернутся в pending
+        verify(database, times(1)).fillOutbox(eq(DAY), eq(Collections.singletonList("Z")), eq("Z"));
+        verify(database, times(2)).claimOutboxBatch(eq(DAY), anyString(), anyInt());
+        assertEquals(Arrays.asList(0, 0), flushedFailures());
 
         // Используем ArgumentCaptor для захвата SendMessage объектов
         ArgumentCaptor<SendMessage> sendMessageCaptor = ArgumentCaptor.forClass(SendMessage.class);
@@ -88,35 +106,259 @@ class BirthdaySchedulerTest {
     }
 
     @Test
-    void testCheckBirthdays_NoNotifications() throws Exception {
+    void testCheckBirthdays_UsesPregeneratedGreetings() {
         // Arrange
-        when(database.getTodayNotifications()).thenReturn(Collections.emptyList());
-
-        Method checkBirthdaysMethod = BirthdayScheduler.class.getDeclaredMethod("checkBirthdays");
-        checkBirthdaysMethod.setAccessible(true);
+        BirthdayNotification notification = new BirthdayNotification(7, 123L, "Иван");
+        when(database.getGreetings(any())).thenReturn(Collections.singletonMap(7, "Заготовленное поздравление"));
+        when(database.claimOutboxBatch(any(), anyString(), anyInt()))
+                .thenReturn(Collections.singletonList(notification), Collections.emptyList());
+        when(database.getOutboxStats(any())).thenReturn(new DatabaseManager.OutboxStats(0, 0, 1, 0));
 
         // Act
-        checkBirthdaysMethod.invoke(birthdayScheduler);
+        birthdayScheduler.checkBirthdays(UTC_MORNING, ZoneOffset.UTC);
 
         // Assert
-        verify(database, times(1)).getTodayNotifications();
+        ArgumentCaptor<SendMessage> sendMessageCaptor = ArgumentCaptor.forClass(SendMessage.class);
+        verify(bot).execute(sendMessageCaptor.capture());
+        String text = (String) sendMessageCaptor.getValue().getParameters().get("text");
+        assertTrue(text.contains("Иван"));
+        assertTrue(text.contains("Заготовленное поздравление"));
+    }
+
+    @Test
+    void testCheckBirthdays_ReportsDeliveryResults() {
+        // Arrange: первому чату доставлено, второму - нет
+        SendResponse ok = mock(SendResponse.class);
+        when(ok.isOk()).thenReturn(true);
+        SendResponse blocked = mock(SendResponse.class);
+        when(blocked.errorCode()).thenReturn(403);
+        when(bot.execute(any(SendMessage.class))).thenAnswer(invocation -> {
+            SendMessage request = invocation.getArgument(0);
+            return Long.valueOf(123L).equals(request.getParameters().get("chat_id")) ? ok : blocked;
+        });
+
+        List<BirthdayNotification> batch = Arrays.asList(
+                new BirthdayNotification(7, 123L, "Иван"),
+                new BirthdayNotification(8, 456L, "Мария"));
+        when(database.claimOutboxBatch(any(), anyString(), anyInt())).thenReturn(batch, Collections.emptyList());
+        when(database.getOutboxStats(any())).thenReturn(new DatabaseManager.OutboxStats(1, 0, 1, 0));
+
+        // Act
+        birthdayScheduler.checkBirthdays(UTC_MORNING, ZoneOffset.UTC);
+
+        // Assert: неудачная строка уходит в markOutboxFailed и будет забрана на следующем тике
+        verify(database, times(1)).markOutboxDelivered(any(), anyString(), eq(Collections.singletonList(7)));
+        verify(database, times(1)).markOutboxFailed(any(), anyString(), eq(Collections.singletonList(8)));
+    }
+
+    @Test
+    void testCheckBirthdays_FailuresWaitForNextTick() {
+        // Arrange: Telegram не отвечает, а outbox отдаёт вторую пачку уже после неудачи первой
+        when(database.claimOutboxBatch(any(), anyString(), anyInt())).thenReturn(
+                Collections.singletonList(new BirthdayNotification(7, 123L, "Иван")),
+                Collections.singletonList(new BirthdayNotification(8, 456L, "Мария")),
+                Collections.emptyList());
+        when(database.getOutboxStats(any())).thenReturn(new DatabaseManager.OutboxStats(0, 0, 2, 0));
+
+        // Act
+        birthdayScheduler.checkBirthdays(UTC_MORNING, ZoneOffset.UTC);
+
+        // Assert: неудачи отмечены один раз, после последнего захвата - в этом проходе их уже не забрать
+        verify(database, times(3)).claimOutboxBatch(eq(DAY), anyString(), anyInt());
+        verify(database, times(1)).markOutboxFailed(any(), anyString(), any());
+        assertEquals(new HashSet<>(Arrays.asList(7, 8)), new HashSet<>(flushedFailures()));
+    }
+
+    @Test
+    void testCheckBirthdays_FillsOnlyZonesWhereMorningStarted() {
+        // Arrange: 06:02 UTC - в Москве 09:02, в Токио уже 15:02, в Гонолулу ещё вечер 14 мая
+        when(database.getChatTimeZones()).thenReturn(new HashSet<>(
+                Arrays.asList("Europe/Moscow", "Pacific/Honolulu", "Asia/Tokyo", "Mars/Olympus")));
+        Instant now = Instant.parse("2024-05-15T06:02:00Z");
+
+        // Act
+        birthdayScheduler.checkBirthdays(now, ZoneOffset.UTC);
+
+        // Assert: outbox заполняется только для Москвы, а разбирается за все идущие сейчас даты
+        verify(database, times(1)).fillOutbox(any(), any(), any());
+        verify(database).fillOutbox(eq(DAY), eq(Collections.singletonList("Europe/Moscow")), eq("Z"));
+        verify(database).claimOutboxBatch(eq(DAY), anyString(), anyInt());
+        verify(database).claimOutboxBatch(eq(DAY.minusDays(1)), anyString(), anyInt());
         verify(bot, never()).execute(any(SendMessage.class));
     }
 
     @Test
-    void testCheckBirthdays_Exception() throws Exception {
+    void testCheckBirthdays_SendsOneDigestPerChat() {
+        // Arrange: полная пачка обрывается посреди строк чата 2, продолжение - в следующей пачке
+        List<BirthdayNotification> first = new ArrayList<>();
+        for (int i = 1; i <= 99; i++) {
+            first.add(new BirthdayNotification(i, 1L, "Гость " + i));
+        }
+        first.add(new BirthdayNotification(100, 2L, "Иван"));
+        List<BirthdayNotification> second = Collections.singletonList(new BirthdayNotification(101, 2L, "Мария"));
+        when(database.claimOutboxBatch(any(), anyString(), anyInt()))
+                .thenReturn(first, second, Collections.emptyList());
+        when(database.getOutboxStats(any())).thenReturn(new DatabaseManager.OutboxStats(101, 0, 0, 0));
+
+        // Act
+        birthdayScheduler.checkBirthdays(UTC_MORNING, ZoneOffset.UTC);
+
+        // Assert: вызовов API столько же, сколько чатов, а не записей
+        ArgumentCaptor<SendMessage> sendMessageCaptor = ArgumentCaptor.forClass(SendMessage.class);
+        verify(bot, times(2)).execute(sendMessageCaptor.capture());
+        String secondChatText = sendMessageCaptor.getAllValues().stream()
+                .filter(m -> Long.valueOf(2L).equals(m.getParameters().get("chat_id")))
+                .map(m -> (String) m.getParameters().get("text"))
+                .findFirst().orElse("");
+        assertTrue(secondChatText.contains("Иван"));
+        assertTrue(secondChatText.contains("Мария"));
+        assertEquals(101, flushedFailures().size());
+    }
+
+    @Test
+    void testBuildDigests_GroupsByChat() {
+        // Arrange
+        List<BirthdayNotification> notifications = Arrays.asList(
+                new BirthdayNotification(7, 123L, "Иван"),
+                new BirthdayNotification(8, 123L, "Мария"),
+                new BirthdayNotification(9, 456L, "Пётр"));
+
+        // Act
+        List<BirthdayScheduler.Digest> digests = BirthdayScheduler.buildDigests(notifications,
+                Collections.singletonMap(8, "Заготовленное поздравление"));
+
+        // Assert
+        assertEquals(2, digests.size());
+        assertEquals(123L, digests.get(0).getChatId());
+        assertEquals(Arrays.asList(7, 8), digests.get(0).getEntryIds());
+        assertTrue(digests.get(0).getText().contains("Иван"));
+        assertTrue(digests.get(0).getText().contains("Заготовленное поздравление"));
+        assertTrue(digests.get(1).getText().startsWith("Сегодня день рождения у Пётр!"));
+    }
+
+    @Test
+    void testBuildDigests_SplitsAtMessageLengthLimit() {
+        // Arrange
+        StringBuilder longGreeting = new StringBuilder();
+        while (longGreeting.length() < 2000) {
+            longGreeting.append("С днём рождения! ");
+        }
+        Map<Integer, String> greetings = new HashMap<>();
+        List<BirthdayNotification> notifications = new ArrayList<>();
+        for (int i = 1; i <= 3; i++) {
+            notifications.add(new BirthdayNotification(i, 123L, "Гость " + i));
+            greetings.put(i, longGreeting.toString());
+        }
+
+        // Act
+        List<BirthdayScheduler.Digest> digests = BirthdayScheduler.buildDigests(notifications, greetings);
+
+        // Assert: части делятся по записям и помещаются в лимит
+        assertEquals(2, digests.size());
+        assertEquals(Arrays.asList(1, 2), digests.get(0).getEntryIds());
+        assertEquals(Collections.singletonList(3), digests.get(1).getEntryIds());
+        for (BirthdayScheduler.Digest digest : digests) {
+            assertTrue(digest.getText().length() <= BirthdayScheduler.MAX_MESSAGE_LENGTH);
+        }
+    }
+
+    @Test
+    void testTruncate_DoesNotSplitSurrogatePair() {
+        // Arrange: граница обрезки приходится на середину эмодзи
+        StringBuilder text = new StringBuilder();
+        while (text.length() < BirthdayScheduler.MAX_MESSAGE_LENGTH - 2) {
+            text.append('a');
+        }
+        text.append("🎂🎂");
+
+        // Act
+        String truncated = BirthdayScheduler.truncate(text.toString());
+
+        // Assert
+        assertTrue(truncated.length() <= BirthdayScheduler.MAX_MESSAGE_LENGTH);
+        assertTrue(truncated.endsWith("a…"));
+        assertFalse(Character.isHighSurrogate(truncated.charAt(truncated.length() - 2)));
+    }
+
+    @Test
+    void testIsNotifyWindow() {
+        assertFalse(BirthdayScheduler.isNotifyWindow(LocalTime.of(8, 59)));
+        assertTrue(BirthdayScheduler.isNotifyWindow(LocalTime.of(9, 0)));
+        assertTrue(BirthdayScheduler.isNotifyWindow(LocalTime.of(9, 55)));
+        assertFalse(BirthdayScheduler.isNotifyWindow(LocalTime.of(10, 0)));
+    }
+
+    @Test
+    void testPregenerationDates_CoverZonesAheadOfServer() {
+        // Arrange: 21:00 по UTC - в Киритимати (+14) уже 11:00 следующего дня, в Гонолулу (-10) - 11:00 того же
+        Instant evening = Instant.parse("2024-05-15T21:00:00Z");
+
+        // Act
+        Set<LocalDate> dates = BirthdayScheduler.pregenerationDates(Arrays.asList(
+                evening.atZone(ZoneOffset.UTC),
+                evening.atZone(ZoneId.of("Pacific/Kiritimati")),
+                evening.atZone(ZoneId.of("Pacific/Honolulu")),
+                Instant.parse("2024-05-15T03:00:00Z").atZone(ZoneOffset.UTC)));
+
+        // Assert: утро 15-го ещё впереди только у последнего пояса
+        assertEquals(new TreeSet<>(Arrays.asList(DAY, DAY.plusDays(1), DAY.plusDays(2))), dates);
+    }
+
+    @Test
+    void testPregenerateGreetings_CleansUpFromEarliestLocalDate() throws Exception {
         // Arrange
-        when(database.getTodayNotifications()).thenThrow(new RuntimeException("DB error"));
+        GreetingPregenerator pregenerator = mock(GreetingPregenerator.class);
+        BirthdayScheduler withPregenerator = new BirthdayScheduler(bot, database,
+                mock(NotificationDispatcher.class), pregenerator);
+        when(database.getChatTimeZones()).thenReturn(
+                new HashSet<>(Arrays.asList("Pacific/Kiritimati", "Pacific/Honolulu")));
+
+        // Act
+        withPregenerator.pregenerateGreetings(Instant.parse("2024-05-15T21:00:00Z"), ZoneOffset.UTC);
+
+        // Assert: в Гонолулу ещё 15-е - его заготовки не трогаем; Киритимати нужна заготовка на 17-е
+        verify(database).deleteGreetingsBefore(DAY);
+        verify(pregenerator).pregenerate(DAY.plusDays(1));
+        verify(pregenerator).pregenerate(DAY.plusDays(2));
+        verifyNoMoreInteractions(pregenerator);
+        withPregenerator.stop();
+    }
+
+    @Test
+    void testNotificationText_FallbackOnMiss() {
+        // Act
+        String text = BirthdayScheduler.notificationText(new BirthdayNotification(7, 123L, "Иван"), null);
+
+        // Assert
+        assertTrue(text.startsWith("Сегодня день рождения у Иван!"));
+        assertTrue(text.length() > "Сегодня день рождения у Иван! 🎂\n".length());
+    }
 
-        Method checkBirthdaysMethod = BirthdayScheduler.class.getDeclaredMethod("checkBirthdays");
-        checkBirthdaysMethod.setAccessible(true);
+    @Test
+    void testCheckBirthdays_NoNotifications() {
+        // Arrange: свободных заданий нет - их уже разобрали другие узлы или дней рождения нет
+        when(database.claimOutboxBatch(any(), anyString(), anyInt())).thenReturn(Collections.emptyList());
 
         // Act
-        checkBirthdaysMethod.invoke(birthdayScheduler);
+        birthdayScheduler.checkBirthdays(UTC_MORNING, ZoneOffset.UTC);
+
+        // Assert
+        verify(database, times(1)).claimOutboxBatch(any(), anyString(), anyInt());
+        verify(database, never()).markOutboxDelivered(any(), any(), any());
+        verify(bot, never()).execute(any(SendMessage.class));
+    }
+
+    @Test
+    void testCheckBirthdays_Exception() {
+        // Arrange
+        when(database.claimOutboxBatch(any(), anyString(), anyInt())).thenThrow(new RuntimeException("DB error"));
+
+        // Act
+        birthdayScheduler.checkBirthdays(UTC_MORNING, ZoneOffset.UTC);
 
         // Assert
         // Исключение должно быть поймано внутри метода
-        verify(database, times(1)).getTodayNotifications();
+        verify(database, times(1)).claimOutboxBatch(any(), anyString(), anyInt());
         verify(bot, never()).execute(any(SendMessage.class));
     }
 
@@ -136,4 +378,14 @@ class BirthdaySchedulerTest {
             Thread.currentThread().interrupt();
         }
     }
+
+    // Итоги отправки сбрасываются несколькими пачками, порядок между ними зависит от воркеров
+    @SuppressWarnings("unchecked")
+    private List<Integer> flushedFailures() {
+        ArgumentCaptor<List<Integer>> captor = ArgumentCaptor.forClass((Class) List.class);
+        verify(database, atLeastOnce()).markOutboxFailed(any(), anyString(), captor.capture());
+        List<Integer> ids = new ArrayList<>();
+        captor.getAllValues().forEach(ids::addAll);
+        return ids;
+    }
 }
@@ -1,9 +1,34 @@
+import com.pengrad.telegrambot.UpdatesListener;
+import com.pengrad.telegrambot.model.Update;
+import com.sun.net.httpserver.HttpServer;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
 import org.mockito.junit.jupiter.MockitoExtension;
 
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.time.Duration;
+
+import java.time.LocalDate;
+import java.time.ZoneId;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
 import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
 
 @ExtendWith(MockitoExtension.class)
 class BotTest {
@@ -73,4 +98,168 @@ class BotTest {
         assertTrue(Bot.isValidDate(date2));
         assertTrue(Bot.isValidDate(date3));
     }
+
+    @Test
+    void testCommandKey() {
+        assertEquals("/allbirthdays", Bot.commandKey("/allBirthdays", null));
+        assertEquals("unknown_command", Bot.commandKey("/whatever", null));
+        assertEquals("text", Bot.commandKey("Иван", null));
+        assertEquals("waiting_for_date", Bot.commandKey("15.05.1990", ConversationState.WAITING_FOR_DATE));
+    }
+
+    @Test
+    void testFormatUserList() {
+        // Arrange
+        BirthdayUser user = new BirthdayUser(7, 123L, "Иван", LocalDate.of(1990, 5, 15));
+        user.setOrdinal(2);
+
+        // Act
+        String text = Bot.formatUserList(Arrays.asList(user));
+
+        // Assert
+        assertEquals("Пользователи в базе:\n2. Иван - 15.05.1990\n", text);
+    }
+
+    @Test
+    void testListedIds_MergesShownPages() {
+        // Arrange
+        BirthdayUser third = new BirthdayUser(70, 123L, "Иван", LocalDate.of(1990, 5, 15));
+        third.setOrdinal(3);
+
+        // Act
+        Map<Integer, Integer> ids = Bot.listedIds(Collections.singletonList(third), Collections.singletonMap(1, 42));
+
+        // Assert
+        assertEquals(Integer.valueOf(42), ids.get(1));
+        assertEquals(Integer.valueOf(70), ids.get(3));
+        assertEquals(2, ids.size());
+    }
+
+    @Test
+    void testPageCursor_RoundTrip() {
+        // Arrange
+        Bot.PageCursor cursor = new Bot.PageCursor(true, 1042, 26);
+
+        // Act
+        String data = cursor.toCallbackData();
+        Bot.PageCursor parsed = Bot.PageCursor.parse(data);
+
+        // Assert: callback_data у Telegram ограничена 64 байтами
+        assertEquals("users:next:1042:26", data);
+        assertTrue(data.length() <= 64);
+        assertTrue(parsed.isForward());
+        assertEquals(1042, parsed.getBoundId());
+        assertEquals(26, parsed.getOrdinal());
+    }
+
+    @Test
+    void testPageCursor_RejectsForeignData() {
+        assertNull(Bot.PageCursor.parse(null));
+        assertNull(Bot.PageCursor.parse("other:next:1:1"));
+        assertNull(Bot.PageCursor.parse("users:up:1:1"));
+        assertNull(Bot.PageCursor.parse("users:prev:x:1"));
+    }
+
+    @Test
+    void testConfirmEnqueued_StopsAtFirstRejectedUpdate() {
+        // Arrange: третий апдейт в очередь не помещается
+        Update first = mock(Update.class);
+        Update second = mock(Update.class);
+        Update third = mock(Update.class);
+        Update fourth = mock(Update.class);
+        when(first.updateId()).thenReturn(100);
+        when(second.updateId()).thenReturn(101);
+        List<Update> accepted = new ArrayList<>();
+
+        // Act
+        int confirmed = Bot.confirmEnqueued(Arrays.asList(first, second, third, fourth),
+                update -> update != third && accepted.add(update));
+
+        // Assert: подтверждены только первые два, остальные придут повторно
+        assertEquals(101, confirmed);
+        assertEquals(Arrays.asList(first, second), accepted);
+    }
+
+    @Test
+    void testConfirmEnqueued_AllOrNone() {
+        // Arrange
+        Update update = mock(Update.class);
+        when(update.updateId()).thenReturn(100);
+
+        // Act & Assert
+        assertEquals(UpdatesListener.CONFIRMED_UPDATES_ALL,
+                Bot.confirmEnqueued(Collections.singletonList(update), u -> true));
+        assertEquals(UpdatesListener.CONFIRMED_UPDATES_NONE,
+                Bot.confirmEnqueued(Collections.singletonList(update), u -> false));
+    }
+
+    @Test
+    void testParseTimeZone() {
+        // Act & Assert
+        assertEquals(ZoneId.of("Europe/Moscow"), Bot.parseTimeZone(" Europe/Moscow "));
+        assertEquals(ZoneOffset.ofHours(5), Bot.parseTimeZone("+05:00"));
+        assertNull(Bot.parseTimeZone("Moscow"));
+    }
+
+    @Test
+    void testOpenImportFile_LimitsSizeWithoutContentLength() throws Exception {
+        // Arrange: сервер отдаёт 2 КБ кусками, без Content-Length
+        HttpServer server = startFileServer(2048, 0);
+        try {
+            // Act
+            InputStream body = Bot.openImportFile(HttpClient.newHttpClient(), fileUri(server), 1024,
+                    Duration.ofSeconds(10));
+
+            // Assert
+            assertThrows(Bot.ImportFileTooLargeException.class, body::readAllBytes);
+            body.close();
+        } finally {
+            server.stop(0);
+        }
+    }
+
+    @Test
+    void testOpenImportFile_DeadlineCoversBody() throws Exception {
+        // Arrange: заголовки приходят сразу, а тело - медленнее срока
+        HttpServer server = startFileServer(16, 5_000);
+        try {
+            InputStream body = Bot.openImportFile(HttpClient.newHttpClient(), fileUri(server), 1024,
+                    Duration.ofMillis(300));
+
+            // Act
+            long start = System.nanoTime();
+            assertThrows(IOException.class, body::readAllBytes);
+
+            // Assert
+            assertTrue(System.nanoTime() - start < 3_000_000_000L);
+        } finally {
+            server.stop(0);
+        }
+    }
+
+    // На GET /file отдаёт первый байт, ждёт pauseMillis и дописывает остальное, всего size байт
+    private static HttpServer startFileServer(int size, long pauseMillis) throws IOException {
+        HttpServer server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        server.createContext("/file", exchange -> {
+            exchange.sendResponseHeaders(200, 0);
+            try (OutputStream out = exchange.getResponseBody()) {
+                out.write('x');
+                out.flush();
+                Thread.sleep(pauseMillis);
+                for (int i = 1; i < size; i++) {
+                    out.write('x');
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            } catch (IOException ignored) {
+                // клиент закрыл соединение
+            }
+        });
+        server.start();
+        return server;
+    }
+
+    private static URI fileUri(HttpServer server) {
+        return URI.create("http://127.0.0.1:" + server.getAddress().getPort() + "/file");
+    }
 }
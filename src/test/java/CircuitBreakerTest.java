@@ -0,0 +1,139 @@
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class CircuitBreakerTest {
+
+    private final AtomicLong now = new AtomicLong();
+
+    // окно 10 вызовов, порог 50%, медленный вызов - от 1 секунды, размыкание на 5 секунд, 2 пробы
+    private CircuitBreaker newBreaker() {
+        return new CircuitBreaker("test", 10, 0.5, 0.5, 1_000, 5_000, 2, now::get);
+    }
+
+    @Test
+    void testOpensOnFailureRate() {
+        // Given
+        CircuitBreaker breaker = newBreaker();
+
+        // When - 3 успеха и 2 ошибки: вызовов меньше минимума (половина окна)
+        for (int i = 0; i < 3; i++) {
+            breaker.onSuccess(0);
+        }
+        breaker.onError(0);
+        assertEquals(CircuitBreaker.State.CLOSED, breaker.getState());
+        breaker.onError(0);
+
+        // Then - 2 ошибки из 5 = 40%, третья - 50%
+        assertEquals(CircuitBreaker.State.CLOSED, breaker.getState());
+        breaker.onError(0);
+        assertEquals(CircuitBreaker.State.OPEN, breaker.getState());
+        assertFalse(breaker.tryAcquirePermission());
+        assertEquals(1, breaker.getNotPermitted());
+        assertEquals(1, breaker.getTransitions(CircuitBreaker.State.OPEN));
+    }
+
+    @Test
+    void testOpensOnSlowCalls() {
+        // Given
+        CircuitBreaker breaker = newBreaker();
+        long slow = TimeUnit.SECONDS.toNanos(2);
+
+        // When
+        for (int i = 0; i < 5; i++) {
+            breaker.onSuccess(slow);
+        }
+
+        // Then
+        assertEquals(CircuitBreaker.State.OPEN, breaker.getState());
+    }
+
+    @Test
+    void testRateIsMeasuredOverWindow() {
+        // Given - 5 успехов, 4 ошибки, 1 успех: 40%, автомат замкнут
+        CircuitBreaker breaker = newBreaker();
+        for (int i = 0; i < 5; i++) {
+            breaker.onSuccess(0);
+        }
+        for (int i = 0; i < 4; i++) {
+            breaker.onError(0);
+        }
+        breaker.onSuccess(0);
+
+        // When - 10 успехов вытесняют старые ошибки из окна
+        for (int i = 0; i < 10; i++) {
+            breaker.onSuccess(0);
+        }
+        for (int i = 0; i < 4; i++) {
+            breaker.onError(0);
+        }
+
+        // Then - считаются только последние 10 вызовов: 4 ошибки - ещё нет, 5 - уже да
+        assertEquals(CircuitBreaker.State.CLOSED, breaker.getState());
+        breaker.onError(0);
+        assertEquals(CircuitBreaker.State.OPEN, breaker.getState());
+    }
+
+    @Test
+    void testHalfOpenRecovers() {
+        // Given
+        CircuitBreaker breaker = newBreaker();
+        for (int i = 0; i < 5; i++) {
+            breaker.onError(0);
+        }
+        assertEquals(CircuitBreaker.State.OPEN, breaker.getState());
+
+        // When - прошло время размыкания
+        now.addAndGet(TimeUnit.SECONDS.toNanos(5));
+
+        // Then - пропускаются ровно 2 пробы, после их успеха автомат замыкается
+        assertTrue(breaker.tryAcquirePermission());
+        assertEquals(CircuitBreaker.State.HALF_OPEN, breaker.getState());
+        assertTrue(breaker.tryAcquirePermission());
+        assertFalse(breaker.tryAcquirePermission());
+        breaker.onSuccess(0);
+        breaker.onSuccess(0);
+        assertEquals(CircuitBreaker.State.CLOSED, breaker.getState());
+        assertTrue(breaker.tryAcquirePermission());
+        assertEquals(1, breaker.getTransitions(CircuitBreaker.State.CLOSED));
+    }
+
+    @Test
+    void testHalfOpenFailureReopens() {
+        // Given
+        CircuitBreaker breaker = newBreaker();
+        for (int i = 0; i < 5; i++) {
+            breaker.onError(0);
+        }
+        now.addAndGet(TimeUnit.SECONDS.toNanos(5));
+        assertTrue(breaker.tryAcquirePermission());
+
+        // When
+        breaker.onError(0);
+
+        // Then - снова разомкнут и ждёт полный интервал
+        assertEquals(CircuitBreaker.State.OPEN, breaker.getState());
+        assertFalse(breaker.tryAcquirePermission());
+        assertEquals(2, breaker.getTransitions(CircuitBreaker.State.OPEN));
+    }
+
+    @Test
+    void testBulkheadRejectsOverLimit() {
+        // Given
+        Bulkhead bulkhead = new Bulkhead(2);
+
+        // When
+        assertTrue(bulkhead.tryAcquire());
+        assertTrue(bulkhead.tryAcquire());
+        boolean third = bulkhead.tryAcquire();
+        bulkhead.release();
+
+        // Then
+        assertFalse(third);
+        assertEquals(1, bulkhead.getRejected());
+        assertEquals(1, bulkhead.getInFlight());
+    }
+}
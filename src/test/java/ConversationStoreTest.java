@@ -0,0 +1,109 @@
+import org.junit.jupiter.api.Test;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ConversationStoreTest {
+
+    @Test
+    void testPutGetRemove() {
+        // Given
+        ConversationStore store = new ConversationStore();
+
+        // When
+        store.put(100L, ConversationState.WAITING_FOR_NAME);
+        store.put(200L, ConversationState.WAITING_FOR_DATE, "Иван");
+
+        // Then
+        assertEquals(ConversationState.WAITING_FOR_NAME, store.getState(100L));
+        assertEquals("Иван", store.get(200L).getPendingName());
+        assertNull(store.get(300L));
+
+        store.remove(100L);
+        assertNull(store.getState(100L));
+        assertEquals(1, store.size());
+    }
+
+    @Test
+    void testListingSnapshot() {
+        // Given: пользователю показали записи с id 42 и 57 под номерами 1 и 2
+        ConversationStore store = new ConversationStore();
+        Map<Integer, Integer> listed = new HashMap<>();
+        listed.put(1, 42);
+        listed.put(2, 57);
+
+        // When
+        store.putListing(100L, ConversationState.WAITING_FOR_ID_TO_DELETE, listed);
+        listed.put(3, 99);
+
+        // Then: в диалоге снимок на момент показа
+        assertEquals(Integer.valueOf(57), store.get(100L).getListedId(2));
+        assertNull(store.get(100L).getListedId(3));
+        assertNull(store.get(200L));
+    }
+
+    @Test
+    void testIdleConversationsExpire() {
+        // Given
+        AtomicLong clock = new AtomicLong(1_000);
+        ConversationStore store = new ConversationStore(60_000, 1_000, clock::get);
+        store.put(100L, ConversationState.WAITING_FOR_NAME);
+        store.put(200L, ConversationState.WAITING_FOR_MONTH);
+
+        // When
+        clock.addAndGet(30_000);
+        store.put(200L, ConversationState.WAITING_FOR_MONTH);
+        clock.addAndGet(30_000);
+
+        // Then
+        assertNull(store.get(100L));
+        assertEquals(ConversationState.WAITING_FOR_MONTH, store.getState(200L));
+        clock.addAndGet(30_000);
+        assertEquals(1, store.evictExpired());
+        assertEquals(0, store.size());
+    }
+
+    @Test
+    void testSizeIsCapped() {
+        // Given
+        AtomicLong clock = new AtomicLong();
+        ConversationStore store = new ConversationStore(Long.MAX_VALUE / 2, 64, clock::get);
+
+        // When
+        for (long chatId = 1; chatId <= 10_000; chatId++) {
+            clock.incrementAndGet();
+            store.put(chatId, ConversationState.WAITING_FOR_NAME);
+        }
+
+        // Then: свежие диалоги на месте, общий размер ограничен
+        assertTrue(store.size() <= 64);
+        assertEquals(ConversationState.WAITING_FOR_NAME, store.getState(10_000L));
+    }
+
+    @Test
+    void testManyKeysSurviveRemovals() {
+        // Given
+        ConversationStore store = new ConversationStore();
+        for (long chatId = -500; chatId <= 500; chatId++) {
+            store.put(chatId, ConversationState.WAITING_FOR_DATE, "n" + chatId);
+        }
+
+        // When: удаляем каждый третий
+        for (long chatId = -500; chatId <= 500; chatId += 3) {
+            store.remove(chatId);
+        }
+
+        // Then
+        for (long chatId = -500; chatId <= 500; chatId++) {
+            boolean removed = (chatId + 500) % 3 == 0;
+            if (removed) {
+                assertNull(store.get(chatId));
+            } else {
+                assertEquals("n" + chatId, store.get(chatId).getPendingName());
+            }
+        }
+    }
+}
@@ -7,13 +7,23 @@ import org.mockito.InjectMocks;
 import org.mockito.Mock;
 import org.mockito.junit.jupiter.MockitoExtension;
 
+import java.lang.reflect.Field;
 import java.sql.*;
 import java.time.LocalDate;
+import java.time.ZoneId;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.List;
+import java.util.Map;
 
 import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
 import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.contains;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.ArgumentMatchers.startsWith;
 import static org.mockito.Mockito.*;
 
 @ExtendWith(MockitoExtension.class)
@@ -70,8 +80,8 @@ class DatabaseManagerTest {
         // Act & Assert
         assertDoesNotThrow(() -> databaseManager.createUsersTable());
 
-        // Verify
-        verify(statement, times(1)).execute(anyString());
+        // Verify: таблица, колонка birth_mmdd, её заполнение, три индекса и синхронизация последовательности id
+        verify(statement, times(7)).execute(anyString());
     }
 
     @Test
@@ -88,51 +98,113 @@ class DatabaseManagerTest {
     @Test
     void testAddUser_Success() throws SQLException {
         // Arrange
-        int id = 1;
         Long telegramId = 12345L;
         String name = "John Doe";
         LocalDate birthday = LocalDate.of(1990, 1, 1);
 
         when(dataSource.getConnection()).thenReturn(connection);
-        when(connection.prepareStatement(anyString())).thenReturn(preparedStatement);
+        when(connection.prepareStatement(anyString(), any(String[].class))).thenReturn(preparedStatement);
         when(preparedStatement.executeUpdate()).thenReturn(1);
+        when(preparedStatement.getGeneratedKeys()).thenReturn(resultSet);
+        when(resultSet.next()).thenReturn(true);
+        when(resultSet.getInt(1)).thenReturn(7);
 
         // Act
-        boolean result = databaseManager.addUser(id, telegramId, name, birthday);
+        int result = databaseManager.addUser(telegramId, name, birthday);
 
-        // Assert
-        assertTrue(result);
-        verify(preparedStatement, times(1)).setInt(1, id);
-        verify(preparedStatement, times(1)).setLong(2, telegramId);
-        verify(preparedStatement, times(1)).setString(3, name);
-        verify(preparedStatement, times(1)).setDate(4, Date.valueOf(birthday));
+        // Assert: id выдала база, а не приложение
+        assertEquals(7, result);
+        verify(preparedStatement, times(1)).setLong(1, telegramId);
+        verify(preparedStatement, times(1)).setString(2, name);
+        verify(preparedStatement, times(1)).setDate(3, Date.valueOf(birthday));
+        verify(preparedStatement, times(1)).setInt(4, 101);
+        verify(preparedStatement, never()).setInt(eq(1), anyInt());
     }
 
     @Test
-    void testAddUser_DuplicateKey() throws SQLException {
+    void testReadReplica_ReadsFromReplicaUntilChatWrites() throws Exception {
         // Arrange
-        int id = 1;
-        Long telegramId = 12345L;
-        String name = "John Doe";
-        LocalDate birthday = LocalDate.of(1990, 1, 1);
+        HikariDataSource replica = mock(HikariDataSource.class);
+        Connection replicaConnection = mock(Connection.class);
+        Field routerField = DatabaseManager.class.getDeclaredField("readReplica");
+        routerField.setAccessible(true);
+        routerField.set(databaseManager, new ReadReplicaRouter(replica, 60_000));
+
+        when(replica.getConnection()).thenReturn(replicaConnection);
+        when(replicaConnection.prepareStatement(anyString())).thenReturn(preparedStatement);
+        when(dataSource.getConnection()).thenReturn(connection);
+        when(connection.prepareStatement(anyString())).thenReturn(preparedStatement);
+        when(connection.prepareStatement(anyString(), any(String[].class))).thenReturn(preparedStatement);
+        when(preparedStatement.executeQuery()).thenReturn(resultSet);
+        when(preparedStatement.getGeneratedKeys()).thenReturn(resultSet);
+        when(resultSet.next()).thenReturn(true);
 
-        SQLException duplicateException = new SQLException("Duplicate key", "23505");
+        // Act & Assert: чтение чата идёт на реплику
+        databaseManager.getUsersNum(12345L);
+        verify(replica, times(1)).getConnection();
+        verify(dataSource, never()).getConnection();
+
+        // после записи чат читает из основной базы, другие чаты - по-прежнему с реплики
+        databaseManager.addUser(12345L, "John Doe", LocalDate.of(1990, 1, 1));
+        databaseManager.getUsersNum(12345L);
+        databaseManager.getUsersNum(67890L);
+        verify(dataSource, times(2)).getConnection();
+        verify(replica, times(2)).getConnection();
+    }
 
+    @Test
+    void testWriteBatch_OneTransactionPerFlush() throws Exception {
+        // Arrange
         when(dataSource.getConnection()).thenReturn(connection);
+        when(connection.prepareStatement(anyString(), any(String[].class))).thenReturn(preparedStatement);
         when(connection.prepareStatement(anyString())).thenReturn(preparedStatement);
-        when(preparedStatement.executeUpdate()).thenThrow(duplicateException);
+        when(preparedStatement.executeBatch()).thenReturn(new int[]{1, 1}, new int[]{3});
+        when(preparedStatement.getGeneratedKeys()).thenReturn(resultSet);
+        when(resultSet.next()).thenReturn(true, true);
+        when(resultSet.getInt(1)).thenReturn(7, 8);
+
+        List<WriteBehindBuffer.Write> writes = Arrays.asList(
+                WriteBehindBuffer.Write.addUser(12345L, "John Doe", LocalDate.of(1990, 1, 1)),
+                WriteBehindBuffer.Write.addUser(12345L, "Jane Smith", LocalDate.of(1991, 2, 2)),
+                WriteBehindBuffer.Write.updateName(67890L, "Bob"));
 
         // Act
-        boolean result = databaseManager.addUser(id, telegramId, name, birthday);
+        databaseManager.writeBatch(writes);
+
+        // Assert: вставки одним executeBatch, обновление - вторым, коммит один
+        assertEquals(7, writes.get(0).getResult().get());
+        assertEquals(8, writes.get(1).getResult().get());
+        assertEquals(3, writes.get(2).getResult().get());
+        verify(preparedStatement, times(3)).addBatch();
+        verify(preparedStatement, times(2)).executeBatch();
+        verify(connection, times(1)).commit();
+        verify(preparedStatement, never()).executeUpdate();
+    }
+
+    @Test
+    void testWriteBatch_FallsBackToSingleWritesOnFailure() throws Exception {
+        // Arrange: пачка упала на дубликате, по одной - второй апдейт проходит
+        when(dataSource.getConnection()).thenReturn(connection);
+        when(connection.prepareStatement(anyString())).thenReturn(preparedStatement);
+        when(preparedStatement.executeBatch()).thenThrow(new BatchUpdateException());
+        when(preparedStatement.executeUpdate()).thenReturn(0, 1);
+
+        List<WriteBehindBuffer.Write> writes = Arrays.asList(
+                WriteBehindBuffer.Write.updateName(12345L, "John Doe"),
+                WriteBehindBuffer.Write.updateName(67890L, "Jane Smith"));
+
+        // Act
+        databaseManager.writeBatch(writes);
 
         // Assert
-        assertFalse(result);
+        verify(connection).rollback();
+        assertEquals(0, writes.get(0).getResult().get());
+        assertEquals(1, writes.get(1).getResult().get());
     }
 
     @Test
     void testAddUser_OtherSQLException() throws SQLException {
         // Arrange
-        int id = 1;
         Long telegramId = 12345L;
         String name = "John Doe";
         LocalDate birthday = LocalDate.of(1990, 1, 1);
@@ -140,12 +212,12 @@ class DatabaseManagerTest {
         SQLException otherException = new SQLException("Other error", "12345");
 
         when(dataSource.getConnection()).thenReturn(connection);
-        when(connection.prepareStatement(anyString())).thenReturn(preparedStatement);
+        when(connection.prepareStatement(anyString(), any(String[].class))).thenReturn(preparedStatement);
         when(preparedStatement.executeUpdate()).thenThrow(otherException);
 
         // Act & Assert
         assertThrows(SQLException.class, () ->
-                databaseManager.addUser(id, telegramId, name, birthday));
+                databaseManager.addUser(telegramId, name, birthday));
     }
 
     @Test
@@ -258,6 +330,102 @@ class DatabaseManagerTest {
         assertEquals(expectedUser.getName(), result.get(0).getName());
     }
 
+    @Test
+    void testGetUsersPageAfter_ReadsOneExtraRowForNext() throws SQLException {
+        // Arrange: страница на 2 записи, база отдаёт 3 после границы - значит, есть следующая,
+        // и строку 10 перед границей - значит, есть предыдущая
+        long telegramId = 12345L;
+
+        when(dataSource.getConnection()).thenReturn(connection);
+        when(connection.prepareStatement(anyString())).thenReturn(preparedStatement);
+        when(preparedStatement.executeQuery()).thenReturn(resultSet);
+        when(resultSet.next()).thenReturn(true, true, true, true, false);
+        when(resultSet.getInt("id")).thenReturn(10, 11, 12, 13);
+        when(resultSet.getLong("telegram_id")).thenReturn(telegramId);
+        when(resultSet.getString("name")).thenReturn("A", "B", "C");
+        when(resultSet.getDate("birthday")).thenReturn(Date.valueOf(LocalDate.of(1990, 1, 1)));
+
+        // Act
+        DatabaseManager.UserPage page = databaseManager.getUsersPageAfter(telegramId, 10, 2);
+
+        // Assert
+        verify(preparedStatement).setInt(2, 10);
+        verify(preparedStatement).setInt(4, 10);
+        verify(preparedStatement).setInt(5, 3);
+        assertEquals(2, page.getUsers().size());
+        assertEquals(11, page.getFirstId());
+        assertEquals(12, page.getLastId());
+        assertTrue(page.hasPrevious());
+        assertTrue(page.hasNext());
+    }
+
+    @Test
+    void testGetUsersPageBefore_ReturnsAscendingOrder() throws SQLException {
+        // Arrange: записи перед id 20 читаются по убыванию id, запись 21 - после границы
+        long telegramId = 12345L;
+
+        when(dataSource.getConnection()).thenReturn(connection);
+        when(connection.prepareStatement(anyString())).thenReturn(preparedStatement);
+        when(preparedStatement.executeQuery()).thenReturn(resultSet);
+        when(resultSet.next()).thenReturn(true, true, true, false);
+        when(resultSet.getInt("id")).thenReturn(21, 19, 18);
+        when(resultSet.getLong("telegram_id")).thenReturn(telegramId);
+        when(resultSet.getString("name")).thenReturn("B", "A");
+        when(resultSet.getDate("birthday")).thenReturn(Date.valueOf(LocalDate.of(1990, 1, 1)));
+
+        // Act
+        DatabaseManager.UserPage page = databaseManager.getUsersPageBefore(telegramId, 20, 2);
+
+        // Assert: страница неполная сверху - это начало списка
+        assertEquals(18, page.getFirstId());
+        assertEquals(19, page.getLastId());
+        assertFalse(page.hasPrevious());
+        assertTrue(page.hasNext());
+    }
+
+    @Test
+    void testGetUsersPageAfter_NoEarlierRowsMeansNoPrevious() throws SQLException {
+        // Arrange: курсор указывает на id 10, но всё до него удалено
+        long telegramId = 12345L;
+
+        when(dataSource.getConnection()).thenReturn(connection);
+        when(connection.prepareStatement(anyString())).thenReturn(preparedStatement);
+        when(preparedStatement.executeQuery()).thenReturn(resultSet);
+        when(resultSet.next()).thenReturn(true, false);
+        when(resultSet.getInt("id")).thenReturn(11);
+        when(resultSet.getLong("telegram_id")).thenReturn(telegramId);
+        when(resultSet.getString("name")).thenReturn("B");
+        when(resultSet.getDate("birthday")).thenReturn(Date.valueOf(LocalDate.of(1990, 1, 1)));
+
+        // Act
+        DatabaseManager.UserPage page = databaseManager.getUsersPageAfter(telegramId, 10, 2);
+
+        // Assert
+        assertEquals(11, page.getFirstId());
+        assertFalse(page.hasPrevious());
+        assertFalse(page.hasNext());
+    }
+
+    @Test
+    void testDeleteUser_ScopedToChat() throws SQLException {
+        // Arrange
+        long telegramId = 12345L;
+
+        when(dataSource.getConnection()).thenReturn(connection);
+        when(connection.prepareStatement(anyString())).thenReturn(preparedStatement);
+        when(preparedStatement.executeUpdate()).thenReturn(1);
+
+        // Act
+        boolean result = databaseManager.deleteUser(telegramId, 42);
+
+        // Assert: удаление по id из показанного списка и только внутри этого чата, без поиска по OFFSET
+        assertTrue(result);
+        verify(connection).prepareStatement("DELETE FROM users WHERE id = ? AND telegram_id = ?");
+        verify(preparedStatement, times(1)).setInt(1, 42);
+        verify(preparedStatement, times(1)).setLong(2, telegramId);
+        verify(preparedStatement, never()).executeQuery();
+    }
+
     @Test
     void testGetAllUsers_Empty() throws SQLException {
         // Arrange
@@ -299,6 +467,37 @@ class DatabaseManagerTest {
         assertEquals(expectedUser.getName(), result.get(0).getName());
     }
 
+    @Test
+    void testGetAllUsersOnMonth_UsesMonthDayRange() throws SQLException {
+        // Arrange
+        long chatId = 12345L;
+
+        when(dataSource.getConnection()).thenReturn(connection);
+        when(connection.prepareStatement(anyString())).thenReturn(preparedStatement);
+        when(preparedStatement.executeQuery()).thenReturn(resultSet);
+        when(resultSet.next()).thenReturn(false);
+
+        // Act
+        List<BirthdayUser> result = databaseManager.getAllUsersOnMonth(3, chatId);
+
+        // Assert
+        assertTrue(result.isEmpty());
+        verify(preparedStatement, times(1)).setLong(1, chatId);
+        verify(preparedStatement, times(1)).setInt(2, 301);
+        verify(preparedStatement, times(1)).setInt(3, 331);
+    }
+
+    @Test
+    void testMonthDayKey() {
+        assertEquals(101, DatabaseManager.toMonthDay(LocalDate.of(1990, 1, 1)));
+        assertEquals(1231, DatabaseManager.toMonthDay(LocalDate.of(1990, 12, 31)));
+
+        // 28 февраля невисокосного года захватывает и 29 февраля
+        assertEquals(229, DatabaseManager.lastMonthDayOf(LocalDate.of(2023, 2, 28)));
+        assertEquals(228, DatabaseManager.lastMonthDayOf(LocalDate.of(2024, 2, 28)));
+        assertEquals(301, DatabaseManager.lastMonthDayOf(LocalDate.of(2023, 3, 1)));
+    }
+
     @Test
     void testUserExists_True() throws SQLException {
         // Arrange
@@ -351,7 +550,8 @@ class DatabaseManagerTest {
         // Assert
         assertTrue(result);
         verify(preparedStatement, times(1)).setDate(1, Date.valueOf(newBirthday));
-        verify(preparedStatement, times(1)).setLong(2, telegramId);
+        verify(preparedStatement, times(1)).setInt(2, 515);
+        verify(preparedStatement, times(1)).setLong(3, telegramId);
     }
 
     @Test
@@ -374,37 +574,240 @@ class DatabaseManagerTest {
     }
 
     @Test
-    void testGetTodayNotifications_Success() throws SQLException {
+    void testClaimFanoutBatch_ClaimsSelectedRowsInOneTransaction() throws SQLException {
         // Arrange
-        List<BirthdayUser> todayBirthdays = new ArrayList<>();
-        todayBirthdays.add(new BirthdayUser(1, 12345L, "John Doe", LocalDate.now()));
-        todayBirthdays.add(new BirthdayUser(2, 67890L, "Jane Smith", LocalDate.now()));
+        LocalDate date = LocalDate.of(2024, 5, 15);
+        when(dataSource.getConnection()).thenReturn(connection);
+        when(connection.prepareStatement(anyString())).thenReturn(preparedStatement);
+        when(preparedStatement.executeQuery()).thenReturn(resultSet);
 
-        // Mock the getTodayBirthdays() method
-        DatabaseManager spyManager = spy(databaseManager);
-        doReturn(todayBirthdays).when(spyManager).getTodayBirthdays();
+        when(resultSet.next()).thenReturn(true, true, false);
+        when(resultSet.getInt("entry_id")).thenReturn(7, 8);
+        when(resultSet.getLong("telegram_id")).thenReturn(12345L, 67890L);
+        when(resultSet.getString("name")).thenReturn("John Doe", "Jane Smith");
 
         // Act
-        List<BirthdayNotification> result = spyManager.getTodayNotifications();
+        List<BirthdayNotification> batch = databaseManager.claimOutboxBatch(date, "node-1", 100);
+
+        // Assert: строки, занятые другим узлом, пропускаются, а не ждут
+        assertEquals(2, batch.size());
+        assertEquals(8, batch.get(1).getEntryId());
+        verify(connection).prepareStatement(contains("FOR UPDATE SKIP LOCKED"));
+        verify(preparedStatement, times(2)).setString(1, "node-1");
+        verify(preparedStatement, times(2)).addBatch();
+        verify(preparedStatement).executeBatch();
+        verify(connection).commit();
+    }
+
+    @Test
+    void testClaimOutboxBatch_ReclaimCountsAsAttempt() throws SQLException {
+        // Arrange: обе строки брошены узлами с истёкшим захватом; у второй это последняя попытка
+        when(dataSource.getConnection()).thenReturn(connection);
+        when(connection.prepareStatement(anyString())).thenReturn(preparedStatement);
+        when(preparedStatement.executeQuery()).thenReturn(resultSet);
+        when(resultSet.next()).thenReturn(true, true, false);
+        when(resultSet.getInt("entry_id")).thenReturn(7, 8);
+        when(resultSet.getString("status")).thenReturn("claimed", "claimed");
+        when(resultSet.getInt("attempts")).thenReturn(0, DatabaseManager.OUTBOX_MAX_ATTEMPTS - 1);
+        when(resultSet.getLong("telegram_id")).thenReturn(12345L);
+        when(resultSet.getString("name")).thenReturn("John Doe");
+
+        // Act
+        List<BirthdayNotification> batch = databaseManager.claimOutboxBatch(LocalDate.of(2024, 5, 15), "node-1", 100);
+
+        // Assert: первая забрана с attempts + 1, вторая ушла в dead и не отправляется
+        assertEquals(1, batch.size());
+        assertEquals(7, batch.get(0).getEntryId());
+        verify(connection).prepareStatement(contains("attempts = attempts + ?"));
+        verify(preparedStatement).setInt(2, 1);
+        verify(connection).prepareStatement(contains("SET status = 'dead'"));
+        verify(preparedStatement).setInt(2, 8);
+        verify(connection).commit();
+    }
+
+    @Test
+    void testClaimFanoutBatch_RollbackOnError() throws SQLException {
+        // Arrange
+        when(dataSource.getConnection()).thenReturn(connection);
+        when(connection.prepareStatement(anyString())).thenReturn(preparedStatement);
+        when(preparedStatement.executeQuery()).thenReturn(resultSet);
+        when(resultSet.next()).thenReturn(true, false);
+        when(preparedStatement.executeBatch()).thenThrow(new SQLException("serialization failure"));
+
+        // Act
+        RuntimeException error = assertThrows(RuntimeException.class,
+                () -> databaseManager.claimOutboxBatch(LocalDate.of(2024, 5, 15), "node-1", 100));
+
+        // Assert: захват не состоялся, и это не выдаётся за пустой outbox
+        assertTrue(error.getCause() instanceof SQLException);
+        verify(connection).rollback();
+        verify(connection, never()).commit();
+    }
+
+    @Test
+    void testMarkOutboxFailed_DeadLettersAfterMaxAttempts() throws SQLException {
+        // Arrange
+        when(dataSource.getConnection()).thenReturn(connection);
+        when(connection.prepareStatement(anyString())).thenReturn(preparedStatement);
+
+        // Act
+        databaseManager.markOutboxFailed(LocalDate.of(2024, 5, 15), "node-1", Arrays.asList(7, 8));
+
+        // Assert: обе строки одним executeBatch
+        verify(connection).prepareStatement(contains("THEN 'dead' ELSE 'pending'"));
+        verify(connection).prepareStatement(contains("AND claimed_by = ?"));
+        verify(preparedStatement).setInt(2, 7);
+        verify(preparedStatement).setInt(2, 8);
+        verify(preparedStatement, times(2)).setString(3, "node-1");
+        verify(preparedStatement, times(2)).addBatch();
+        verify(preparedStatement, times(1)).executeBatch();
+    }
+
+    @Test
+    void testMarkOutboxDelivered_EmptyDoesNotTouchDatabase() throws SQLException {
+        // Act
+        databaseManager.markOutboxDelivered(LocalDate.of(2024, 5, 15), "node-1", Collections.emptyList());
 
         // Assert
-        assertNotNull(result);
-        assertEquals(2, result.size());
+        verify(dataSource, never()).getConnection();
     }
 
     @Test
-    void testGetTodayNotifications_Empty() throws SQLException {
+    void testFillOutbox_FiltersByChatTimeZones() throws SQLException {
         // Arrange
-        // Mock the getTodayBirthdays() method to return empty list
-        DatabaseManager spyManager = spy(databaseManager);
-        doReturn(new ArrayList<BirthdayUser>()).when(spyManager).getTodayBirthdays();
+        when(dataSource.getConnection()).thenReturn(connection);
+        when(connection.prepareStatement(anyString())).thenReturn(preparedStatement);
+        when(preparedStatement.executeUpdate()).thenReturn(0, 3);
 
         // Act
-        List<BirthdayNotification> result = spyManager.getTodayNotifications();
+        int added = databaseManager.fillOutbox(LocalDate.of(2024, 5, 15),
+                Arrays.asList("Europe/Moscow", "Asia/Yekaterinburg"), "Europe/Moscow");
+
+        // Assert: чаты без пояса попадают в корзину пояса сервера
+        assertEquals(3, added);
+        verify(connection).prepareStatement(contains("COALESCE(c.time_zone, ?) IN (?, ?)"));
+        verify(preparedStatement).setString(4, "Europe/Moscow");
+        verify(preparedStatement).setString(5, "Europe/Moscow");
+        verify(preparedStatement).setString(6, "Asia/Yekaterinburg");
+    }
+
+    @Test
+    void testFillOutbox_NoZonesDoesNotTouchDatabase() throws SQLException {
+        // Act
+        int added = databaseManager.fillOutbox(LocalDate.of(2024, 5, 15), Collections.emptyList(), "UTC");
 
         // Assert
-        assertNotNull(result);
-        assertTrue(result.isEmpty());
+        assertEquals(0, added);
+        verify(dataSource, never()).getConnection();
+    }
+
+    @Test
+    void testSetChatTimeZone_InsertsWhenChatIsNew() throws SQLException {
+        // Arrange
+        when(dataSource.getConnection()).thenReturn(connection);
+        when(connection.prepareStatement(anyString())).thenReturn(preparedStatement);
+        when(preparedStatement.executeUpdate()).thenReturn(0, 1);
+
+        // Act
+        boolean result = databaseManager.setChatTimeZone(12345L, ZoneId.of("Asia/Tokyo"));
+
+        // Assert
+        assertTrue(result);
+        verify(connection).prepareStatement(startsWith("UPDATE chats"));
+        verify(connection).prepareStatement(startsWith("INSERT INTO chats"));
+        verify(preparedStatement).setString(2, "Asia/Tokyo");
+    }
+
+    @Test
+    void testGetChatTimeZone_NotSet() throws SQLException {
+        // Arrange
+        when(dataSource.getConnection()).thenReturn(connection);
+        when(connection.prepareStatement(anyString())).thenReturn(preparedStatement);
+        when(preparedStatement.executeQuery()).thenReturn(resultSet);
+        when(resultSet.next()).thenReturn(false);
+
+        // Act & Assert
+        assertNull(databaseManager.getChatTimeZone(12345L));
+    }
+
+    @Test
+    void testGetOutboxStats_CountsByStatus() throws SQLException {
+        // Arrange
+        when(dataSource.getConnection()).thenReturn(connection);
+        when(connection.prepareStatement(anyString())).thenReturn(preparedStatement);
+        when(preparedStatement.executeQuery()).thenReturn(resultSet);
+        when(resultSet.next()).thenReturn(true, true, true, false);
+        when(resultSet.getString("status")).thenReturn("delivered", "claimed", "dead");
+        when(resultSet.getInt("cnt")).thenReturn(90, 8, 2);
+
+        // Act
+        DatabaseManager.OutboxStats stats = databaseManager.getOutboxStats(LocalDate.of(2024, 5, 15));
+
+        // Assert
+        assertEquals(0, stats.getPending());
+        assertEquals(8, stats.getClaimed());
+        assertEquals(90, stats.getDelivered());
+        assertEquals(2, stats.getDead());
+        assertEquals(100, stats.getTotal());
+        assertTrue(stats.isUnfinished());
+    }
+
+    @Test
+    void testGetGreetings_Success() throws SQLException {
+        // Arrange
+        LocalDate date = LocalDate.of(2024, 5, 15);
+        when(dataSource.getConnection()).thenReturn(connection);
+        when(connection.prepareStatement(anyString())).thenReturn(preparedStatement);
+        when(preparedStatement.executeQuery()).thenReturn(resultSet);
+
+        when(resultSet.next()).thenReturn(true).thenReturn(false);
+        when(resultSet.getInt("entry_id")).thenReturn(7);
+        when(resultSet.getString("text")).thenReturn("С днём рождения!");
+
+        // Act
+        Map<Integer, String> greetings = databaseManager.getGreetings(date);
+
+        // Assert
+        assertEquals("С днём рождения!", greetings.get(7));
+        verify(preparedStatement).setDate(1, Date.valueOf(date));
+    }
+
+    @Test
+    void testImportUsers_BatchInsertInOneTransaction() throws SQLException {
+        // Arrange
+        when(dataSource.getConnection()).thenReturn(connection);
+        when(connection.prepareStatement(anyString())).thenReturn(preparedStatement);
+
+        List<BirthdayEntry> entries = new ArrayList<>();
+        entries.add(new BirthdayEntry(0, 12345L, "John Doe", LocalDate.of(1990, 5, 15)));
+        entries.add(new BirthdayEntry(0, 12345L, "Jane Smith", LocalDate.of(1985, 12, 31)));
+
+        // Act
+        DatabaseManager.ImportResult result = databaseManager.importUsers(12345L, entries.iterator(), n -> { });
+
+        // Assert
+        assertEquals(2, result.getImported());
+        verify(preparedStatement, times(2)).addBatch();
+        verify(preparedStatement).setInt(4, 1231);
+        verify(preparedStatement).executeBatch();
+        verify(connection).setAutoCommit(false);
+        verify(connection).commit();
+    }
+
+    @Test
+    void testImportUsers_RollbackOnError() throws SQLException {
+        // Arrange
+        when(dataSource.getConnection()).thenReturn(connection);
+        when(connection.prepareStatement(anyString())).thenReturn(preparedStatement);
+        when(preparedStatement.executeBatch()).thenThrow(new SQLException("Batch failed"));
+
+        List<BirthdayEntry> entries = new ArrayList<>();
+        entries.add(new BirthdayEntry(0, 12345L, "John Doe", LocalDate.of(1990, 5, 15)));
+
+        // Act & Assert
+        assertThrows(SQLException.class, () -> databaseManager.importUsers(12345L, entries.iterator(), n -> { }));
+        verify(connection).rollback();
+        verify(connection, never()).commit();
     }
 
     @Test
@@ -0,0 +1,15 @@
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Path;
+
+// H2 в файле во временном каталоге; схема создаётся тем же initialize, что и для PostgreSQL
+class EmbeddedBirthdayRepositoryTest extends AbstractBirthdayRepositoryTest {
+
+    @TempDir
+    Path dataDir;
+
+    @Override
+    protected BirthdayRepository createRepository() {
+        return new EmbeddedBirthdayRepository(dataDir.resolve("birthdays")).open();
+    }
+}
@@ -0,0 +1,96 @@
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+import java.time.LocalDate;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+class GreetingPregeneratorTest {
+
+    @Mock
+    private DatabaseManager database;
+
+    private final LocalDate tomorrow = LocalDate.now().plusDays(1);
+
+    @Test
+    void testPregenerate_SavesGeneratedGreetings() throws Exception {
+        // Given
+        when(database.getNotificationsOn(tomorrow)).thenReturn(Arrays.asList(
+                new BirthdayNotification(1, 123L, "Иван"),
+                new BirthdayNotification(2, 456L, "Мария")
+        ));
+        GreetingPregenerator pregenerator = new GreetingPregenerator(database, "token", 2,
+                (token, name) -> CompletableFuture.completedFuture("С днём рождения, " + name + "!"));
+
+        // When
+        int generated = pregenerator.pregenerate(tomorrow);
+
+        // Then
+        assertEquals(2, generated);
+        verify(database).saveGreeting(1, tomorrow, "С днём рождения, Иван!");
+        verify(database).saveGreeting(2, tomorrow, "С днём рождения, Мария!");
+    }
+
+    @Test
+    void testPregenerate_SkipsExistingAndFailed() throws Exception {
+        // Given - для первой записи поздравление уже есть, модель не ответила для второй
+        when(database.getNotificationsOn(tomorrow)).thenReturn(Arrays.asList(
+                new BirthdayNotification(1, 123L, "Иван"),
+                new BirthdayNotification(2, 456L, "Мария")
+        ));
+        when(database.getGreetings(tomorrow)).thenReturn(Collections.singletonMap(1, "Готово"));
+        AtomicInteger calls = new AtomicInteger();
+        GreetingPregenerator pregenerator = new GreetingPregenerator(database, "token", 2, (token, name) -> {
+            calls.incrementAndGet();
+            return CompletableFuture.completedFuture(null);
+        });
+
+        // When
+        int generated = pregenerator.pregenerate(tomorrow);
+
+        // Then
+        assertEquals(0, generated);
+        assertEquals(1, calls.get());
+        verify(database, never()).saveGreeting(anyInt(), any(), anyString());
+    }
+
+    @Test
+    void testPregenerate_BoundedConcurrency() throws Exception {
+        // Given - ответы модели приходят не сразу
+        when(database.getNotificationsOn(tomorrow)).thenReturn(Arrays.asList(
+                new BirthdayNotification(1, 1L, "A"),
+                new BirthdayNotification(2, 2L, "B"),
+                new BirthdayNotification(3, 3L, "C"),
+                new BirthdayNotification(4, 4L, "D")
+        ));
+        AtomicInteger inFlight = new AtomicInteger();
+        AtomicInteger maxInFlight = new AtomicInteger();
+        GreetingPregenerator pregenerator = new GreetingPregenerator(database, "token", 2,
+                (token, name) -> CompletableFuture.supplyAsync(() -> {
+                    maxInFlight.accumulateAndGet(inFlight.incrementAndGet(), Math::max);
+                    try {
+                        Thread.sleep(20);
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                    }
+                    inFlight.decrementAndGet();
+                    return name;
+                }));
+
+        // When
+        int generated = pregenerator.pregenerate(tomorrow);
+
+        // Then
+        assertEquals(4, generated);
+        assertTrue(maxInFlight.get() <= 2);
+    }
+}
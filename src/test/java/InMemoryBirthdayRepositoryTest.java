@@ -0,0 +1,77 @@
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class InMemoryBirthdayRepositoryTest extends AbstractBirthdayRepositoryTest {
+    private static final LocalDate DAY = LocalDate.of(2023, 5, 15);
+
+    private final AtomicLong clock = new AtomicLong();
+
+    @Override
+    protected BirthdayRepository createRepository() {
+        return new InMemoryBirthdayRepository(clock::get);
+    }
+
+    @Test
+    void testOutbox_AbandonedClaimCountsAsAttempt() throws Exception {
+        // Given: строку забирает узел, который падает, не отметив итог
+        int entryId = repository.addUser(chatId, "Иван", LocalDate.of(1990, 5, 15));
+        repository.fillOutbox(DAY, Collections.singletonList("UTC"), "UTC");
+        List<BirthdayNotification> first = repository.claimOutboxBatch(DAY, "node-a", 10);
+
+        // When & Then: после истечения аренды строку перехватывают, пока не кончатся попытки
+        for (int attempt = 1; attempt < DatabaseManager.OUTBOX_MAX_ATTEMPTS; attempt++) {
+            clock.addAndGet(TimeUnit.MINUTES.toNanos(11));
+            assertEquals(1, repository.claimOutboxBatch(DAY, "node-" + attempt, 10).size());
+        }
+        clock.addAndGet(TimeUnit.MINUTES.toNanos(11));
+        assertTrue(repository.claimOutboxBatch(DAY, "node-last", 10).isEmpty());
+        assertEquals(entryId, first.get(0).getEntryId());
+        assertEquals(1, repository.getOutboxStats(DAY).getDead());
+
+        // отметка от давно потерявшего строку узла ничего не меняет
+        repository.markOutboxDelivered(DAY, "node-a", Collections.singletonList(entryId));
+        assertEquals(0, repository.getOutboxStats(DAY).getDelivered());
+    }
+
+    @Test
+    void testImportUsers_FailureAddsNothing() {
+        // Given: файл ломается на 11-й строке
+        List<BirthdayEntry> entries = new ArrayList<>();
+        for (int i = 0; i < 10; i++) {
+            entries.add(new BirthdayEntry(0, chatId, "Гость " + i, LocalDate.of(1990, 1, 1).plusDays(i)));
+        }
+        Iterator<BirthdayEntry> source = entries.iterator();
+        Iterator<BirthdayEntry> broken = new Iterator<BirthdayEntry>() {
+            @Override
+            public boolean hasNext() {
+                return true;
+            }
+
+            @Override
+            public BirthdayEntry next() {
+                if (!source.hasNext()) {
+                    throw new UncheckedIOException(new IOException("connection reset"));
+                }
+                return source.next();
+            }
+        };
+
+        // When
+        assertThrows(UncheckedIOException.class, () -> repository.importUsers(chatId, broken, imported -> { }));
+
+        // Then: ни одной записи из файла
+        assertEquals(0, repository.getUsersNum(chatId));
+        assertTrue(repository.getNotificationsOn(LocalDate.of(2024, 1, 1)).isEmpty());
+    }
+}
@@ -0,0 +1,65 @@
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class LatencyHistogramTest {
+
+    @Test
+    void testPercentiles() {
+        // Given
+        LatencyHistogram histogram = new LatencyHistogram();
+
+        // When: 1..1000 мс
+        for (int i = 1; i <= 1000; i++) {
+            histogram.record(TimeUnit.MILLISECONDS.toNanos(i));
+        }
+
+        // Then: погрешность корзин меньше 2%
+        assertEquals(1000, histogram.getCount());
+        assertEquals(500.0, histogram.getPercentileMillis(50), 10.0);
+        assertEquals(990.0, histogram.getPercentileMillis(99), 20.0);
+        assertEquals(1000.0, histogram.getPercentileMillis(100), 0.001);
+        assertEquals(TimeUnit.MILLISECONDS.toNanos(1000), histogram.getMaxNanos());
+        assertEquals(500.5, histogram.getMeanNanos() / 1e6, 0.001);
+    }
+
+    @Test
+    void testSmallValuesAreExact() {
+        // Given
+        LatencyHistogram histogram = new LatencyHistogram();
+
+        // When
+        histogram.record(5);
+        histogram.record(7);
+
+        // Then
+        assertEquals(5, histogram.getPercentileNanos(50));
+        assertEquals(7, histogram.getPercentileNanos(100));
+    }
+
+    @Test
+    void testBucketBoundsCoverValues() {
+        for (long value = 1; value < (1L << 40); value = value * 3 + 1) {
+            int index = LatencyHistogram.indexOf(value);
+            assertTrue(LatencyHistogram.upperBoundOf(index) >= value);
+            assertTrue(index == 0 || LatencyHistogram.upperBoundOf(index - 1) < value);
+        }
+    }
+
+    @Test
+    void testEmptyAndReset() {
+        // Given
+        LatencyHistogram histogram = new LatencyHistogram();
+        assertEquals(0, histogram.getPercentileNanos(99));
+
+        // When
+        histogram.record(1_000_000);
+        histogram.reset();
+
+        // Then
+        assertEquals(0, histogram.getCount());
+        assertEquals(0, histogram.getMaxNanos());
+    }
+}
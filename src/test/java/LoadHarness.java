@@ -0,0 +1,239 @@
+import com.google.gson.stream.JsonWriter;
+
+import java.io.IOException;
+import java.io.StringWriter;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+// Нагрузка по открытой модели: запросы приходят с постоянной частотой независимо от того,
+// успевает ли система их обслужить. Для каждой операции пишутся две гистограммы:
+// service - время самого вызова, response - от момента, когда запрос должен был начаться
+// (с поправкой на coordinated omission: ожидание в очереди тоже считается задержкой)
+class LoadHarness {
+
+    enum Outcome { OK, EXPECTED_FAILURE, ERROR }
+
+    interface Operation {
+        // seq - порядковый номер запроса, удобен для уникальных имён
+        Outcome run(DatabaseManager db, ThreadLocalRandom random, long seq) throws Exception;
+    }
+
+    private final DatabaseManager db;
+    private final double ratePerSecond;
+    private final long durationNanos;
+    private final int concurrency;
+    private final Map<String, OperationStats> operations = new LinkedHashMap<>();
+    private final List<String> names = new ArrayList<>();
+    private final List<Integer> cumulativeWeights = new ArrayList<>();
+    private int totalWeight;
+
+    LoadHarness(DatabaseManager db, double ratePerSecond, long duration, TimeUnit unit, int concurrency) {
+        this.db = db;
+        this.ratePerSecond = ratePerSecond;
+        this.durationNanos = unit.toNanos(duration);
+        this.concurrency = concurrency;
+    }
+
+    // weight - доля операции в смеси относительно остальных
+    LoadHarness addOperation(String name, int weight, Operation operation) {
+        totalWeight += weight;
+        names.add(name);
+        cumulativeWeights.add(totalWeight);
+        operations.put(name, new OperationStats(operation));
+        return this;
+    }
+
+    Report run() throws InterruptedException {
+        ExecutorService executor = Executors.newFixedThreadPool(concurrency);
+        long intervalNanos = (long) (TimeUnit.SECONDS.toNanos(1) / ratePerSecond);
+        long start = System.nanoTime();
+        long seq = 0;
+
+        try {
+            for (long intended = start; intended - start < durationNanos; intended += intervalNanos) {
+                long wait = intended - System.nanoTime();
+                if (wait > 0) {
+                    TimeUnit.NANOSECONDS.sleep(wait);
+                }
+                OperationStats stats = operations.get(pick());
+                long intendedStart = intended;
+                long requestSeq = seq++;
+                executor.execute(() -> stats.execute(db, intendedStart, requestSeq));
+            }
+        } finally {
+            executor.shutdown();
+        }
+        // не дождались - отчёт посчитал бы незавершённые запросы, а не их результат
+        if (!executor.awaitTermination(1, TimeUnit.MINUTES)) {
+            executor.shutdownNow();
+            throw new IllegalStateException("Load requests did not finish within 1 minute");
+        }
+
+        return new Report(ratePerSecond, seq, System.nanoTime() - start, operations);
+    }
+
+    private String pick() {
+        int point = ThreadLocalRandom.current().nextInt(totalWeight);
+        for (int i = 0; i < names.size(); i++) {
+            if (point < cumulativeWeights.get(i)) {
+                return names.get(i);
+            }
+        }
+        return names.get(names.size() - 1);
+    }
+
+    static final class OperationStats {
+        private final Operation operation;
+        private final LatencyHistogram service = new LatencyHistogram();
+        private final LatencyHistogram response = new LatencyHistogram();
+        private final AtomicLong ok = new AtomicLong();
+        private final AtomicLong expectedFailures = new AtomicLong();
+        private final AtomicLong errors = new AtomicLong();
+
+        OperationStats(Operation operation) {
+            this.operation = operation;
+        }
+
+        void execute(DatabaseManager db, long intendedStart, long seq) {
+            long start = System.nanoTime();
+            Outcome outcome;
+            try {
+                outcome = operation.run(db, ThreadLocalRandom.current(), seq);
+            } catch (Exception e) {
+                outcome = Outcome.ERROR;
+            }
+            long end = System.nanoTime();
+            service.record(end - start);
+            response.record(end - intendedStart);
+
+            if (outcome == Outcome.OK) {
+                ok.incrementAndGet();
+            } else if (outcome == Outcome.EXPECTED_FAILURE) {
+                expectedFailures.incrementAndGet();
+            } else {
+                errors.incrementAndGet();
+            }
+        }
+
+        long getCount() {
+            return service.getCount();
+        }
+
+        long getErrors() {
+            return errors.get();
+        }
+
+        LatencyHistogram getResponse() {
+            return response;
+        }
+    }
+
+    static final class Report {
+        private final double targetRate;
+        private final long requests;
+        private final long elapsedNanos;
+        private final Map<String, OperationStats> operations;
+
+        Report(double targetRate, long requests, long elapsedNanos, Map<String, OperationStats> operations) {
+            this.targetRate = targetRate;
+            this.requests = requests;
+            this.elapsedNanos = elapsedNanos;
+            this.operations = operations;
+        }
+
+        long getRequests() {
+            return requests;
+        }
+
+        long getCompleted() {
+            return operations.values().stream().mapToLong(OperationStats::getCount).sum();
+        }
+
+        long getErrors() {
+            return operations.values().stream().mapToLong(OperationStats::getErrors).sum();
+        }
+
+        double getAchievedRate() {
+            return getCompleted() * 1e9 / elapsedNanos;
+        }
+
+        OperationStats get(String name) {
+            return operations.get(name);
+        }
+
+        @Override
+        public String toString() {
+            StringBuilder text = new StringBuilder(String.format(
+                    "rate: target %.0f/s, achieved %.1f/s, requests %d, elapsed %d ms%n",
+                    targetRate, getAchievedRate(), requests, TimeUnit.NANOSECONDS.toMillis(elapsedNanos)));
+            text.append(String.format("%-16s %7s %7s %7s  %-28s %-28s%n", "operation", "count", "expect", "errors",
+                    "service p50/p99/p999 ms", "response p50/p99/p999 ms"));
+            for (Map.Entry<String, OperationStats> entry : operations.entrySet()) {
+                OperationStats stats = entry.getValue();
+                text.append(String.format("%-16s %7d %7d %7d  %-28s %-28s%n", entry.getKey(), stats.getCount(),
+                        stats.expectedFailures.get(), stats.errors.get(),
+                        percentiles(stats.service), percentiles(stats.response)));
+            }
+            return text.toString();
+        }
+
+        private static String percentiles(LatencyHistogram histogram) {
+            return String.format("%.2f/%.2f/%.2f", histogram.getPercentileMillis(50),
+                    histogram.getPercentileMillis(99), histogram.getPercentileMillis(99.9));
+        }
+
+        String toJson() {
+            StringWriter out = new StringWriter();
+            try {
+                writeJson(out);
+            } catch (IOException e) {
+                throw new IllegalStateException(e);
+            }
+            return out.toString();
+        }
+
+        void writeJson(Writer out) throws IOException {
+            JsonWriter json = new JsonWriter(out);
+            json.setIndent("  ");
+            json.beginObject();
+            json.name("targetRatePerSecond").value(targetRate);
+            json.name("achievedRatePerSecond").value(getAchievedRate());
+            json.name("requests").value(requests);
+            json.name("elapsedMillis").value(TimeUnit.NANOSECONDS.toMillis(elapsedNanos));
+            json.name("operations").beginObject();
+            for (Map.Entry<String, OperationStats> entry : operations.entrySet()) {
+                OperationStats stats = entry.getValue();
+                json.name(entry.getKey()).beginObject();
+                json.name("count").value(stats.getCount());
+                json.name("ok").value(stats.ok.get());
+                json.name("expectedFailures").value(stats.expectedFailures.get());
+                json.name("errors").value(stats.errors.get());
+                writeHistogram(json, "serviceMillis", stats.service);
+                writeHistogram(json, "responseMillis", stats.response);
+                json.endObject();
+            }
+            json.endObject();
+            json.endObject();
+            json.flush();
+        }
+
+        private static void writeHistogram(JsonWriter json, String name, LatencyHistogram histogram)
+                throws IOException {
+            json.name(name).beginObject();
+            json.name("mean").value(histogram.getMeanNanos() / 1e6);
+            json.name("p50").value(histogram.getPercentileMillis(50));
+            json.name("p99").value(histogram.getPercentileMillis(99));
+            json.name("p999").value(histogram.getPercentileMillis(99.9));
+            json.name("max").value(histogram.getMaxNanos() / 1e6);
+            json.endObject();
+        }
+    }
+}
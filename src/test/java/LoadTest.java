@@ -1,75 +1,92 @@
 import org.junit.jupiter.api.Test;
+
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
 import java.time.LocalDate;
-import java.util.Random;
-import java.util.concurrent.*;
-import java.util.concurrent.atomic.AtomicInteger;
-import java.util.concurrent.atomic.AtomicLong;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
 
 public class LoadTest {
 
+    // По умолчанию - H2 в памяти; для локального Postgres:
+    // ./gradlew test --tests LoadTest -Dload.url=jdbc:postgresql://localhost:5432/bot -Dload.user=... -Dload.password=...
+    private static final String URL = System.getProperty("load.url",
+            "jdbc:h2:mem:megatest;MODE=PostgreSQL;DB_CLOSE_DELAY=-1");
+    private static final String USER = System.getProperty("load.user", "sa");
+    private static final String PASSWORD = System.getProperty("load.password", "");
+    private static final double RATE = Double.parseDouble(System.getProperty("load.rate", "100"));
+    private static final long SECONDS = Long.parseLong(System.getProperty("load.seconds", "3"));
+    // > 0 - записи идут через write-behind с таким интервалом сброса
+    private static final long WRITE_BEHIND_MILLIS = Long.parseLong(System.getProperty("load.writeBehindMillis", "0"));
+    // id записи, которой заведомо нет (id выдаются начиная с 1)
+    private static final int MISSING_ENTRY_ID = -1;
+    private static final Path SUMMARY = Paths.get("build", "reports", "load", "summary.json");
+
     @Test
-    public void runMegaLoadTest() throws InterruptedException {
+    public void runMegaLoadTest() throws Exception {
         System.out.println("запуск нагрузочного теста...");
 
         DatabaseManager dbManager = new DatabaseManager();
         // инициализация пула соединений
-        dbManager.initialize("jdbc:h2:mem:megatest;MODE=PostgreSQL;DB_CLOSE_DELAY=-1", "sa", "");
-
-        int threads = 15; // кол-во потоков
-        int totalRequests = 300; // кол-во операций
-
-        ExecutorService executor = Executors.newFixedThreadPool(threads);
-        Random rng = new Random();
-
-        AtomicInteger successCount = new AtomicInteger(0);
-        AtomicInteger errorCount = new AtomicInteger(0);
-        AtomicLong totalLatency = new AtomicLong(0);
+        dbManager.initialize(URL, USER, PASSWORD);
+        if (WRITE_BEHIND_MILLIS > 0) {
+            dbManager.enableWriteBehind(WRITE_BEHIND_MILLIS, 500);
+        }
 
-        long startTime = System.currentTimeMillis();
+        // id добавленных за прогон записей - их и удаляет deleteUserById
+        Queue<Integer> addedIds = new ConcurrentLinkedQueue<>();
 
-        for (int i = 0; i < totalRequests; i++) {
-            final int requestId = i;
-            executor.submit(() -> {
-                long start = System.currentTimeMillis();
-                try {
-                    // генерация случайных данных
-                    long telegramId = 1000 + rng.nextInt(100);
-                    int action = rng.nextInt(100);
+        // распределение типов нагрузки: 100 чатов, смесь записи и чтения
+        LoadHarness harness = new LoadHarness(dbManager, RATE, SECONDS, TimeUnit.SECONDS, 16)
+                .addOperation("addUser", 20, (db, random, seq) -> {
+                    addedIds.add(db.addUserAsync(chat(random), "User_" + seq, LocalDate.now()).join());
+                    return LoadHarness.Outcome.OK;
+                })
+                .addOperation("updateName", 30, (db, random, seq) ->
+                        db.updateNameAsync(chat(random), "Name_" + seq).join()
+                                ? LoadHarness.Outcome.OK
+                                : LoadHarness.Outcome.EXPECTED_FAILURE)
+                .addOperation("getAllUsers", 40, (db, random, seq) -> {
+                    db.getAllUsers(chat(random));
+                    return LoadHarness.Outcome.OK;
+                })
+                // удалять пока нечего - запрос идёт по несуществующему id, это ожидаемый исход, а не ошибка
+                .addOperation("deleteUserById", 10, (db, random, seq) -> {
+                    Integer id = addedIds.poll();
+                    return db.deleteUserById(id != null ? id : MISSING_ENTRY_ID)
+                            ? LoadHarness.Outcome.OK
+                            : LoadHarness.Outcome.EXPECTED_FAILURE;
+                });
 
-                    // распределение типов нагрузки
-                    if (action < 20) {
-                        dbManager.addUser(requestId, telegramId, "User_" + requestId, LocalDate.now());
-                    } else if (action < 50) {
-                        dbManager.updateName(telegramId, "Name_" + requestId);
-                    } else if (action < 90) {
-                        dbManager.getAllUsers(telegramId);
-                    } else {
-                        dbManager.deleteUserById(telegramId);
-                    }
-                    successCount.incrementAndGet();
-                } catch (Exception e) {
-                    errorCount.incrementAndGet();
-                } finally {
-                    // замер задержки
-                    totalLatency.addAndGet(System.currentTimeMillis() - start);
-                }
-            });
+        LoadHarness.Report report;
+        try {
+            report = harness.run();
+        } finally {
+            dbManager.shutdown();
         }
 
-        executor.shutdown();
-        executor.awaitTermination(2, TimeUnit.MINUTES);
-        long endTime = System.currentTimeMillis();
-
         // итоговые метрики
         System.out.println("\nРезультаты тестирования:");
-        System.out.println("Всего запросов: " + totalRequests);
-        System.out.println("Успешно: " + successCount.get());
-        System.out.println("Ошибок: " + errorCount.get());
-        if (successCount.get() > 0) {
-            System.out.println("Средняя задержка: " + (totalLatency.get() / successCount.get()) + " мс");
+        System.out.println(report);
+
+        Files.createDirectories(SUMMARY.getParent());
+        try (Writer out = Files.newBufferedWriter(SUMMARY, StandardCharsets.UTF_8)) {
+            report.writeJson(out);
         }
-        System.out.println("Общее время выполнения: " + (endTime - startTime) + " мс");
+        System.out.println("Сводка: " + SUMMARY.toAbsolutePath());
+
+        assertEquals(report.getRequests(), report.getCompleted());
+        assertEquals(0, report.getErrors());
+    }
 
-        dbManager.shutdown();
+    private static long chat(ThreadLocalRandom random) {
+        return 1000 + random.nextInt(100);
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,75 @@
+import org.junit.jupiter.api.Test;
+
+import java.io.InputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class MetricsRegistryTest {
+
+    @Test
+    void testPrometheusTextFormat() {
+        // Given
+        MetricsRegistry registry = new MetricsRegistry();
+        registry.counter("requests_total", "Requests", "result", "ok").add(3);
+        registry.counter("requests_total", "Requests", "result", "ok").increment();
+        registry.gauge("queue_depth", "Queue depth", () -> 7);
+        LatencyHistogram latency = registry.latency("call_duration_seconds", "Call duration", "method", "get");
+        latency.record(TimeUnit.MILLISECONDS.toNanos(2));
+
+        // When
+        String text = registry.scrape();
+
+        // Then
+        assertTrue(text.contains("# TYPE requests_total counter\n"));
+        assertTrue(text.contains("requests_total{result=\"ok\"} 4\n"));
+        assertTrue(text.contains("# TYPE queue_depth gauge\nqueue_depth 7\n"));
+        assertTrue(text.contains("# TYPE call_duration_seconds summary\n"));
+        assertTrue(text.contains("call_duration_seconds{method=\"get\",quantile=\"0.99\"} 0.00"));
+        assertTrue(text.contains("call_duration_seconds_count{method=\"get\"} 1\n"));
+        // семейства выводятся по алфавиту
+        assertTrue(text.indexOf("call_duration_seconds") < text.indexOf("queue_depth"));
+    }
+
+    @Test
+    void testSameLabelsReturnSameMetric() {
+        MetricsRegistry registry = new MetricsRegistry();
+        assertSame(registry.latency("x_seconds", "x", "a", "1"), registry.latency("x_seconds", "x", "a", "1"));
+        assertNotSame(registry.latency("x_seconds", "x", "a", "1"), registry.latency("x_seconds", "x", "a", "2"));
+        assertThrows(IllegalArgumentException.class, () -> registry.counter("x_seconds", "x"));
+    }
+
+    @Test
+    void testLabelValuesAreEscaped() {
+        assertEquals("command=\"say \\\"hi\\\"\\\\n\"", MetricsRegistry.formatLabels("command", "say \"hi\"\\n"));
+    }
+
+    @Test
+    void testMetricsServer() throws Exception {
+        // Given
+        MetricsRegistry registry = new MetricsRegistry();
+        registry.gauge("up", "Is up", () -> 1);
+        MetricsServer server = new MetricsServer(0, registry);
+        server.start();
+
+        try {
+            // When
+            HttpURLConnection conn = (HttpURLConnection) new URL(
+                    "http://127.0.0.1:" + server.getPort() + "/metrics").openConnection();
+            String body;
+            try (InputStream in = conn.getInputStream()) {
+                body = new String(in.readAllBytes(), StandardCharsets.UTF_8);
+            }
+
+            // Then
+            assertEquals(200, conn.getResponseCode());
+            assertTrue(conn.getContentType().startsWith("text/plain; version=0.0.4"));
+            assertTrue(body.contains("up 1\n"));
+        } finally {
+            server.stop();
+        }
+    }
+}
@@ -0,0 +1,143 @@
+import com.pengrad.telegrambot.TelegramBot;
+import com.pengrad.telegrambot.request.SendMessage;
+import com.pengrad.telegrambot.response.ResponseParameters;
+import com.pengrad.telegrambot.response.SendResponse;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+class NotificationDispatcherTest {
+
+    @Mock
+    private TelegramBot bot;
+
+    @Mock
+    private SendResponse okResponse;
+
+    @Mock
+    private SendResponse errorResponse;
+
+    @Mock
+    private ResponseParameters responseParameters;
+
+    private NotificationDispatcher dispatcher;
+
+    @BeforeEach
+    void setUp() {
+        dispatcher = new NotificationDispatcher(bot, 4, 1_000, 1);
+    }
+
+    @AfterEach
+    void tearDown() {
+        dispatcher.shutdown();
+    }
+
+    @Test
+    void testDispatch_AllSent() {
+        // Arrange
+        when(okResponse.isOk()).thenReturn(true);
+        when(bot.execute(any(SendMessage.class))).thenReturn(okResponse);
+
+        // Act
+        NotificationDispatcher.Run run = dispatcher.startRun();
+        for (long chatId = 1; chatId <= 20; chatId++) {
+            run.submit(chatId, "Сегодня день рождения у Ивана!");
+        }
+        NotificationDispatcher.Stats stats = run.finish();
+
+        // Assert
+        assertEquals(20, stats.getSubmitted());
+        assertEquals(20, stats.getSent());
+        assertEquals(0, stats.getFailed());
+        verify(bot, times(20)).execute(any(SendMessage.class));
+    }
+
+    @Test
+    void testDispatch_ReportsOutcomePerMessage() {
+        // Arrange: первый чат доставлен, второй отклонён
+        when(okResponse.isOk()).thenReturn(true);
+        when(errorResponse.errorCode()).thenReturn(403);
+        when(bot.execute(any(SendMessage.class))).thenAnswer(invocation -> {
+            SendMessage request = invocation.getArgument(0);
+            return Long.valueOf(1L).equals(request.getParameters().get("chat_id")) ? okResponse : errorResponse;
+        });
+        Map<Long, Boolean> outcomes = new ConcurrentHashMap<>();
+
+        // Act
+        NotificationDispatcher.Run run = dispatcher.startRun();
+        run.submit(1L, "Сегодня день рождения у Ивана!", sent -> outcomes.put(1L, sent));
+        run.submit(2L, "Сегодня день рождения у Марии!", sent -> outcomes.put(2L, sent));
+        run.finish();
+
+        // Assert: к возврату finish все итоги уже известны
+        assertEquals(Boolean.TRUE, outcomes.get(1L));
+        assertEquals(Boolean.FALSE, outcomes.get(2L));
+    }
+
+    @Test
+    void testDispatch_RetriesAfterTooManyRequests() {
+        // Arrange
+        when(okResponse.isOk()).thenReturn(true);
+        when(errorResponse.isOk()).thenReturn(false);
+        when(errorResponse.errorCode()).thenReturn(429);
+        when(errorResponse.parameters()).thenReturn(responseParameters);
+        when(responseParameters.retryAfter()).thenReturn(0);
+        when(bot.execute(any(SendMessage.class))).thenReturn(errorResponse).thenReturn(okResponse);
+
+        // Act
+        NotificationDispatcher.Run run = dispatcher.startRun();
+        run.submit(1L, "Сегодня день рождения у Ивана!");
+        NotificationDispatcher.Stats stats = run.finish();
+
+        // Assert
+        assertEquals(1, stats.getSent());
+        assertEquals(1, stats.getRateLimited());
+        assertEquals(1, stats.getRetried());
+        verify(bot, times(2)).execute(any(SendMessage.class));
+    }
+
+    @Test
+    void testDispatch_PermanentErrorIsNotRetried() {
+        // Arrange
+        when(errorResponse.isOk()).thenReturn(false);
+        when(errorResponse.errorCode()).thenReturn(403);
+        when(bot.execute(any(SendMessage.class))).thenReturn(errorResponse);
+
+        // Act
+        NotificationDispatcher.Run run = dispatcher.startRun();
+        run.submit(1L, "Сегодня день рождения у Ивана!");
+        NotificationDispatcher.Stats stats = run.finish();
+
+        // Assert
+        assertEquals(0, stats.getSent());
+        assertEquals(1, stats.getFailed());
+        verify(bot, times(1)).execute(any(SendMessage.class));
+    }
+
+    @Test
+    void testDispatch_NullResponseCountsAsFailed() {
+        // Arrange: клиент бота вернул null вместо ответа
+        when(bot.execute(any(SendMessage.class))).thenReturn(null);
+
+        // Act
+        NotificationDispatcher.Run run = dispatcher.startRun();
+        run.submit(1L, "Сегодня день рождения у Ивана!");
+        NotificationDispatcher.Stats stats = run.finish();
+
+        // Assert
+        assertEquals(0, stats.getSent());
+        assertEquals(1, stats.getFailed());
+        verify(bot, times(1)).execute(any(SendMessage.class));
+    }
+}
@@ -0,0 +1,17 @@
+import static org.junit.jupiter.api.Assumptions.assumeTrue;
+
+// Нужен живой PostgreSQL: ./gradlew test -Drepository.postgres.url=jdbc:postgresql://localhost:5432/birthdays
+// (и при необходимости -Drepository.postgres.user / -Drepository.postgres.password). Без url тесты пропускаются
+class PostgresBirthdayRepositoryTest extends AbstractBirthdayRepositoryTest {
+
+    @Override
+    protected BirthdayRepository createRepository() {
+        String url = System.getProperty("repository.postgres.url");
+        assumeTrue(url != null, "repository.postgres.url is not set");
+        DatabaseManager manager = new DatabaseManager();
+        manager.initialize(url,
+                System.getProperty("repository.postgres.user", "postgres"),
+                System.getProperty("repository.postgres.password", ""));
+        return manager;
+    }
+}
@@ -0,0 +1,40 @@
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ReadReplicaRouterTest {
+
+    @Test
+    void testReadsGoToReplicaByDefault() {
+        // Given
+        ReadReplicaRouter router = new ReadReplicaRouter(null, 60_000);
+
+        // Then
+        assertTrue(router.routesToReplica(100L));
+    }
+
+    @Test
+    void testRecentWriterReadsFromPrimary() {
+        // Given
+        ReadReplicaRouter router = new ReadReplicaRouter(null, 60_000);
+
+        // When
+        router.recordWrite(100L);
+
+        // Then: окно действует только для чата, который писал
+        assertFalse(router.routesToReplica(100L));
+        assertTrue(router.routesToReplica(200L));
+    }
+
+    @Test
+    void testWindowExpires() {
+        // Given: нулевое окно - чтения сразу возвращаются на реплику
+        ReadReplicaRouter router = new ReadReplicaRouter(null, 0);
+
+        // When
+        router.recordWrite(100L);
+
+        // Then
+        assertTrue(router.routesToReplica(100L));
+    }
+}
@@ -6,9 +6,17 @@ import org.mockito.MockedStatic;
 import org.mockito.Mock;
 import org.mockito.junit.jupiter.MockitoExtension;
 
+import java.io.IOException;
 import java.net.http.HttpClient;
 import java.net.http.HttpRequest;
 import java.net.http.HttpResponse;
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
 
 import static org.junit.jupiter.api.Assertions.*;
 import static org.mockito.ArgumentMatchers.any;
@@ -50,6 +58,143 @@ class RuGPT3GeneratorTest {
         assertTrue(result.contains("Тест"));
     }
 
+    @Test
+    void testGenerateGreetingAsync_UsesSharedClient() {
+        // Given
+        Bulkhead bulkhead = new Bulkhead(1);
+        when(httpResponse.statusCode()).thenReturn(200);
+        when(httpResponse.body()).thenReturn("{\"choices\":[{\"text\":\"Поздравляю, Тест!\"}]}");
+        when(httpClient.sendAsync(any(HttpRequest.class), any(HttpResponse.BodyHandler.class)))
+                .thenReturn(CompletableFuture.completedFuture(httpResponse));
+
+        // When
+        String result = RuGPT3Generator.generateGreetingAsync(httpClient, newBreaker(), bulkhead, apiToken, "Тест")
+                .join();
+
+        // Then
+        assertEquals("Поздравляю, Тест!", result);
+        assertEquals(0, bulkhead.getInFlight());
+    }
+
+    @Test
+    void testGenerateGreetingAsync_FallbackOnError() {
+        // Given
+        Bulkhead bulkhead = new Bulkhead(1);
+        CircuitBreaker breaker = newBreaker();
+        CompletableFuture<HttpResponse<String>> failed = new CompletableFuture<>();
+        failed.completeExceptionally(new IOException("connection reset"));
+        when(httpClient.sendAsync(any(HttpRequest.class), any(HttpResponse.BodyHandler.class)))
+                .thenReturn(failed);
+
+        // When
+        String result = RuGPT3Generator.generateGreetingAsync(httpClient, breaker, bulkhead, apiToken, "Тест").join();
+
+        // Then
+        assertTrue(result.contains("Тест"));
+        assertEquals(0, bulkhead.getInFlight());
+        assertEquals(CircuitBreaker.State.OPEN, breaker.getState());
+    }
+
+    @Test
+    void testGenerateGreetingAsync_FallbackWhenSaturated() {
+        // Given - все места заняты
+        Bulkhead bulkhead = new Bulkhead(0);
+
+        // When
+        String result = RuGPT3Generator.generateGreetingAsync(httpClient, newBreaker(), bulkhead, apiToken, "Тест")
+                .join();
+
+        // Then
+        assertTrue(result.contains("Тест"));
+        verifyNoInteractions(httpClient);
+    }
+
+    @Test
+    void testGenerateGreetingAsync_FallbackWhenCircuitOpen() {
+        // Given - одна ошибка размыкает автомат
+        CircuitBreaker breaker = newBreaker();
+        breaker.onError(0);
+
+        // When
+        String result = RuGPT3Generator.generateGreetingAsync(httpClient, breaker, new Bulkhead(1), apiToken, "Тест")
+                .join();
+
+        // Then
+        assertTrue(result.contains("Тест"));
+        verifyNoInteractions(httpClient);
+    }
+
+    @Test
+    void testStreamGreetingAsync_DeliversTextProgressively() throws Exception {
+        // Given - модель отдаёт три фрагмента с паузой 200 мс
+        List<String> events = Arrays.asList(
+                "{\"choices\":[{\"text\":\"С днём\"}]}",
+                "{\"choices\":[{\"text\":\" рождения,\"}]}",
+                "{\"choices\":[{\"text\":\" Тест!\"}]}");
+        List<Long> partialAt = new CopyOnWriteArrayList<>();
+        List<String> partials = new CopyOnWriteArrayList<>();
+
+        try (StubSseServer server = new StubSseServer(events, 200)) {
+            long start = System.nanoTime();
+
+            // When
+            String result = RuGPT3Generator.streamGreetingAsync(HttpClient.newHttpClient(), server.uri(),
+                    newBreaker(), new Bulkhead(1), apiToken, "Тест", text -> {
+                        partialAt.add(System.nanoTime() - start);
+                        partials.add(text);
+                    }).get(10, TimeUnit.SECONDS);
+            long total = System.nanoTime() - start;
+
+            // Then - первый фрагмент виден раньше, чем готов весь текст
+            assertEquals("С днём рождения, Тест!", result);
+            assertEquals(Arrays.asList("С днём", "С днём рождения,", "С днём рождения, Тест!"), partials);
+            assertTrue(partialAt.get(0) < total - TimeUnit.MILLISECONDS.toNanos(300));
+        }
+    }
+
+    @Test
+    void testStreamGreetingAsync_LongStreamIsNotSlowCall() throws Exception {
+        // Given - первый фрагмент приходит сразу, весь поток идёт дольше порога медленного вызова
+        CircuitBreaker breaker = new CircuitBreaker("test", 1, 0.5, 0.5, 300, 60_000, 1);
+        List<String> events = Arrays.asList(
+                "{\"choices\":[{\"text\":\"С днём\"}]}",
+                "{\"choices\":[{\"text\":\" рождения,\"}]}",
+                "{\"choices\":[{\"text\":\" Тест!\"}]}");
+
+        try (StubSseServer server = new StubSseServer(events, 200)) {
+            // When
+            String result = RuGPT3Generator.streamGreetingAsync(HttpClient.newHttpClient(), server.uri(),
+                    breaker, new Bulkhead(1), apiToken, "Тест", text -> { }).get(10, TimeUnit.SECONDS);
+
+            // Then - breaker мерит время до первого события, а не длину ответа
+            assertEquals("С днём рождения, Тест!", result);
+            assertEquals(CircuitBreaker.State.CLOSED, breaker.getState());
+        }
+    }
+
+    @Test
+    void testStreamGreetingAsync_SilentStreamHitsDeadline() throws Exception {
+        // Given - модель присылает заголовки и замолкает
+        CircuitBreaker breaker = newBreaker();
+        Bulkhead bulkhead = new Bulkhead(1);
+
+        try (StubSseServer server = new StubSseServer(Collections.emptyList(), 0, 30_000)) {
+            // When
+            String result = RuGPT3Generator.streamGreetingAsync(HttpClient.newHttpClient(), server.uri(),
+                    breaker, bulkhead, apiToken, "Тест", text -> { }, Duration.ofMillis(300))
+                    .get(5, TimeUnit.SECONDS);
+
+            // Then - ответа нет, место в bulkhead свободно, breaker получил ошибку
+            assertNull(result);
+            assertEquals(0, bulkhead.getInFlight());
+            assertEquals(CircuitBreaker.State.OPEN, breaker.getState());
+        }
+    }
+
+    private static CircuitBreaker newBreaker() {
+        return new CircuitBreaker("test", 1, 0.5, 0.5, 10_000, 60_000, 1);
+    }
+
     @Test
     void testGetFallbackGreeting() {
         // When
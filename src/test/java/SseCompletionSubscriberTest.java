@@ -0,0 +1,54 @@
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class SseCompletionSubscriberTest {
+
+    @Test
+    void testAccumulatesFragments() {
+        // Given
+        List<String> partials = new ArrayList<>();
+        SseCompletionSubscriber subscriber = new SseCompletionSubscriber(partials::add);
+
+        // When
+        subscriber.onNext("data: {\"id\":\"1\",\"choices\":[{\"index\":0,\"text\":\"С днём\"}]}");
+        subscriber.onNext("");
+        subscriber.onNext(": keep-alive");
+        subscriber.onNext("data: {\"choices\":[{\"text\":\" рождения!\",\"finish_reason\":null}]}");
+        subscriber.onNext("data: [DONE]");
+        subscriber.onNext("data: {\"choices\":[{\"text\":\" лишнее\"}]}");
+        subscriber.onComplete();
+
+        // Then
+        assertEquals("С днём рождения!", subscriber.getText());
+        assertEquals(2, partials.size());
+        assertEquals("С днём", partials.get(0));
+    }
+
+    @Test
+    void testChatDeltaAndMalformedEvents() {
+        // Given
+        SseCompletionSubscriber subscriber = new SseCompletionSubscriber(text -> { });
+
+        // When
+        subscriber.onNext("data: {\"choices\":[{\"delta\":{\"role\":\"assistant\",\"content\":\"Привет\"}}]}");
+        subscriber.onNext("data: {not json");
+        subscriber.onNext("data: {\"choices\":[]}");
+        subscriber.onNext("data: {\"choices\":[{\"delta\":{\"content\":\", Анна\"}}]}");
+
+        // Then
+        assertEquals("Привет, Анна", subscriber.getText());
+    }
+
+    @Test
+    void testExtractChoiceText() throws Exception {
+        assertEquals("Поздравляю, \"Тест\"!\n",
+                RuGPT3Generator.extractChoiceText(
+                        "{\"id\":\"x\",\"usage\":{\"text\":\"no\"},\"choices\":[{\"text\":\"Поздравляю, \\\"Тест\\\"!\\n\"}]}"));
+        assertNull(RuGPT3Generator.extractChoiceText("{\"error\":\"model is loading\"}"));
+        assertNull(RuGPT3Generator.parseResponse("{\"choices\":[{\"text\":\"   \"}]}"));
+    }
+}
@@ -0,0 +1,126 @@
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class StripedExecutorTest {
+
+    private StripedExecutor executor;
+
+    @AfterEach
+    void tearDown() {
+        if (executor != null) {
+            executor.shutdown();
+        }
+    }
+
+    @Test
+    void testSameKeyKeepsOrder() throws InterruptedException {
+        // Given
+        executor = new StripedExecutor("test", 4, 1_000);
+        List<Integer> seen = Collections.synchronizedList(new ArrayList<>());
+        CountDownLatch done = new CountDownLatch(500);
+
+        // When
+        for (int i = 0; i < 500; i++) {
+            int value = i;
+            executor.execute(42L, () -> {
+                seen.add(value);
+                done.countDown();
+            });
+        }
+
+        // Then
+        assertTrue(done.await(5, TimeUnit.SECONDS));
+        for (int i = 0; i < 500; i++) {
+            assertEquals(i, (int) seen.get(i));
+        }
+    }
+
+    @Test
+    void testSlowChatDoesNotBlockOtherChats() throws InterruptedException {
+        // Given
+        executor = new StripedExecutor("test", 4, 10);
+        long slowChat = 1L;
+        long fastChat = 2L;
+        assertNotEquals(executor.stripeOf(slowChat), executor.stripeOf(fastChat));
+
+        CountDownLatch release = new CountDownLatch(1);
+        CountDownLatch fastDone = new CountDownLatch(1);
+
+        // When
+        executor.execute(slowChat, () -> {
+            try {
+                release.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        });
+        executor.execute(fastChat, fastDone::countDown);
+
+        // Then
+        assertTrue(fastDone.await(5, TimeUnit.SECONDS));
+        release.countDown();
+    }
+
+    @Test
+    void testQueueDepth() throws InterruptedException {
+        // Given
+        executor = new StripedExecutor("test", 1, 10);
+        CountDownLatch release = new CountDownLatch(1);
+        CountDownLatch started = new CountDownLatch(1);
+
+        // When
+        executor.execute(1L, () -> {
+            started.countDown();
+            try {
+                release.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        });
+        assertTrue(started.await(5, TimeUnit.SECONDS));
+        executor.execute(1L, () -> { });
+        executor.execute(2L, () -> { });
+
+        // Then
+        assertEquals(2, executor.getQueueDepth());
+        release.countDown();
+    }
+
+    @Test
+    void testOfferRejectsWhenStripeIsFull() throws InterruptedException {
+        // Given: полоса занята, в очереди одно место
+        executor = new StripedExecutor("test", 1, 1);
+        CountDownLatch release = new CountDownLatch(1);
+        CountDownLatch started = new CountDownLatch(1);
+        CountDownLatch done = new CountDownLatch(2);
+        assertTrue(executor.offer(1L, () -> {
+            started.countDown();
+            try {
+                release.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            done.countDown();
+        }, 1, TimeUnit.SECONDS));
+        assertTrue(started.await(5, TimeUnit.SECONDS));
+
+        // When
+        boolean queued = executor.offer(1L, done::countDown, 10, TimeUnit.MILLISECONDS);
+        boolean overflow = executor.offer(1L, () -> { }, 10, TimeUnit.MILLISECONDS);
+
+        // Then
+        assertTrue(queued);
+        assertFalse(overflow);
+        assertEquals(1, executor.getCapacity());
+        release.countDown();
+        assertTrue(done.await(5, TimeUnit.SECONDS));
+    }
+}
@@ -0,0 +1,58 @@
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+// Локальный сервер для тестов потоковой генерации: на любой POST отвечает заданными SSE-событиями,
+// делая паузу между ними, как настоящая модель между токенами
+class StubSseServer implements AutoCloseable {
+    private final HttpServer server;
+    // свои потоки обработчиков: close прерывает зависший ответ, а не ждёт его
+    private final ExecutorService handlers = Executors.newCachedThreadPool();
+
+    StubSseServer(List<String> events, long delayMillis) throws IOException {
+        this(events, delayMillis, 0);
+    }
+
+    // stallMillis - пауза после заголовков до первого события: так выглядит зависшая модель
+    StubSseServer(List<String> events, long delayMillis, long stallMillis) throws IOException {
+        server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        server.createContext("/v1/completions", exchange -> {
+            exchange.getRequestBody().readAllBytes();
+            exchange.getResponseHeaders().add("Content-Type", "text/event-stream");
+            exchange.sendResponseHeaders(200, 0);
+            try (OutputStream body = exchange.getResponseBody()) {
+                body.flush();
+                Thread.sleep(stallMillis);
+                for (String event : events) {
+                    body.write(("data: " + event + "\n\n").getBytes(StandardCharsets.UTF_8));
+                    body.flush();
+                    Thread.sleep(delayMillis);
+                }
+                body.write("data: [DONE]\n\n".getBytes(StandardCharsets.UTF_8));
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            } catch (IOException ignored) {
+                // клиент оборвал поток
+            }
+        });
+        server.setExecutor(handlers);
+        server.start();
+    }
+
+    URI uri() {
+        return URI.create("http://127.0.0.1:" + server.getAddress().getPort() + "/v1/completions");
+    }
+
+    @Override
+    public void close() {
+        server.stop(0);
+        handlers.shutdownNow();
+    }
+}
@@ -0,0 +1,69 @@
+import com.pengrad.telegrambot.TelegramBot;
+import com.pengrad.telegrambot.request.EditMessageText;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+class ThrottledMessageEditorTest {
+
+    @Mock
+    private TelegramBot bot;
+
+    private final AtomicLong now = new AtomicLong();
+
+    @Test
+    void testThrottlesIntermediateEdits() {
+        // Given
+        ThrottledMessageEditor editor = new ThrottledMessageEditor(bot, 123L, 7, 1_000, now::get);
+
+        // When - первая правка сразу, следующие в пределах секунды пропускаются
+        editor.update("С");
+        editor.update("С днём");
+        now.addAndGet(TimeUnit.MILLISECONDS.toNanos(500));
+        editor.update("С днём рождения");
+        now.addAndGet(TimeUnit.MILLISECONDS.toNanos(600));
+        editor.update("С днём рождения,");
+
+        // Then
+        verify(bot, times(2)).execute(any(EditMessageText.class));
+    }
+
+    @Test
+    void testFinishAlwaysShowsFinalText() {
+        // Given
+        ThrottledMessageEditor editor = new ThrottledMessageEditor(bot, 123L, 7, 1_000, now::get);
+        editor.update("С днём");
+
+        // When
+        editor.finish("С днём рождения!");
+        editor.update("поздний фрагмент");
+
+        // Then
+        ArgumentCaptor<EditMessageText> captor = ArgumentCaptor.forClass(EditMessageText.class);
+        verify(bot, times(2)).execute(captor.capture());
+        assertEquals("С днём рождения!", captor.getAllValues().get(1).getParameters().get("text"));
+    }
+
+    @Test
+    void testFinishSkipsUnchangedText() {
+        // Given
+        ThrottledMessageEditor editor = new ThrottledMessageEditor(bot, 123L, 7, 1_000, now::get);
+        editor.update("С днём рождения!");
+
+        // When
+        editor.finish("С днём рождения!");
+
+        // Then
+        verify(bot, times(1)).execute(any(EditMessageText.class));
+    }
+}
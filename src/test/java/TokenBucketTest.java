@@ -0,0 +1,50 @@
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class TokenBucketTest {
+
+    @Test
+    void testBurstUpToCapacity() {
+        // Given
+        AtomicLong clock = new AtomicLong();
+        TokenBucket bucket = new TokenBucket(30, 3, clock::get);
+
+        // Then
+        assertTrue(bucket.tryAcquire());
+        assertTrue(bucket.tryAcquire());
+        assertTrue(bucket.tryAcquire());
+        assertFalse(bucket.tryAcquire());
+    }
+
+    @Test
+    void testRefillOverTime() {
+        // Given
+        AtomicLong clock = new AtomicLong();
+        TokenBucket bucket = new TokenBucket(10, 1, clock::get);
+        assertTrue(bucket.tryAcquire());
+        assertFalse(bucket.tryAcquire());
+
+        // When: прошло 100 мс - ровно один токен при 10 в секунду
+        clock.addAndGet(TimeUnit.MILLISECONDS.toNanos(100));
+
+        // Then
+        assertTrue(bucket.tryAcquire());
+        assertFalse(bucket.tryAcquire());
+    }
+
+    @Test
+    void testReserveQueuesWaiters() {
+        // Given
+        AtomicLong clock = new AtomicLong();
+        TokenBucket bucket = new TokenBucket(10, 1, clock::get);
+
+        // Then: каждый следующий ждёт на 100 мс дольше предыдущего
+        assertEquals(0, bucket.reserve());
+        assertEquals(TimeUnit.MILLISECONDS.toNanos(100), bucket.reserve());
+        assertEquals(TimeUnit.MILLISECONDS.toNanos(200), bucket.reserve());
+    }
+}
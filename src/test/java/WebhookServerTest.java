@@ -0,0 +1,159 @@
+import com.pengrad.telegrambot.model.Update;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class WebhookServerTest {
+    private static final String SECRET = "test-secret_42";
+
+    private final List<Update> received = new CopyOnWriteArrayList<>();
+    private final HttpClient client = HttpClient.newHttpClient();
+    private WebhookServer server;
+
+    @BeforeEach
+    void setUp() throws IOException {
+        server = new WebhookServer(0, "/telegram", SECRET, received::add);
+        server.start();
+    }
+
+    @AfterEach
+    void tearDown() {
+        server.stop();
+    }
+
+    @Test
+    void testMessageUpdate_AcceptedAndHandedOver() throws Exception {
+        // Given
+        String body = recorded("message.json");
+
+        // When
+        int status = post(body, SECRET);
+
+        // Then
+        assertEquals(200, status);
+        assertEquals(1, received.size());
+        assertEquals(Integer.valueOf(708312455), received.get(0).updateId());
+        assertEquals("/allbirthdays", received.get(0).message().text());
+        assertEquals(Long.valueOf(271828), received.get(0).message().chat().id());
+    }
+
+    @Test
+    void testCallbackQueryUpdate_AcceptedAndHandedOver() throws Exception {
+        // When
+        int status = post(recorded("callback_query.json"), SECRET);
+
+        // Then
+        assertEquals(200, status);
+        assertEquals("users:next:1042:26", received.get(0).callbackQuery().data());
+    }
+
+    @Test
+    void testWrongSecret_Rejected() throws Exception {
+        // When
+        int wrong = post(recorded("message.json"), "other-secret");
+        int missing = post(recorded("message.json"), null);
+
+        // Then: чужие запросы не доходят до обработки
+        assertEquals(401, wrong);
+        assertEquals(401, missing);
+        assertTrue(received.isEmpty());
+    }
+
+    @Test
+    void testFullQueue_ServiceUnavailable() throws Exception {
+        // Given: очередь обработки не принимает апдейт
+        server.stop();
+        server = new WebhookServer(0, "/telegram", SECRET, update -> false);
+        server.start();
+
+        // When
+        int status = post(recorded("message.json"), SECRET);
+
+        // Then: Telegram повторит доставку позже
+        assertEquals(503, status);
+    }
+
+    @Test
+    void testRedeliveredUpdate_ConfirmedButNotHandledAgain() throws Exception {
+        // Given: апдейт уже принят, но Telegram не получил 200 и прислал его снова
+        String body = recorded("message.json");
+        post(body, SECRET);
+
+        // When
+        int status = post(body, SECRET);
+
+        // Then
+        assertEquals(200, status);
+        assertEquals(1, received.size());
+    }
+
+    @Test
+    void testRejectedUpdate_AcceptedOnRetry() throws Exception {
+        // Given: первая доставка упирается в полную очередь
+        AtomicBoolean full = new AtomicBoolean(true);
+        server.stop();
+        server = new WebhookServer(0, "/telegram", SECRET, update -> !full.get() && received.add(update));
+        server.start();
+        String body = recorded("message.json");
+        assertEquals(503, post(body, SECRET));
+
+        // When: Telegram повторяет доставку, когда место появилось
+        full.set(false);
+        int status = post(body, SECRET);
+
+        // Then: повтор непринятого апдейта - не дубль
+        assertEquals(200, status);
+        assertEquals(1, received.size());
+    }
+
+    @Test
+    void testMalformedBody_BadRequest() throws Exception {
+        assertEquals(400, post("{not json", SECRET));
+        assertTrue(received.isEmpty());
+    }
+
+    @Test
+    void testOnlyPostAllowed() throws Exception {
+        // When
+        HttpResponse<Void> response = client.send(
+                HttpRequest.newBuilder(endpoint()).header(WebhookServer.SECRET_HEADER, SECRET).GET().build(),
+                HttpResponse.BodyHandlers.discarding());
+
+        // Then
+        assertEquals(405, response.statusCode());
+    }
+
+    private int post(String body, String secret) throws Exception {
+        HttpRequest.Builder request = HttpRequest.newBuilder(endpoint())
+                .header("Content-Type", "application/json")
+                .POST(HttpRequest.BodyPublishers.ofString(body, StandardCharsets.UTF_8));
+        if (secret != null) {
+            request.header(WebhookServer.SECRET_HEADER, secret);
+        }
+        return client.send(request.build(), HttpResponse.BodyHandlers.discarding()).statusCode();
+    }
+
+    private URI endpoint() {
+        return URI.create("http://127.0.0.1:" + server.getPort() + "/telegram");
+    }
+
+    private static String recorded(String name) throws IOException {
+        try (InputStream in = WebhookServerTest.class.getResourceAsStream("/updates/" + name)) {
+            return new String(in.readAllBytes(), StandardCharsets.UTF_8);
+        }
+    }
+}
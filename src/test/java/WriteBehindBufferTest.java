@@ -0,0 +1,124 @@
+import org.junit.jupiter.api.Test;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class WriteBehindBufferTest {
+
+    @Test
+    void testUpdatesOfSameRowAreCoalesced() throws Exception {
+        // Given: таймер не сработает за время теста, сброс - вручную
+        List<List<WriteBehindBuffer.Write>> batches = new CopyOnWriteArrayList<>();
+        WriteBehindBuffer buffer = new WriteBehindBuffer(60_000, 100, batch -> {
+            batches.add(batch);
+            batch.forEach(write -> write.getResult().complete(1));
+        });
+
+        // When
+        CompletableFuture<Integer> first = buffer.submit(WriteBehindBuffer.Write.updateName(100L, "Иван"));
+        CompletableFuture<Integer> other = buffer.submit(WriteBehindBuffer.Write.updateName(200L, "Мария"));
+        CompletableFuture<Integer> last = buffer.submit(WriteBehindBuffer.Write.updateName(100L, "Пётр"));
+        buffer.flush();
+
+        // Then: в базу ушло только последнее имя чата 100, а его future завершил и первый вызов
+        assertEquals(1, batches.size());
+        List<WriteBehindBuffer.Write> batch = batches.get(0);
+        assertEquals(2, batch.size());
+        assertEquals("Мария", batch.get(0).getName());
+        assertEquals("Пётр", batch.get(1).getName());
+        assertEquals(1, first.get(1, TimeUnit.SECONDS));
+        assertEquals(1, other.get(1, TimeUnit.SECONDS));
+        assertEquals(1, last.get(1, TimeUnit.SECONDS));
+        buffer.close();
+    }
+
+    @Test
+    void testInsertsAreNotCoalesced() {
+        // Given
+        List<WriteBehindBuffer.Write> written = new ArrayList<>();
+        WriteBehindBuffer buffer = new WriteBehindBuffer(60_000, 100, batch -> {
+            written.addAll(batch);
+            batch.forEach(write -> write.getResult().complete(written.size()));
+        });
+
+        // When
+        buffer.submit(WriteBehindBuffer.Write.addUser(100L, "Иван", LocalDate.of(1990, 1, 1)));
+        buffer.submit(WriteBehindBuffer.Write.addUser(100L, "Иван", LocalDate.of(1990, 1, 1)));
+        buffer.close();
+
+        // Then: close дописывает остаток буфера
+        assertEquals(2, written.size());
+        assertEquals(0, buffer.size());
+    }
+
+    @Test
+    void testFullBufferFlushesWithoutWaitingForTimer() throws Exception {
+        // Given
+        WriteBehindBuffer buffer = new WriteBehindBuffer(60_000, 2, batch ->
+                batch.forEach(write -> write.getResult().complete(1)));
+
+        // When
+        buffer.submit(WriteBehindBuffer.Write.updateName(100L, "Иван"));
+        CompletableFuture<Integer> second = buffer.submit(WriteBehindBuffer.Write.updateName(200L, "Мария"));
+
+        // Then
+        assertEquals(1, second.get(5, TimeUnit.SECONDS));
+        buffer.close();
+    }
+
+    @Test
+    void testWriterFailureFailsEveryFuture() {
+        // Given
+        WriteBehindBuffer buffer = new WriteBehindBuffer(60_000, 100, batch -> {
+            throw new IllegalStateException("pool closed");
+        });
+
+        // When
+        CompletableFuture<Integer> result = buffer.submit(WriteBehindBuffer.Write.updateBirthday(100L,
+                LocalDate.of(1990, 1, 1)));
+        buffer.flush();
+
+        // Then
+        assertTrue(result.isCompletedExceptionally());
+        buffer.close();
+    }
+
+    @Test
+    void testSubmitAfterCloseFailsImmediately() {
+        // Given
+        List<WriteBehindBuffer.Write> written = new CopyOnWriteArrayList<>();
+        WriteBehindBuffer buffer = new WriteBehindBuffer(60_000, 1, batch -> {
+            written.addAll(batch);
+            batch.forEach(write -> write.getResult().complete(1));
+        });
+        buffer.close();
+
+        // When: буфер полон с первого изменения - раньше это был бы execute на остановленном таймере
+        CompletableFuture<Integer> result = buffer.submit(WriteBehindBuffer.Write.updateName(100L, "Иван"));
+
+        // Then
+        assertTrue(result.isCompletedExceptionally());
+        assertTrue(written.isEmpty());
+        assertEquals(0, buffer.size());
+    }
+
+    @Test
+    void testCloseWritesPendingChanges() throws Exception {
+        // Given
+        WriteBehindBuffer buffer = new WriteBehindBuffer(60_000, 100,
+                batch -> batch.forEach(write -> write.getResult().complete(1)));
+        CompletableFuture<Integer> result = buffer.submit(WriteBehindBuffer.Write.updateName(100L, "Иван"));
+
+        // When
+        buffer.close();
+
+        // Then
+        assertEquals(1, result.get(1, TimeUnit.SECONDS));
+    }
+}